@@ -1,16 +1,23 @@
 package com.zyh.model;
 
-import com.zyh.model.constant.Constant;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.compaction.Compaction;
+import com.zyh.model.compaction.CompactionScheduler;
+import com.zyh.model.compaction.CompactionStats;
+import com.zyh.model.compaction.CompactionWriter;
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.model.iterator.LevelIterator;
 import com.zyh.model.log.ManiFest;
+import com.zyh.model.log.VersionEdit;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.snapshot.SnapshotList;
 import com.zyh.model.worker.Cleaner;
-import com.zyh.model.worker.DefaultThreadFactory;
 import com.zyh.model.sstable.Element;
-import com.zyh.model.sstable.Position;
+import com.zyh.model.sstable.FileMeta;
 import com.zyh.model.sstable.SsTable;
-import com.zyh.model.sstable.TableMetaInfo;
-import com.zyh.utils.ConvertUtil;
 import com.zyh.utils.FileNameUtil;
-import com.zyh.utils.LoggerUtil;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,7 +27,6 @@ import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.stream.Collectors;
 
 @Data
 public class TreeNode {
@@ -33,7 +39,7 @@ public class TreeNode {
 
     private List<String>  sparseIndex;
 
-    private TreeNode nextLevel;
+    private volatile TreeNode nextLevel;
 
     private String dataDir;
 
@@ -41,32 +47,55 @@ public class TreeNode {
 
     public static final String SUFFIX = ".table";
 
-    private ThreadPoolExecutor workerPool;
+    // 上一次压缩的文件的最大 key, 下一次从它之后的文件开始, 只在调度器的锁内访问
+    private String compactPointer;
+
+    // 从当前层压缩到下一层的统计
+    private final CompactionStats stats = new CompactionStats();
 
 
     private ManiFest maniFest;
 
-    public TreeNode(String dataDir,int level, ManiFest maniFest){
+    private Options options;
+
+    private TableCache tableCache;
+
+    private KeyOrder comparator;
+
+    // 所有层共用, 刷盘和压缩按未释放的快照保留旧版本, 为空时只保留最新版本
+    private SnapshotList snapshots;
+
+    public TreeNode(String dataDir,int level, ManiFest maniFest, Options options, TableCache tableCache){
         this.dataDir = dataDir;
+        this.options = options;
+        this.comparator = options.getKeyOrder();
+        this.tableCache = tableCache;
         this.level = level;
         this.tableList = new CopyOnWriteArrayList<>();
         this.sparseIndex = new ArrayList<>();
         this.lock = new ReentrantReadWriteLock();
         this.maniFest = maniFest;
-        // 整颗树只有一个compact线程，因此只有第0层包含
-        // core 1; max 1; keepAliveTime 60; 这里必须是单线程
-//        this.workerPool = new ThreadPoolExecutor(1, 1, 60,
-//                TimeUnit.SECONDS, new LinkedBlockingDeque<>(10), new DefaultThreadFactory("TreeNode"));
-        this.workerPool = (ThreadPoolExecutor) Executors.newCachedThreadPool(new DefaultThreadFactory("TreeNode"));
         if(level != 0){
             buildSparseIndex();
         }
     }
 
-    public void initTreeNode(List<String> fileNameList) {
-        for (String fileName : fileNameList) {
-            String filePath = dataDir + File.separator + fileName;
-            this.tableList.add(SsTable.createFromFile(filePath));
+    /**
+     * 根据 manifest 中的文件信息构建当前层, 不打开文件
+     * 旧版本 manifest 只有文件名, 这时打开文件补全列表中的文件信息
+     * @param metas
+     */
+    public void initTreeNode(List<FileMeta> metas) {
+        for (int i = 0; i < metas.size(); i++) {
+            FileMeta meta = metas.get(i);
+            SsTable ssTable;
+            if (meta.isComplete()) {
+                ssTable = SsTable.open(dataDir, meta, tableCache);
+            } else {
+                ssTable = SsTable.createFromFile(dataDir + File.separator + meta.getFileName(), tableCache);
+                metas.set(i, ssTable.getMeta());
+            }
+            this.tableList.add(ssTable);
         }
     }
 
@@ -74,18 +103,66 @@ public class TreeNode {
         this.nextLevel = next;
     }
 
+    /**
+     * 设置当前层及以下所有层的快照列表, 之后创建的层继承当前层的快照列表
+     * @param snapshots
+     */
+    public void setSnapshots(SnapshotList snapshots) {
+        for (TreeNode node = this; Objects.nonNull(node); node = node.nextLevel) {
+            node.snapshots = snapshots;
+        }
+    }
+
+    private long[] snapshotSeqs() {
+        return Objects.isNull(snapshots) ? new long[0] : snapshots.seqs();
+    }
+
+    /**
+     * 所有层的文件中最大的写入顺序号, 启动时用于恢复全局顺序号
+     * @return
+     */
+    public long maxSeq() {
+        long maxSeq = 0;
+        for (TreeNode node = this; Objects.nonNull(node); node = node.nextLevel) {
+            for (SsTable ssTable : node.tableList) {
+                maxSeq = Math.max(maxSeq, ssTable.getMaxSeq());
+            }
+        }
+        return maxSeq;
+    }
+
+    /**
+     * 按当前的文件列表重建稀疏索引, 替换文件列表后需要重新调用
+     */
     public void buildSparseIndex() {
+        List<String> index = new ArrayList<>();
         for (SsTable ssTable : tableList) {
-            sparseIndex.add(ssTable.getMinKey());
+            index.add(ssTable.getMinKey());
         }
+        this.sparseIndex = index;
     }
 
     public String get(String key){
-        String value = null;
+        Element element = find(key, Long.MAX_VALUE);
+        if (Objects.isNull(element) || element.getDeleted()) {
+            return null;
+        }
+        return element.getValue();
+    }
+
+    /**
+     * 从当前层开始逐层查找, 找到对快照可见的记录(包括删除标记)后停止
+     * 越上层的数据越新, 第一个找到的可见版本就是快照能看到的最新版本
+     * @param key
+     * @param snapshot 只返回 seq 小于等于它的版本
+     * @return
+     */
+    public Element find(String key, long snapshot){
+        Element element = null;
         try {
             lock.readLock().lock();
             if(level != 0){
-                int idx = Collections.binarySearch(this.sparseIndex, key);
+                int idx = Collections.binarySearch(this.sparseIndex, key, comparator);
                 if(idx < 0){
                     idx = -1 * idx;
                     idx -= 2;
@@ -93,282 +170,536 @@ public class TreeNode {
 
                 if (idx >= 0) {
                     SsTable ssTable = this.tableList.get(idx);
-                    value = ssTable.query(key);
+                    element = ssTable.get(key, snapshot);
                 }
             } else {
                 for (int i = tableList.size() - 1; i >= 0; i--) {
-                    value = tableList.get(i).query(key);
-                    if(!Objects.isNull(value)){
+                    element = tableList.get(i).get(key, snapshot);
+                    if(!Objects.isNull(element)){
                         break;
                     }
                 }
             }
-            if (Objects.isNull(value) && !Objects.isNull(nextLevel)) {
-                value = nextLevel.get(key);
+            if (Objects.isNull(element) && !Objects.isNull(nextLevel)) {
+                element = nextLevel.find(key, snapshot);
             }
         } catch (Exception e){
             throw new RuntimeException("[TreeNode][query] 查询失败",e);
         } finally {
             lock.readLock().unlock();
-            return value;
         }
+        return element;
     }
 
     /**
-     * 添加持久化数据文件, 该方法被工作线程调用
-     * 对当前层进行压缩, L0 层采用size-tiered compaction
-     * @param data
+     * 从当前层开始逐层批量查找, 和 {@link #find} 一样找到记录(包括删除标记)后不再查找下一层
+     * 每一层先把 key 按文件分组, 每个文件只查询一次; 多个文件的查询交给 executor 并行执行
+     * 和 find 一样持有逐层获取的读锁, 不会看到压缩的中间状态
+     * @param keys 按升序排列, 不重复
+     * @param found 查找结果的输出
+     * @param executor 为空时在调用线程中依次查询
+     * @param snapshot 只返回 seq 小于等于它的版本
      */
-    public void insertSstable(TreeMap<String, Element> data){
-        try{
-            lock.writeLock().lock();
-            int maxFileNum = getMaxFileNum();
-            // 触发压缩
-            if(tableList.size() > maxFileNum){
-                // TODO 异步
-                this.workerPool.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        sizeTiredCompact();
+    public void multiFind(List<String> keys, Map<String, Element> found, ExecutorService executor, long snapshot) {
+        try {
+            lock.readLock().lock();
+            List<SsTable> tables = this.tableList;
+            List<SsTable> groupTables = new ArrayList<>();
+            List<List<String>> groupKeys = new ArrayList<>();
+            if (level == 0) {
+                // 后加入的文件更新, 分组按从新到旧的顺序排列
+                for (int i = tables.size() - 1; i >= 0; i--) {
+                    SsTable ssTable = tables.get(i);
+                    List<String> group = new ArrayList<>();
+                    for (String key : keys) {
+                        if (comparator.compare(key, ssTable.getMinKey()) >= 0 && comparator.compare(key, ssTable.getMaxKey()) <= 0) {
+                            group.add(key);
+                        }
                     }
-                });
+                    if (!group.isEmpty()) {
+                        groupTables.add(ssTable);
+                        groupKeys.add(group);
+                    }
+                }
+            } else {
+                // key 有序, 落在同一个文件中的 key 是连续的
+                int last = -1;
+                for (String key : keys) {
+                    int idx = Collections.binarySearch(this.sparseIndex, key, comparator);
+                    if (idx < 0) {
+                        idx = -idx - 2;
+                    }
+                    if (idx < 0 || comparator.compare(key, tables.get(idx).getMaxKey()) > 0) {
+                        continue;
+                    }
+                    if (idx != last) {
+                        groupTables.add(tables.get(idx));
+                        groupKeys.add(new ArrayList<>());
+                        last = idx;
+                    }
+                    groupKeys.get(groupKeys.size() - 1).add(key);
+                }
             }
-            String fileName = FileNameUtil.getFileName() + SUFFIX;
-            String filePath = getFilePath(fileName);
-            SsTable ssTable = SsTable.createFromMemory(filePath, data);
-            // 记录日志
-            maniFest.insertFile(level, fileName);
-            tableList.add(ssTable);
-        } catch (Exception e){
-            throw new RuntimeException("insertSstable failed! current level :" + level);
-        } finally {
-            lock.writeLock().unlock();
-        }
-    }
 
-    private String getFilePath(String fileName){
-        String filePath = dataDir + File.separator + fileName;
+            List<Element[]> results = readGroups(groupTables, groupKeys, executor, snapshot);
+            for (int i = 0; i < results.size(); i++) {
+                Element[] elements = results.get(i);
+                for (Element element : elements) {
+                    // L0 中同一个 key 以最新的文件为准
+                    if (Objects.nonNull(element)) {
+                        found.putIfAbsent(element.getKey(), element);
+                    }
+                }
+            }
 
-        return filePath;
+            if (Objects.nonNull(nextLevel)) {
+                List<String> remaining = new ArrayList<>();
+                for (String key : keys) {
+                    if (!found.containsKey(key)) {
+                        remaining.add(key);
+                    }
+                }
+                if (!remaining.isEmpty()) {
+                    nextLevel.multiFind(remaining, found, executor, snapshot);
+                }
+            }
+        } catch (Exception e) {
+            throw new RuntimeException("[TreeNode][multiFind] 查询失败", e);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    private int getMaxFileNum(){
-
-        return Constant.MAX_FILE_NUM * Integer.max(1, level * Constant.RATIO);
+    /**
+     * 查询每个文件分组, 第一组在调用线程中执行, 其余的提交给 executor
+     * @return 和分组一一对应
+     */
+    private static List<Element[]> readGroups(List<SsTable> tables, List<List<String>> keys,
+                                              ExecutorService executor, long snapshot) throws Exception {
+        List<Element[]> results = new ArrayList<>();
+        if (Objects.isNull(executor) || tables.size() <= 1) {
+            for (int i = 0; i < tables.size(); i++) {
+                results.add(tables.get(i).multiGet(keys.get(i), snapshot));
+            }
+            return results;
+        }
+        List<Future<Element[]>> futures = new ArrayList<>();
+        try {
+            for (int i = 1; i < tables.size(); i++) {
+                SsTable ssTable = tables.get(i);
+                List<String> group = keys.get(i);
+                futures.add(executor.submit(() -> ssTable.multiGet(group, snapshot)));
+            }
+            results.add(tables.get(0).multiGet(keys.get(0), snapshot));
+            for (Future<Element[]> future : futures) {
+                results.add(future.get());
+            }
+        } catch (Exception e) {
+            // 读取通过文件引用保护, 未开始的查询直接取消
+            for (Future<Element[]> future : futures) {
+                future.cancel(false);
+            }
+            throw e;
+        }
+        return results;
     }
 
     /**
-     * 将多个SsTable合并成一个SsTable
+     * 从当前层开始逐层添加和 [lower, upper) 重叠的文件的迭代器, 越新的数据越靠前
+     * L0 的每个文件一个迭代器; 其他层通过稀疏索引找到重叠的文件, 合并为一个 {@link LevelIterator}
+     * 持有逐层获取的读锁时打开文件, 不会看到压缩的中间状态, 文件在迭代器关闭前不会被删除
+     * @param children 迭代器的输出列表, 调用方负责在失败时关闭
+     * @param lower 为空时不限制
+     * @param upper 不包含, 为空时不限制
      */
-    private void sizeTiredCompact() {
-        CopyOnWriteArrayList<SsTable> tableListSnapShot = null;
+    public void addIterators(List<KvIterator> children, String lower, String upper) {
         try {
             lock.readLock().lock();
-
-            if (this.tableList.size() <= getMaxFileNum()) {
-                return;
+            List<SsTable> tables = this.tableList;
+            if (level == 0) {
+                // 后加入的文件更新
+                for (int i = tables.size() - 1; i >= 0; i--) {
+                    SsTable ssTable = tables.get(i);
+                    if (overlaps(ssTable, lower, upper)) {
+                        children.add(ssTable.iterator(true));
+                    }
+                }
+            } else {
+                int start = 0;
+                if (Objects.nonNull(lower)) {
+                    int idx = Collections.binarySearch(this.sparseIndex, lower, comparator);
+                    start = idx < 0 ? Math.max(-idx - 2, 0) : idx;
+                }
+                List<String> minKeys = new ArrayList<>();
+                List<KvIterator> iterators = new ArrayList<>();
+                try {
+                    for (int i = start; i < tables.size(); i++) {
+                        SsTable ssTable = tables.get(i);
+                        if (Objects.nonNull(upper) && comparator.compare(ssTable.getMinKey(), upper) >= 0) {
+                            break;
+                        }
+                        if (overlaps(ssTable, lower, upper)) {
+                            minKeys.add(ssTable.getMinKey());
+                            iterators.add(ssTable.iterator(true));
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    for (KvIterator iterator : iterators) {
+                        iterator.close();
+                    }
+                    throw e;
+                }
+                if (!iterators.isEmpty()) {
+                    children.add(new LevelIterator(minKeys, iterators, comparator));
+                }
             }
-            // 留最后一个进行压缩
-            tableListSnapShot = new CopyOnWriteArrayList<>();
-            for (int i = 0; i < this.tableList.size() - 1; i++) {
-                tableListSnapShot.add(tableList.get(i));
+            if (Objects.nonNull(nextLevel)) {
+                nextLevel.addIterators(children, lower, upper);
             }
         } finally {
             lock.readLock().unlock();
         }
+    }
 
-        LOGGER.info("[TreeNode][sizeTiredCompact] 开始对level{}进行压缩", level);
-        TreeMap<String, Position> index = new TreeMap<>();
-        HashMap<String, RandomAccessFile> key2file = mergeIndex(index,tableListSnapShot);
+    private boolean overlaps(SsTable ssTable, String lower, String upper) {
+        return (Objects.isNull(lower) || comparator.compare(ssTable.getMaxKey(), lower) >= 0)
+                && (Objects.isNull(upper) || comparator.compare(ssTable.getMinKey(), upper) < 0);
+    }
 
-        // 避免将所有value读入内存中
-        String fileName = FileNameUtil.getFileName() + SUFFIX;
-        String targetFilePath = getFilePath(fileName);
+    /**
+     * 添加持久化数据文件, 写文件和加入文件列表在同一个线程中完成
+     * 是否需要压缩由 {@link CompactionScheduler} 根据每一层的分数决定
+     * @param data
+     */
+    public void insertSstable(MemTable data){
+        installSstable(buildSstable(data));
+    }
+
+    /**
+     * 把内存表写成文件, 不修改文件列表, 多个刷盘线程可以同时调用
+     * 文件在 {@link #installSstable} 之前不可见, 也不会被清理
+     * 只保留每个 key 的最新版本和未释放的快照需要的旧版本
+     * @param data
+     * @return
+     */
+    public SsTable buildSstable(MemTable data){
+        String filePath = getFilePath(FileNameUtil.getFileName() + SUFFIX);
         try {
-            List<String> snapShotfilePath = tableListSnapShot.stream().map(e -> e.getFilePath()).collect(Collectors.toList());
-            SsTable targetSsTable = generateTargetFile(targetFilePath, index, key2file);
+            return SsTable.createFromMemory(filePath, data, options, tableCache, snapshotSeqs());
+        } catch (Exception e){
+            throw new RuntimeException("[TreeNode][buildSstable] 写入失败, level: " + level + ", file: " + filePath, e);
+        }
+    }
 
-            // 将生成的文件插入到下一层
-            if(Objects.isNull(nextLevel)){
-                this.nextLevel = new TreeNode(dataDir,level + 1, maniFest);
-            }
-            this.nextLevel.nextLevelInsertSstable(targetSsTable);
-            maniFest.delete(level, snapShotfilePath);
-            // 丢弃原有的SsTable
+    /**
+     * 记录到 manifest 后加入文件列表, L0 中后加入的文件更新, 调用方需要按内存表的新旧顺序调用
+     * @param ssTable
+     */
+    public void installSstable(SsTable ssTable){
+        try{
             lock.writeLock().lock();
-            LOGGER.info("[TreeNode][sizeTiredCompact] 开始删除无效文件，预计删除文件数量：{}",snapShotfilePath.size());
-            int deletedSize = 0;
-            for (SsTable ssTable : tableList) {
-                if(snapShotfilePath.contains(ssTable.getFilePath())){
-                    ssTable.deleteFile();
-                    tableList.remove(ssTable);
-                    deletedSize ++;
-                }
-            }
-            LOGGER.info("[TreeNode][sizeTiredCompact] 删除无效文件结束，实际删除文件数量：{}",deletedSize);
-        } catch (Exception e) {
-            LOGGER.error("[sizeTiredCompact] error, targetFilePath : {}, {}",targetFilePath,e);
-            throw new RuntimeException(e);
+            // 记录日志
+            maniFest.insertFile(level, ssTable.getMeta());
+            tableList.add(ssTable);
+        } catch (Exception e){
+            throw new RuntimeException("[TreeNode][installSstable] 安装失败, level: " + level + ", file: " + ssTable.getFilePath(), e);
         } finally {
             lock.writeLock().unlock();
         }
-
     }
 
-    private SsTable generateTargetFile(String targetFilePath, TreeMap<String, Position> index, HashMap<String, RandomAccessFile> key2file) throws IOException {
-        RandomAccessFile targetFile = new RandomAccessFile(targetFilePath, Constant.RW);
-        TreeMap<String, Position> targetIndex = new TreeMap<>();
-        targetFile.seek(0);
-        for (Map.Entry<String, Position> enrty : index.entrySet()) {
-            String key = enrty.getKey();
-            Position position = enrty.getValue();
-            RandomAccessFile file = key2file.get(key);
-            long len = position.getLen();
-            byte[] bytes = new byte[(int) len];
-            // TODO 零拷贝
-            file.seek(position.start);
-            file.read(bytes);
+    private String getFilePath(String fileName){
+        String filePath = dataDir + File.separator + fileName;
 
-            // 数据写入到目标文件
-            long start = targetFile.getFilePointer();
-            targetFile.write(bytes);
-            targetIndex.put(key,new Position(start,len,position.getDeleted()));
+        return filePath;
+    }
+
+    /**
+     * 当前层的目标大小(字节), L1 为 maxBytesForLevelBase, 之后每一层乘以 levelSizeMultiplier, 当前层为 level >= 1
+     * @return
+     */
+    public long getMaxBytes() {
+        long bytes = options.getMaxBytesForLevelBase();
+        int multiplier = Math.max(1, options.getLevelSizeMultiplier());
+        for (int i = 1; i < level && bytes < Long.MAX_VALUE / multiplier; i++) {
+            bytes *= multiplier;
         }
+        return bytes;
+    }
 
-        TableMetaInfo tableMetaInfo = new TableMetaInfo(Constant.VERSION);
-        tableMetaInfo.setDataStart(0L);
-        long dataLen = targetFile.getFilePointer() - tableMetaInfo.getDataStart();
-        tableMetaInfo.setDataLen(dataLen);
-        // 写入索引
-        byte[] targetIndexBytes = ConvertUtil.convertObjectToBytes(targetIndex);
+    /**
+     * 压缩的紧迫程度, 大于 1 时需要压缩
+     * L0 的文件之间可能重叠, 查询需要逐个文件查找, 按文件数计算; 其他层按文件的总字节数和目标大小的比值计算
+     * @return
+     */
+    public double getScore() {
+        List<SsTable> current = this.tableList;
+        if (level == 0) {
+            return (double) current.size() / Math.max(1, options.getLevel0CompactionTrigger());
+        }
+        long bytes = 0;
+        for (SsTable ssTable : current) {
+            bytes += ssTable.getFileSize();
+        }
+        return (double) bytes / getMaxBytes();
+    }
 
-        tableMetaInfo.setIndexLen((long) targetIndexBytes.length);
-        tableMetaInfo.setIndexStart(targetFile.getFilePointer());
-        targetFile.write(targetIndexBytes);
-        LoggerUtil.info(LOGGER,"[TreeNode][generateTargetFile][targetIndex]: {}",targetIndex);
+    /**
+     * 选择当前层的输入文件, 和正在执行的压缩的 key 范围重叠时跳过, 由调度器在锁内调用
+     * L0 选择全部文件; 其他层按 key 轮流选择一个文件, 从上一次压缩的文件之后开始
+     * @param running 正在执行的压缩
+     * @return 没有可以执行的压缩时返回 null
+     */
+    public Compaction pickCompaction(List<Compaction> running) {
+        List<SsTable> current = this.tableList;
+        if (current.isEmpty()) {
+            return null;
+        }
+        double score = getScore();
+        TreeNode next = getOrCreateNextLevel();
+        if (level == 0) {
+            // 后写入的文件更新, 归并时排在前面
+            List<SsTable> inputs = new ArrayList<>(current);
+            Collections.reverse(inputs);
+            Compaction compaction = newCompaction(next, inputs, score);
+            return conflicts(compaction, running) ? null : compaction;
+        }
+        int start = 0;
+        if (Objects.nonNull(compactPointer)) {
+            while (start < current.size() && comparator.compare(current.get(start).getMinKey(), compactPointer) <= 0) {
+                start++;
+            }
+        }
+        for (int i = 0; i < current.size(); i++) {
+            SsTable input = current.get((start + i) % current.size());
+            Compaction compaction = newCompaction(next, Collections.singletonList(input), score);
+            if (!conflicts(compaction, running)) {
+                compactPointer = input.getMaxKey();
+                return compaction;
+            }
+        }
+        return null;
+    }
 
-        // 写入元数据
-        tableMetaInfo.writeToFile(targetFile);
-        LoggerUtil.info(LOGGER, "[TreeNode][generateTargetFile]: {},{}", targetFilePath, tableMetaInfo);
+    private Compaction newCompaction(TreeNode next, List<SsTable> inputs, double score) {
+        String minKey = null, maxKey = null;
+        for (SsTable input : inputs) {
+            minKey = Objects.isNull(minKey) || comparator.compare(input.getMinKey(), minKey) < 0 ? input.getMinKey() : minKey;
+            maxKey = Objects.isNull(maxKey) || comparator.compare(input.getMaxKey(), maxKey) > 0 ? input.getMaxKey() : maxKey;
+        }
+        return new Compaction(this, inputs, next.getOverlappingTables(minKey, maxKey), score, comparator);
+    }
 
-        return new SsTable(targetFilePath,targetFile,targetIndex,tableMetaInfo);
+    private static boolean conflicts(Compaction compaction, List<Compaction> running) {
+        for (Compaction other : running) {
+            if (compaction.conflictsWith(other)) {
+                return true;
+            }
+        }
+        return false;
     }
 
+    /**
+     * 执行调度器选出的压缩, 把输入文件和下一层中重叠的文件归并, 输出文件替换下一层中被重叠的文件
+     * 下一层中其他文件保持不变, 写放大只和重叠的文件数有关, 和下一层的大小无关
+     * 调度器保证同时执行的压缩不会修改同一层中重叠的 key 范围
+     * @param compaction
+     * @param subcompactionPool 执行子压缩的线程池
+     */
+    public void runCompaction(Compaction compaction, ExecutorService subcompactionPool) {
+        TreeNode next = getOrCreateNextLevel();
+        List<SsTable> inputs = compaction.getInputs();
+        List<SsTable> overlapped = compaction.getOverlapped();
+        if (options.isAllowTrivialMove() && overlapped.isEmpty() && isDisjoint(inputs)) {
+            moveToNextLevel(next, inputs);
+        } else {
+            mergeToNextLevel(next, compaction, subcompactionPool);
+        }
+    }
 
     /**
-     * level >= 1时数据文件插入，执行当前方法的线程为上一层的workPool
-     * @param ssTable
+     * 输入文件和下一层都不重叠时, 只在 manifest 和文件列表中把文件移到下一层, 不读写数据
+     * 按顺序写入的 key(例如按时间排列)几乎每次压缩都是这种情况
      */
-    public void nextLevelInsertSstable(SsTable ssTable) throws IOException {
-        TreeMap<String, Position> index = new TreeMap<>();
-        CopyOnWriteArrayList<SsTable> nextLevelTableList = null;
-        try {
-            lock.readLock().lock();
-            nextLevelTableList = this.getTableList();
-        } finally {
-            lock.readLock().unlock();
+    private void moveToNextLevel(TreeNode next, List<SsTable> inputs) {
+        VersionEdit edit = new VersionEdit();
+        long bytes = 0;
+        for (SsTable input : inputs) {
+            edit.deleteFile(level, input.getFileName());
+            edit.addFile(level + 1, input.getMeta());
+            bytes += input.getFileSize();
         }
-        HashMap<String, RandomAccessFile> key2file = mergeIndex(index, nextLevelTableList);
+        install(next, edit, inputs, Collections.emptyList(), inputs);
+        stats.recordTrivialMove(inputs.size(), bytes);
+        LOGGER.info("[TreeNode][moveToNextLevel] level{} -> level{}, 直接移动文件: {}, 字节数: {}",
+                level, level + 1, inputs.size(), bytes);
+    }
 
-        TreeMap<String, Position> insertIndex = ssTable.getIndex();
-        RandomAccessFile insertFile = ssTable.getTableFile();
-        for (Map.Entry<String, Position> entry : insertIndex.entrySet()) {
-            String key = entry.getKey();
-            index.put(key,entry.getValue());
-            key2file.put(key, insertFile);
+    /**
+     * 归并输入文件和下一层中重叠的文件, 输出文件替换被重叠的文件
+     * 数据量足够大时按 key 范围切分为子压缩并行执行, 所有子压缩的输出通过一条 manifest 记录一起生效
+     */
+    private void mergeToNextLevel(TreeNode next, Compaction compaction, ExecutorService subcompactionPool) {
+        List<SsTable> inputs = compaction.getInputs();
+        List<SsTable> overlapped = compaction.getOverlapped();
+        // 输入文件比下一层的数据新, 下一层的文件之间互不重叠
+        List<SsTable> mergeInputs = new ArrayList<>(inputs);
+        mergeInputs.addAll(overlapped);
+        List<String> boundaries = compaction.subcompactionBoundaries(options.getMaxSubcompactions());
+        // 所有子压缩使用同一份快照列表, 之后创建的快照只需要最新版本
+        long[] snapshotSeqs = snapshotSeqs();
+        List<SsTable> outputs = runSubcompactions(mergeInputs, options.getTargetFileSizeBytes(), boundaries, snapshotSeqs, subcompactionPool);
+        long bytesRead = 0, bytesWritten = 0;
+        for (SsTable input : mergeInputs) {
+            bytesRead += input.getFileSize();
+        }
+        for (SsTable output : outputs) {
+            bytesWritten += output.getFileSize();
         }
 
-        List<String> fileNameList = new ArrayList<>();
-        List<TreeMap<String, Position>> indexList = splitIndex(index);
-        CopyOnWriteArrayList<SsTable> tableListTmp = new CopyOnWriteArrayList<>();
-        for (TreeMap<String, Position> currentIndex : indexList) {
-            String fileName = FileNameUtil.getFileName() + SUFFIX;
-            String filePath = getFilePath(fileName);
-            fileNameList.add(fileName);
-            SsTable currentSsTable = generateTargetFile(filePath, currentIndex, key2file);
-            tableListTmp.add(currentSsTable);
+        VersionEdit edit = new VersionEdit();
+        for (SsTable input : inputs) {
+            edit.deleteFile(level, input.getFileName());
+        }
+        for (SsTable table : overlapped) {
+            edit.deleteFile(level + 1, table.getFileName());
         }
-        maniFest.updateLevelFileNames(level, fileNameList);
+        for (SsTable output : outputs) {
+            edit.addFile(level + 1, output.getMeta());
+        }
+        install(next, edit, inputs, overlapped, outputs);
+        stats.recordCompaction(bytesRead, bytesWritten);
+        LOGGER.info("[TreeNode][mergeToNextLevel] level{} -> level{}, 输入文件: {}, 下一层重叠文件: {}, 子压缩: {}, 输出文件: {}, 下一层文件数: {}",
+                level, level + 1, inputs.size(), overlapped.size(), boundaries.size() + 1, outputs.size(), next.tableList.size());
+
+        // manifest 已经不再引用这些文件, 正在读取的文件等读取结束后删除
+        for (SsTable input : mergeInputs) {
+            input.deleteFile();
+        }
+    }
 
-        // 切换引用
+    /**
+     * 每个 key 范围由一个 CompactionWriter 写出自己的文件, 第一个范围在当前线程执行
+     * 任何一个子压缩失败时删除所有子压缩的输出文件
+     * @param boundaries 递增的切分点, 为空时不切分
+     * @return 所有子压缩的输出文件, 按 key 有序
+     */
+    private List<SsTable> runSubcompactions(List<SsTable> mergeInputs, long maxBytes, List<String> boundaries,
+                                            long[] snapshotSeqs, ExecutorService subcompactionPool) {
+        if (boundaries.isEmpty()) {
+            return new CompactionWriter(dataDir, options, tableCache, snapshotSeqs).write(mergeInputs, maxBytes);
+        }
+        List<Future<List<SsTable>>> futures = new ArrayList<>();
+        for (int i = 1; i <= boundaries.size(); i++) {
+            String lower = boundaries.get(i - 1);
+            String upper = i < boundaries.size() ? boundaries.get(i) : null;
+            futures.add(subcompactionPool.submit(
+                    () -> new CompactionWriter(dataDir, options, tableCache, snapshotSeqs).write(mergeInputs, maxBytes, lower, upper)));
+        }
+        List<SsTable> outputs = new ArrayList<>();
+        RuntimeException failure = null;
         try {
-            lock.writeLock().lock();
-            LOGGER.info("[TreeNode][nextLevelInsertSstable] 开始删除无效文件，删除文件数量：{}", tableList.size() + 1);
-            ssTable.deleteFile();
-            for (SsTable table : tableList) {
-                table.deleteFile();
+            outputs.addAll(new CompactionWriter(dataDir, options, tableCache, snapshotSeqs).write(mergeInputs, maxBytes, null, boundaries.get(0)));
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+        // 失败时也要等待其他子压缩结束, 再删除它们的输出
+        for (Future<List<SsTable>> future : futures) {
+            try {
+                outputs.addAll(future.get());
+            } catch (ExecutionException e) {
+                failure = Objects.isNull(failure) ? new RuntimeException("[TreeNode][runSubcompactions] 子压缩失败", e.getCause()) : failure;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = Objects.isNull(failure) ? new RuntimeException("[TreeNode][runSubcompactions] 等待子压缩时被中断", e) : failure;
             }
-            this.tableList = tableListTmp;
-            LOGGER.info("[TreeNode][nextLevelInsertSstable] 删除无效文件结束");
-            buildSparseIndex();
+        }
+        if (Objects.nonNull(failure)) {
+            for (SsTable output : outputs) {
+                output.deleteFile();
+            }
+            throw failure;
+        }
+        return outputs;
+    }
+
+    /**
+     * 持久化变更后切换两层的文件列表
+     * 从上到下获取两层的写锁, 同时切换, 查询不会看到中间状态
+     */
+    private void install(TreeNode next, VersionEdit edit, List<SsTable> inputs, List<SsTable> overlapped, List<SsTable> outputs) {
+        lock.writeLock().lock();
+        next.lock.writeLock().lock();
+        try {
+            maniFest.logAndApply(edit);
+            this.removeTables(inputs);
+            next.replaceTables(overlapped, outputs);
         } finally {
+            next.lock.writeLock().unlock();
             lock.writeLock().unlock();
         }
+    }
 
-        // 检查当前层是否需要压缩
-        int maxFileNum = getMaxFileNum();
-        if(tableList.size() > maxFileNum){
-            SsTable targetSsTable = this.tableList.get(0);
-            // 将生成的文件插入到下一层
-            if(Objects.isNull(nextLevel)){
-                this.nextLevel = new TreeNode(dataDir,level + 1, maniFest);
+    /**
+     * 输入文件之间是否互不重叠, L0 的文件之间可能重叠
+     */
+    private boolean isDisjoint(List<SsTable> tables) {
+        List<SsTable> sorted = new ArrayList<>(tables);
+        sorted.sort(Comparator.comparing(SsTable::getMinKey, comparator));
+        for (int i = 1; i < sorted.size(); i++) {
+            if (comparator.compare(sorted.get(i - 1).getMaxKey(), sorted.get(i).getMinKey()) >= 0) {
+                return false;
             }
-            // TODO 异步
-            this.workerPool.submit(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        nextLevel.nextLevelInsertSstable(targetSsTable);
-                    } catch (IOException e) {
-                        throw new RuntimeException("[TreeNode][nextLevelInsertSstable]leveledCompact 失败");
-                    }
-                }
-            });
         }
+        return true;
     }
 
-    private List<TreeMap<String, Position>> splitIndex(TreeMap<String, Position> index) {
-        List<TreeMap<String, Position>> indexList = new ArrayList<>();
-        Iterator<Map.Entry<String, Position>> iterator = index.entrySet().iterator();
-        int maxSize = getMaxItem();
-        TreeMap<String, Position> tmpIndex = new TreeMap<>();
-        while(iterator.hasNext()){
-            Map.Entry<String, Position> next = iterator.next();
-            tmpIndex.put(next.getKey(),next.getValue());
-            if(tmpIndex.size() >= maxSize){
-                indexList.add(tmpIndex);
-                tmpIndex = new TreeMap<>();
-            }
-        }
-        if(tmpIndex.size() > 0){
-            indexList.add(tmpIndex);
+    private synchronized TreeNode getOrCreateNextLevel() {
+        if(Objects.isNull(nextLevel)){
+            this.nextLevel = new TreeNode(dataDir,level + 1, maniFest, options, tableCache);
+            this.nextLevel.snapshots = snapshots;
         }
-        return indexList;
+        return nextLevel;
     }
 
     /**
-     *
-     * @param index 存储合并后的索引
-     * @param currentTableList
-     * @return key和对应的文件句柄
+     * 当前层中 key 范围和 [minKey, maxKey] 重叠的文件, 当前层为 level >= 1
+     * @param minKey
+     * @param maxKey
+     * @return 按 key 排列的连续若干个文件
      */
-    public HashMap<String, RandomAccessFile> mergeIndex( TreeMap<String, Position> index,List<SsTable> currentTableList){
-        HashMap<String, RandomAccessFile> key2file = new HashMap<>();
-        for (int i = 0; i < currentTableList.size(); i++) {
-            SsTable ssTable = currentTableList.get(i);
-            TreeMap<String, Position> currentIndex = ssTable.getIndex();
-            RandomAccessFile tableFile = ssTable.getTableFile();
-            for (Map.Entry<String, Position> entry : currentIndex.entrySet()) {
-                String key = entry.getKey();
-                index.put(key, entry.getValue());
-                key2file.put(key,tableFile);
+    public List<SsTable> getOverlappingTables(String minKey, String maxKey) {
+        List<SsTable> overlapped = new ArrayList<>();
+        for (SsTable ssTable : this.tableList) {
+            if (comparator.compare(ssTable.getMaxKey(), minKey) >= 0 && comparator.compare(ssTable.getMinKey(), maxKey) <= 0) {
+                overlapped.add(ssTable);
             }
         }
-        return key2file;
+        return overlapped;
     }
 
-    public int getMaxItem(){
-        return Constant.MAX_ITEM_NUM * Integer.max(1, level * Constant.RATIO);
+    /**
+     * 调用时持有写锁
+     */
+    private void removeTables(List<SsTable> removed) {
+        CopyOnWriteArrayList<SsTable> tables = new CopyOnWriteArrayList<>(this.tableList);
+        tables.removeAll(removed);
+        this.tableList = tables;
+        if (level != 0) {
+            buildSparseIndex();
+        }
+    }
+
+    /**
+     * 用输出文件替换被重叠的文件, 调用时持有写锁
+     */
+    private void replaceTables(List<SsTable> removed, List<SsTable> added) {
+        List<SsTable> tables = new ArrayList<>(this.tableList);
+        tables.removeAll(removed);
+        tables.addAll(added);
+        tables.sort(Comparator.comparing(SsTable::getMinKey, comparator));
+        this.tableList = new CopyOnWriteArrayList<>(tables);
+        buildSparseIndex();
     }
 
 }
@@ -0,0 +1,142 @@
+package com.zyh.model.cache;
+
+import com.zyh.model.sstable.Block;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 所有 SsTable 共享的数据块缓存
+ * 按 key 的哈希分片, 每个分片独立加锁、独立淘汰, 分片容量为总容量的 1/分片数
+ * 堆外模式下块数据保存在 DirectByteBuffer 中, 命中时复制回堆内, 减少缓存对 GC 的压力
+ */
+public class BlockCache {
+
+    // 每个缓存项的额外开销: Entry、CacheKey、哈希表节点和 Block 对象
+    public static final int ENTRY_OVERHEAD = 128;
+
+    private final CacheShard[] shards;
+
+    private final int shardMask;
+
+    private final long capacity;
+
+    private final CachePolicy policy;
+
+    private final boolean offHeap;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder inserts = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity 总容量(字节)
+     * @param shardBits 分片数为 2^shardBits
+     * @param policy 淘汰策略
+     * @param offHeap 是否把块数据保存在堆外
+     */
+    public BlockCache(long capacity, int shardBits, CachePolicy policy, boolean offHeap) {
+        if (capacity <= 0 || shardBits < 0 || shardBits > 16) {
+            throw new IllegalArgumentException("[BlockCache] 参数错误, capacity: " + capacity + ", shardBits: " + shardBits);
+        }
+        int shardCount = 1 << shardBits;
+        this.shards = new CacheShard[shardCount];
+        this.shardMask = shardCount - 1;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.offHeap = offHeap;
+        long perShard = Math.max(capacity / shardCount, 1);
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = policy == CachePolicy.CLOCK ? new ClockShard(perShard) : new LruShard(perShard);
+        }
+    }
+
+    public Block get(String file, long offset) {
+        CacheKey key = new CacheKey(file, offset);
+        Object value = shardOf(key).get(key);
+        if (Objects.isNull(value)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (value instanceof ByteBuffer) {
+            ByteBuffer buffer = ((ByteBuffer) value).duplicate();
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return new Block(data);
+        }
+        return (Block) value;
+    }
+
+    public void insert(String file, long offset, Block block) {
+        int charge = block.size() + ENTRY_OVERHEAD;
+        CacheKey key = new CacheKey(file, offset);
+        CacheShard shard = shardOf(key);
+        if (charge > shard.capacity) {
+            // 比分片还大的块不缓存
+            return;
+        }
+        Object value = block;
+        if (offHeap) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(block.size());
+            buffer.put(block.getData());
+            buffer.flip();
+            value = buffer;
+        }
+        int evicted = shard.insert(key, value, charge);
+        inserts.increment();
+        if (evicted > 0) {
+            evictions.add(evicted);
+        }
+    }
+
+    private CacheShard shardOf(CacheKey key) {
+        int h = key.hashCode();
+        return shards[(h ^ (h >>> 16)) & shardMask];
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getUsage() {
+        long usage = 0;
+        for (CacheShard shard : shards) {
+            usage += shard.getUsage();
+        }
+        return usage;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getInserts() {
+        return inserts.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BlockCache{policy=%s, offHeap=%s, capacity=%d, usage=%d, hits=%d, misses=%d, hitRate=%.4f, inserts=%d, evictions=%d}",
+                policy, offHeap, capacity, getUsage(), getHits(), getMisses(), getHitRate(), getInserts(), getEvictions());
+    }
+}
@@ -0,0 +1,39 @@
+package com.zyh.model.cache;
+
+import java.util.Objects;
+
+/**
+ * 缓存的 key: 表文件名 + 块在文件中的偏移量
+ * 文件名不会被复用, 所以删除文件后残留的块只会被自然淘汰, 不会被读到
+ */
+public final class CacheKey {
+
+    private final String file;
+
+    private final long offset;
+
+    private final int hash;
+
+    public CacheKey(String file, long offset) {
+        this.file = file;
+        this.offset = offset;
+        this.hash = 31 * file.hashCode() + Long.hashCode(offset);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey other = (CacheKey) o;
+        return offset == other.offset && Objects.equals(file, other.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
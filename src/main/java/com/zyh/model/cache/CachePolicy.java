@@ -0,0 +1,11 @@
+package com.zyh.model.cache;
+
+/**
+ * 块缓存的淘汰策略
+ */
+public enum CachePolicy {
+    // 严格的最近最少使用, 命中时需要加锁调整链表
+    LRU,
+    // 时钟近似 LRU, 命中时只设置访问位, 读多的场景锁竞争更少
+    CLOCK
+}
@@ -0,0 +1,42 @@
+package com.zyh.model.cache;
+
+/**
+ * 缓存分片, 每个分片独立加锁和淘汰
+ */
+abstract class CacheShard {
+
+    static final class Entry {
+        final CacheKey key;
+
+        final Object value;
+
+        final int charge;
+
+        // CLOCK 策略的访问位
+        volatile boolean referenced;
+
+        Entry(CacheKey key, Object value, int charge) {
+            this.key = key;
+            this.value = value;
+            this.charge = charge;
+        }
+    }
+
+    protected final long capacity;
+
+    protected long usage;
+
+    CacheShard(long capacity) {
+        this.capacity = capacity;
+    }
+
+    abstract Object get(CacheKey key);
+
+    /**
+     * 插入数据, 超过容量时淘汰旧数据
+     * @return 淘汰的数量
+     */
+    abstract int insert(CacheKey key, Object value, int charge);
+
+    abstract long getUsage();
+}
@@ -0,0 +1,72 @@
+package com.zyh.model.cache;
+
+import java.util.ArrayList;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CLOCK 分片: 命中时只设置访问位不加锁, 插入时转动指针
+ * 跳过访问位为 1 的数据(同时清零), 淘汰第一个访问位为 0 的数据
+ */
+class ClockShard extends CacheShard {
+
+    private final ConcurrentHashMap<CacheKey, Entry> table = new ConcurrentHashMap<>();
+
+    private final ArrayList<Entry> ring = new ArrayList<>();
+
+    private int hand;
+
+    ClockShard(long capacity) {
+        super(capacity);
+    }
+
+    @Override
+    Object get(CacheKey key) {
+        Entry entry = table.get(key);
+        if (Objects.isNull(entry)) {
+            return null;
+        }
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.value;
+    }
+
+    @Override
+    synchronized int insert(CacheKey key, Object value, int charge) {
+        if (table.containsKey(key)) {
+            // 其他线程已经读入了同一个块
+            return 0;
+        }
+        int evicted = 0;
+        while (usage + charge > capacity && !ring.isEmpty()) {
+            if (hand >= ring.size()) {
+                hand = 0;
+            }
+            Entry entry = ring.get(hand);
+            if (entry.referenced) {
+                entry.referenced = false;
+                hand++;
+                continue;
+            }
+            // 用最后一个数据填补空位
+            Entry last = ring.remove(ring.size() - 1);
+            if (hand < ring.size()) {
+                ring.set(hand, last);
+            }
+            table.remove(entry.key);
+            usage -= entry.charge;
+            evicted++;
+        }
+        Entry entry = new Entry(key, value, charge);
+        ring.add(entry);
+        table.put(key, entry);
+        usage += charge;
+        return evicted;
+    }
+
+    @Override
+    synchronized long getUsage() {
+        return usage;
+    }
+}
@@ -0,0 +1,46 @@
+package com.zyh.model.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+
+/**
+ * LRU 分片: 访问顺序的 LinkedHashMap, 读写都需要加锁
+ */
+class LruShard extends CacheShard {
+
+    private final LinkedHashMap<CacheKey, Entry> table = new LinkedHashMap<>(16, 0.75f, true);
+
+    LruShard(long capacity) {
+        super(capacity);
+    }
+
+    @Override
+    synchronized Object get(CacheKey key) {
+        Entry entry = table.get(key);
+        return Objects.isNull(entry) ? null : entry.value;
+    }
+
+    @Override
+    synchronized int insert(CacheKey key, Object value, int charge) {
+        Entry old = table.put(key, new Entry(key, value, charge));
+        if (Objects.nonNull(old)) {
+            usage -= old.charge;
+        }
+        usage += charge;
+        int evicted = 0;
+        Iterator<Entry> iterator = table.values().iterator();
+        while (usage > capacity && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            usage -= eldest.charge;
+            evicted++;
+        }
+        return evicted;
+    }
+
+    @Override
+    synchronized long getUsage() {
+        return usage;
+    }
+}
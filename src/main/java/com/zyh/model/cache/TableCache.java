@@ -0,0 +1,145 @@
+package com.zyh.model.cache;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.sstable.TableReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 打开的表文件缓存, 每个 TinyKV 实例一个
+ * 表文件在第一次读取时才打开, 打开的文件数超过 maxOpenFiles 时关闭最久未使用的文件
+ * 被淘汰的文件如果正在被读取, 等最后一个读取结束后才关闭
+ */
+public class TableCache implements Closeable {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(TableCache.class);
+
+    private final Options options;
+
+    private final int maxOpenFiles;
+
+    // 访问顺序, 最久未使用的在最前面
+    private final LinkedHashMap<String, TableReader> readers = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public TableCache(Options options) {
+        this.options = options;
+        this.maxOpenFiles = Math.max(options.getMaxOpenFiles(), 1);
+    }
+
+    /**
+     * 获取打开的表文件并增加引用, 使用结束后必须调用 {@link #release(TableReader)}
+     * @param filePath
+     * @return
+     */
+    public TableReader acquire(String filePath) {
+        synchronized (this) {
+            TableReader reader = readers.get(filePath);
+            if (Objects.nonNull(reader)) {
+                hits.increment();
+                reader.ref();
+                return reader;
+            }
+        }
+        misses.increment();
+        // 打开文件不持有锁, 同时打开同一个文件时只保留一个
+        TableReader opened = new TableReader(filePath, options);
+        List<TableReader> evicted = new ArrayList<>();
+        TableReader reader;
+        synchronized (this) {
+            reader = readers.get(filePath);
+            if (Objects.isNull(reader)) {
+                reader = opened;
+                readers.put(filePath, reader);
+                evictLocked(evicted);
+            } else {
+                evicted.add(opened);
+            }
+            reader.ref();
+        }
+        for (TableReader current : evicted) {
+            current.unref();
+        }
+        return reader;
+    }
+
+    public void release(TableReader reader) {
+        reader.unref();
+    }
+
+    private void evictLocked(List<TableReader> evicted) {
+        Iterator<Map.Entry<String, TableReader>> iterator = readers.entrySet().iterator();
+        while (readers.size() > maxOpenFiles && iterator.hasNext()) {
+            evicted.add(iterator.next().getValue());
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 删除表文件: 从缓存中移除, 没有读取时立即删除, 否则等最后一个读取结束后删除
+     * @param filePath
+     * @return 文件没有被打开时返回 false, 由调用方直接删除
+     */
+    public boolean evict(String filePath) {
+        TableReader reader;
+        synchronized (this) {
+            reader = readers.remove(filePath);
+        }
+        if (Objects.isNull(reader)) {
+            return false;
+        }
+        reader.markObsolete();
+        reader.unref();
+        return true;
+    }
+
+    public synchronized int getOpenFiles() {
+        return readers.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public void close() {
+        List<TableReader> all;
+        synchronized (this) {
+            all = new ArrayList<>(readers.values());
+            readers.clear();
+        }
+        for (TableReader reader : all) {
+            reader.unref();
+        }
+        LOGGER.info("[TableCache][close] 关闭文件数量: {}", all.size());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TableCache{maxOpenFiles=%d, openFiles=%d, hits=%d, misses=%d, evictions=%d}",
+                maxOpenFiles, getOpenFiles(), getHits(), getMisses(), getEvictions());
+    }
+}
@@ -0,0 +1,118 @@
+package com.zyh.model.compaction;
+
+import com.zyh.model.TreeNode;
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.constant.Constant;
+import com.zyh.model.sstable.SsTable;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一次待执行的压缩: 当前层的输入文件和下一层中重叠的文件
+ * 执行期间占用当前层和下一层的 [minKey, maxKey], 其他压缩不能同时修改这个范围
+ */
+@Getter
+public class Compaction {
+
+    private final TreeNode node;
+
+    // 当前层的输入文件, 从新到旧排列
+    private final List<SsTable> inputs;
+
+    // 下一层中和输入重叠的文件
+    private final List<SsTable> overlapped;
+
+    // 输入文件和重叠文件的 key 范围
+    private final String minKey;
+
+    private final String maxKey;
+
+    private final double score;
+
+    private final KeyOrder comparator;
+
+    public Compaction(TreeNode node, List<SsTable> inputs, List<SsTable> overlapped, double score) {
+        this(node, inputs, overlapped, score, KeyOrder.BYTEWISE);
+    }
+
+    public Compaction(TreeNode node, List<SsTable> inputs, List<SsTable> overlapped, double score, KeyOrder comparator) {
+        this.node = node;
+        this.comparator = comparator;
+        this.inputs = inputs;
+        this.overlapped = overlapped;
+        this.score = score;
+        List<SsTable> all = new ArrayList<>(inputs);
+        all.addAll(overlapped);
+        String min = null, max = null;
+        for (SsTable table : all) {
+            min = min == null || comparator.compare(table.getMinKey(), min) < 0 ? table.getMinKey() : min;
+            max = max == null || comparator.compare(table.getMaxKey(), max) > 0 ? table.getMaxKey() : max;
+        }
+        this.minKey = min;
+        this.maxKey = max;
+    }
+
+    /**
+     * 按数据块的数量把压缩切分为 key 范围互不重叠的子压缩
+     * 采样所有输入文件中每个数据块的最大 key, 排序后取等分点, 每个子压缩处理的数据块数量大致相同
+     * @param maxSubcompactions 子压缩的最大数量
+     * @return 递增的切分点, 第 i 个子压缩处理 [boundaries[i - 1], boundaries[i]) 中的 key; 不切分时为空
+     */
+    public List<String> subcompactionBoundaries(int maxSubcompactions) {
+        if (maxSubcompactions <= 1) {
+            return Collections.emptyList();
+        }
+        List<String> samples = new ArrayList<>();
+        for (SsTable table : inputs) {
+            samples.addAll(table.blockLastKeys());
+        }
+        for (SsTable table : overlapped) {
+            samples.addAll(table.blockLastKeys());
+        }
+        int count = Math.min(maxSubcompactions, samples.size() / Constant.SUBCOMPACTION_MIN_BLOCKS);
+        if (count <= 1) {
+            return Collections.emptyList();
+        }
+        samples.sort(comparator);
+        List<String> boundaries = new ArrayList<>();
+        for (int i = 1; i < count; i++) {
+            String boundary = samples.get((int) ((long) i * samples.size() / count));
+            // 重复的 key 不能作为两个切分点
+            if (boundaries.isEmpty() || comparator.compare(boundaries.get(boundaries.size() - 1), boundary) < 0) {
+                boundaries.add(boundary);
+            }
+        }
+        return boundaries;
+    }
+
+    public int getLevel() {
+        return node.getLevel();
+    }
+
+    /**
+     * 两个压缩涉及同一层并且 key 范围重叠时不能同时执行
+     * L0 的文件之间可能重叠, 同一时间只有一个 L0 压缩
+     */
+    public boolean conflictsWith(Compaction other) {
+        if (getLevel() == 0 && other.getLevel() == 0) {
+            return true;
+        }
+        if (Math.abs(getLevel() - other.getLevel()) > 1) {
+            return false;
+        }
+        return overlaps(other.minKey, other.maxKey);
+    }
+
+    public boolean overlaps(String min, String max) {
+        return comparator.compare(maxKey, min) >= 0 && comparator.compare(minKey, max) <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Compaction{level=%d, inputs=%d, overlapped=%d, range=[%s, %s], score=%.2f}",
+                getLevel(), inputs.size(), overlapped.size(), minKey, maxKey, score);
+    }
+}
@@ -0,0 +1,192 @@
+package com.zyh.model.compaction;
+
+import com.zyh.model.TreeNode;
+import com.zyh.model.worker.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 每个 TinyKV 一个压缩调度器, 固定数量的压缩线程
+ * 每一层按 {@link TreeNode#getScore()} 计算紧迫程度, 总是先执行分数最高的压缩
+ * 同时执行的压缩不会涉及同一层中重叠的 key 范围, 互不冲突的压缩可以并行
+ */
+public class CompactionScheduler {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CompactionScheduler.class);
+
+    // 压缩失败后等待一段时间再重试, 避免磁盘错误时反复失败
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final TreeNode root;
+
+    private final ExecutorService workers;
+
+    // 执行子压缩, 线程数受压缩线程数和 maxSubcompactions 限制
+    private final ExecutorService subcompactionPool;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    private final List<Compaction> running = new ArrayList<>();
+
+    // 每次压缩结束后调用, 用于唤醒等待 L0 文件减少的写入
+    private volatile Runnable listener;
+
+    private volatile boolean closed;
+
+    public CompactionScheduler(TreeNode root, int threads) {
+        this.root = root;
+        int count = Math.max(threads, 1);
+        this.workers = Executors.newFixedThreadPool(count, new DefaultThreadFactory("Compaction"));
+        this.subcompactionPool = Executors.newCachedThreadPool(new DefaultThreadFactory("Subcompaction"));
+        for (int i = 0; i < count; i++) {
+            workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    backgroundLoop();
+                }
+            });
+        }
+    }
+
+    /**
+     * 文件列表发生变化后调用(刷盘、压缩完成), 唤醒空闲的压缩线程重新计算分数
+     */
+    public void maybeSchedule() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void backgroundLoop() {
+        while (!closed && !Thread.currentThread().isInterrupted()) {
+            Compaction compaction;
+            lock.lock();
+            try {
+                while (Objects.isNull(compaction = pick())) {
+                    if (closed) {
+                        return;
+                    }
+                    changed.await();
+                }
+                running.add(compaction);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean failed = false;
+            try {
+                LOGGER.info("[CompactionScheduler][backgroundLoop] 开始压缩: {}", compaction);
+                compaction.getNode().runCompaction(compaction, subcompactionPool);
+            } catch (RuntimeException e) {
+                LOGGER.error("[CompactionScheduler][backgroundLoop] 压缩失败: {}", compaction, e);
+                failed = true;
+            } finally {
+                lock.lock();
+                try {
+                    running.remove(compaction);
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            Runnable current = listener;
+            if (Objects.nonNull(current)) {
+                current.run();
+            }
+            if (failed) {
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private Compaction pick() {
+        return pick(root, running);
+    }
+
+    /**
+     * 按分数从高到低选择第一个和正在执行的压缩不冲突的压缩, 调度器调用时持有锁
+     * @param root L0
+     * @param running 正在执行的压缩
+     * @return 没有需要执行的压缩时返回 null
+     */
+    public static Compaction pick(TreeNode root, List<Compaction> running) {
+        // 分数在排序前计算一次, 其他线程完成压缩后分数会变化
+        Map<TreeNode, Double> scores = new IdentityHashMap<>();
+        List<TreeNode> candidates = new ArrayList<>();
+        for (TreeNode node = root; Objects.nonNull(node); node = node.getNextLevel()) {
+            double score = node.getScore();
+            if (score > 1) {
+                scores.put(node, score);
+                candidates.add(node);
+            }
+        }
+        candidates.sort(Comparator.comparing(scores::get, Comparator.reverseOrder()));
+        for (TreeNode node : candidates) {
+            Compaction compaction = node.pickCompaction(running);
+            if (Objects.nonNull(compaction)) {
+                return compaction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 停止调度新的压缩, 等待正在执行的压缩结束
+     */
+    public void shutdown() {
+        closed = true;
+        maybeSchedule();
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOGGER.warn("[CompactionScheduler][shutdown] 等待压缩结束超时");
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        subcompactionPool.shutdown();
+    }
+
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 正在执行的压缩数量
+     * @return
+     */
+    public int getRunningCount() {
+        lock.lock();
+        try {
+            return running.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
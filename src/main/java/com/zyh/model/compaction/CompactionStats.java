@@ -0,0 +1,71 @@
+package com.zyh.model.compaction;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 压缩统计, 每一层一个, 记录从这一层压缩到下一层的数据量
+ */
+public class CompactionStats {
+
+    private final LongAdder compactions = new LongAdder();
+
+    private final LongAdder bytesRead = new LongAdder();
+
+    private final LongAdder bytesWritten = new LongAdder();
+
+    // 直接移动到下一层的文件数和字节数, 这些数据没有被读取和重写
+    private final LongAdder trivialMoves = new LongAdder();
+
+    private final LongAdder trivialMoveBytes = new LongAdder();
+
+    public void recordCompaction(long read, long written) {
+        compactions.increment();
+        bytesRead.add(read);
+        bytesWritten.add(written);
+    }
+
+    public void recordTrivialMove(int files, long bytes) {
+        trivialMoves.add(files);
+        trivialMoveBytes.add(bytes);
+    }
+
+    /**
+     * 累加另一层的统计, 用于汇总所有层
+     */
+    public void add(CompactionStats other) {
+        compactions.add(other.getCompactions());
+        bytesRead.add(other.getBytesRead());
+        bytesWritten.add(other.getBytesWritten());
+        trivialMoves.add(other.getTrivialMoves());
+        trivialMoveBytes.add(other.getTrivialMoveBytes());
+    }
+
+    public long getCompactions() {
+        return compactions.sum();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    public long getTrivialMoves() {
+        return trivialMoves.sum();
+    }
+
+    /**
+     * 直接移动节省的字节数: 如果重写, 这些数据需要各读写一次
+     */
+    public long getTrivialMoveBytes() {
+        return trivialMoveBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompactionStats{compactions=%d, bytesRead=%d, bytesWritten=%d, trivialMoves=%d, trivialMoveBytes=%d}",
+                getCompactions(), getBytesRead(), getBytesWritten(), getTrivialMoves(), getTrivialMoveBytes());
+    }
+}
@@ -0,0 +1,221 @@
+package com.zyh.model.compaction;
+
+import com.zyh.model.TreeNode;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.model.iterator.MergingIterator;
+import com.zyh.model.limiter.IoPriority;
+import com.zyh.model.snapshot.VersionFilter;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.model.sstable.TableBuilder;
+import com.zyh.model.sstable.TableIterator;
+import com.zyh.utils.FileNameUtil;
+import com.zyh.utils.LoggerUtil;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 多路归并输入文件并流式写出, 每个输入文件同一时间只有一个数据块在内存中
+ * 同一个 key 保留最新的记录(包括删除标记), 以及未释放的快照还需要的旧版本, 见 {@link VersionFilter}
+ * 某个输入的整个数据块都排在其他输入的下一个 key 之前, 并且块中每个 key 只有一个版本时, 这个块不会和其他输入重叠,
+ * 直接按原始字节传输到输出文件, 不解码也不重新编码
+ * 同一个 key 的所有版本写入同一个输出文件
+ * 子压缩只处理 [lower, upper) 中的 key, 多个子压缩各自使用一个 CompactionWriter
+ */
+public class CompactionWriter {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(CompactionWriter.class);
+
+    private final String dataDir;
+
+    private final Options options;
+
+    private final TableCache tableCache;
+
+    private final KeyOrder comparator;
+
+    // 压缩开始时未释放的快照, 从小到大排列
+    private final long[] snapshots;
+
+    // 输入文件的大小
+    @Getter
+    private long bytesRead;
+
+    // 输出文件的大小
+    @Getter
+    private long bytesWritten;
+
+    // 整块传输的字节数
+    @Getter
+    private long bytesCopied;
+
+    @Getter
+    private long elapsedNanos;
+
+    // 丢弃的旧版本数量
+    @Getter
+    private long versionsDropped;
+
+    public CompactionWriter(String dataDir, Options options, TableCache tableCache) {
+        this(dataDir, options, tableCache, new long[0]);
+    }
+
+    /**
+     * @param snapshots 压缩开始时未释放的快照的顺序号, 从小到大排列
+     */
+    public CompactionWriter(String dataDir, Options options, TableCache tableCache, long[] snapshots) {
+        this.dataDir = dataDir;
+        this.options = options;
+        this.tableCache = tableCache;
+        this.comparator = options.getKeyOrder();
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * @param inputs 输入文件, 从新到旧排列
+     * @param maxBytes 每个输出文件的目标大小(字节), 达到后切换到下一个文件
+     * @return 输出文件, 按 key 有序且互不重叠
+     */
+    public List<SsTable> write(List<SsTable> inputs, long maxBytes) {
+        return write(inputs, maxBytes, null, null);
+    }
+
+    /**
+     * @param inputs 输入文件, 从新到旧排列
+     * @param maxBytes 每个输出文件的目标大小(字节), 达到后切换到下一个文件
+     * @param lower 包含的最小 key, 为空时从头开始
+     * @param upper 不包含的最大 key, 为空时到结尾
+     * @return 输出文件, 按 key 有序且互不重叠
+     */
+    public List<SsTable> write(List<SsTable> inputs, long maxBytes, String lower, String upper) {
+        long begin = System.nanoTime();
+        List<SsTable> outputs = new ArrayList<>();
+        List<KvIterator> children = new ArrayList<>();
+        TableBuilder builder = null;
+        VersionFilter filter = new VersionFilter(snapshots);
+        try {
+            for (SsTable input : inputs) {
+                // 压缩期间迭代器持有文件引用, 文件不会被表缓存关闭
+                children.add(input.iterator(false));
+                bytesRead += input.getFileSize();
+            }
+            MergingIterator iterator = new MergingIterator(children, comparator);
+            if (Objects.isNull(lower)) {
+                iterator.seekToFirst();
+            } else {
+                iterator.seek(lower);
+            }
+            while (iterator.valid() && (Objects.isNull(upper) || comparator.compare(iterator.key(), upper) < 0)) {
+                String key = iterator.key();
+                boolean sameKey = filter.isSameKey(key);
+                if (!filter.keep(key, iterator.seq())) {
+                    iterator.next();
+                    continue;
+                }
+                // 只在 key 变化时切换输出文件
+                if (Objects.nonNull(builder) && builder.getFileSize() >= maxBytes && !sameKey) {
+                    outputs.add(finishTable(builder));
+                    builder = null;
+                }
+                if (Objects.isNull(builder)) {
+                    builder = new TableBuilder(dataDir + File.separator + FileNameUtil.getFileName() + TreeNode.SUFFIX, options, IoPriority.LOW);
+                }
+                if (!sameKey && options.isCompactionBlockCopy() && copyBlock(iterator, builder, maxBytes, upper)) {
+                    filter.reset();
+                    continue;
+                }
+                builder.add(key, iterator.seq(), iterator.valueArray(), iterator.valueOffset(), iterator.valueLength(), iterator.isDeleted());
+                iterator.next();
+            }
+            if (Objects.nonNull(builder)) {
+                outputs.add(finishTable(builder));
+                builder = null;
+            }
+        } catch (RuntimeException e) {
+            if (Objects.nonNull(builder)) {
+                builder.abandon();
+            }
+            for (SsTable output : outputs) {
+                output.deleteFile();
+            }
+            throw e;
+        } finally {
+            for (KvIterator child : children) {
+                child.close();
+            }
+        }
+        elapsedNanos += System.nanoTime() - begin;
+        versionsDropped += filter.getDropped();
+        LoggerUtil.info(LOGGER, "[CompactionWriter][write] 输入: {} MB, 输出: {} MB, 整块传输: {} MB, 丢弃旧版本: {}, 耗时: {} ms, {} MB/s",
+                toMb(bytesRead), toMb(bytesWritten), toMb(bytesCopied), filter.getDropped(), elapsedNanos / 1_000_000, String.format("%.1f", getThroughput()));
+        return outputs;
+    }
+
+    /**
+     * 当前输入位于数据块开头, 整个块都小于其他输入的下一个 key, 并且块中每个 key 只有一个版本时, 整块传输
+     * 调用方保证块的第一个 key 和之前的记录不同, 块中的记录都是各自 key 的最新版本, 不需要过滤
+     * @return 是否传输成功
+     */
+    private boolean copyBlock(MergingIterator iterator, TableBuilder builder, long maxBytes, String upper) {
+        KvIterator child = iterator.currentChild();
+        if (!(child instanceof TableIterator)) {
+            return false;
+        }
+        TableIterator table = (TableIterator) child;
+        if (!table.atBlockStart()) {
+            return false;
+        }
+        String other = iterator.peekOtherKey();
+        if (Objects.nonNull(other) && comparator.compare(other, table.blockLastKey()) <= 0) {
+            return false;
+        }
+        // 块的一部分属于下一个子压缩
+        if (Objects.nonNull(upper) && comparator.compare(table.blockLastKey(), upper) >= 0) {
+            return false;
+        }
+        if (builder.getEntryCount() > 0 && builder.getFileSize() + table.blockHandle().getSize() > maxBytes) {
+            // 放不下时逐条写入, 由文件大小决定切分位置
+            return false;
+        }
+        List<String> keys = table.blockKeys();
+        for (int i = 1; i < keys.size(); i++) {
+            // 有多个版本的块需要逐条过滤
+            if (keys.get(i).equals(keys.get(i - 1))) {
+                return false;
+            }
+        }
+        builder.addRawBlock(table.getReader().getChannel(), table.blockHandle(), keys, table.blockMaxSeq());
+        bytesCopied += table.blockHandle().getSize();
+        iterator.advanceCurrent(current -> ((TableIterator) current).nextBlock());
+        return true;
+    }
+
+    private SsTable finishTable(TableBuilder builder) {
+        SsTable ssTable = SsTable.createFromBuilder(builder, tableCache);
+        bytesWritten += ssTable.getFileSize();
+        LoggerUtil.info(LOGGER, "[CompactionWriter][finishTable]: {}, 记录数: {}", builder.getFilePath(), builder.getEntryCount());
+        return ssTable;
+    }
+
+    /**
+     * 按输入和输出的总字节数计算的吞吐量(MB/s)
+     */
+    public double getThroughput() {
+        if (elapsedNanos == 0) {
+            return 0;
+        }
+        return (bytesRead + bytesWritten) / 1024.0 / 1024.0 / (elapsedNanos / 1e9);
+    }
+
+    private static String toMb(long bytes) {
+        return String.format("%.2f", bytes / 1024.0 / 1024.0);
+    }
+}
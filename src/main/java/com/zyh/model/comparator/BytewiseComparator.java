@@ -0,0 +1,36 @@
+package com.zyh.model.comparator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 默认的比较器: 按无符号字节序比较
+ * 内部比较时由 {@link KeyOrder} 直接比较字符, 不会调用这里的方法
+ */
+public class BytewiseComparator implements KeyComparator {
+
+    public static final String NAME = "tinykv.BytewiseComparator";
+
+    public static final BytewiseComparator INSTANCE = new BytewiseComparator();
+
+    private BytewiseComparator() {
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int compare(ByteBuffer a, ByteBuffer b) {
+        int aPos = a.position();
+        int bPos = b.position();
+        int len = Math.min(a.remaining(), b.remaining());
+        for (int i = 0; i < len; i++) {
+            int cmp = (a.get(aPos + i) & 0xFF) - (b.get(bPos + i) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return a.remaining() - b.remaining();
+    }
+}
@@ -0,0 +1,25 @@
+package com.zyh.model.comparator;
+
+import java.nio.ByteBuffer;
+
+/**
+ * key 的排序方式, 参数是 key 的原始字节
+ * 只有字节完全相同的 key 才能相等
+ * 名字记录在 manifest 中, 打开已有的数据时必须使用同一个比较器
+ */
+public interface KeyComparator {
+
+    String name();
+
+    /**
+     * 比较 a 和 b 在 position 到 limit 之间的字节, 不能修改它们的 position 和 limit
+     * @param a
+     * @param b
+     * @return
+     */
+    int compare(ByteBuffer a, ByteBuffer b);
+
+    default int compare(byte[] a, byte[] b) {
+        return compare(ByteBuffer.wrap(a), ByteBuffer.wrap(b));
+    }
+}
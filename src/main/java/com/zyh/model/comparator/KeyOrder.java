@@ -0,0 +1,71 @@
+package com.zyh.model.comparator;
+
+import com.zyh.utils.BytesUtil;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+
+/**
+ * {@link KeyComparator} 在内部形式的 key 上的比较: 内存表、数据块、每层文件的 key 范围和压缩的输出都按它排序
+ * 内部形式每个字符对应一个字节(0-255), 见 {@link BytesUtil}
+ * 默认的字节序直接比较字符, 不需要转换; 其他比较器每次比较前把 key 转换为字节
+ */
+public final class KeyOrder implements Comparator<String> {
+
+    public static final KeyOrder BYTEWISE = new KeyOrder(BytewiseComparator.INSTANCE);
+
+    private final KeyComparator comparator;
+
+    private final boolean bytewise;
+
+    private KeyOrder(KeyComparator comparator) {
+        this.comparator = comparator;
+        this.bytewise = comparator == BytewiseComparator.INSTANCE;
+    }
+
+    public static KeyOrder of(KeyComparator comparator) {
+        return comparator == BytewiseComparator.INSTANCE ? BYTEWISE : new KeyOrder(comparator);
+    }
+
+    public String name() {
+        return comparator.name();
+    }
+
+    public KeyComparator getComparator() {
+        return comparator;
+    }
+
+    @Override
+    public int compare(String a, String b) {
+        if (bytewise) {
+            return a.compareTo(b);
+        }
+        return comparator.compare(wrap(a), wrap(b));
+    }
+
+    /**
+     * 数据块中的 key 和 target 比较, 字节序时不创建字符串
+     * @param key
+     * @param offset
+     * @param length
+     * @param target 内部形式
+     * @return
+     */
+    public int compare(byte[] key, int offset, int length, String target) {
+        if (!bytewise) {
+            return comparator.compare(ByteBuffer.wrap(key, offset, length), wrap(target));
+        }
+        int len = Math.min(length, target.length());
+        for (int i = 0; i < len; i++) {
+            int cmp = (key[offset + i] & 0xFF) - target.charAt(i);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return length - target.length();
+    }
+
+    private static ByteBuffer wrap(String raw) {
+        return ByteBuffer.wrap(BytesUtil.toBytes(raw));
+    }
+}
@@ -0,0 +1,134 @@
+package com.zyh.model.config;
+
+import com.zyh.model.cache.BlockCache;
+import com.zyh.model.cache.CachePolicy;
+import com.zyh.model.comparator.BytewiseComparator;
+import com.zyh.model.comparator.KeyComparator;
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.constant.Constant;
+import com.zyh.model.limiter.RateLimiter;
+import com.zyh.model.log.SyncPolicy;
+import lombok.Data;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * TinyKV 的可配置参数
+ */
+@Data
+public class Options {
+
+    // key 的排序方式, 默认按无符号字节序, 打开已有的数据时必须和创建时相同
+    private KeyComparator comparator = BytewiseComparator.INSTANCE;
+
+    // 内存表估算占用的最大字节数, 超过后切换为只读表并刷盘
+    private long memtableMaxBytes = 4 * 1024 * 1024;
+
+    // 内存表的最大记录数, 小于等于 0 时只按字节数切换
+    private int storeThreshold = 0;
+
+    // WAL 刷盘策略
+    private SyncPolicy syncPolicy = SyncPolicy.NONE;
+
+    // INTERVAL 策略下的刷盘间隔(ms)
+    private long syncIntervalMs = 1000;
+
+    // SsTable 布隆过滤器每个 key 占用的位数, 小于等于 0 时不生成过滤器
+    private int bloomBitsPerKey = Constant.BLOOMFILTER_BITS_PER_KEY;
+
+    // 数据块缓存的容量(字节), 小于等于 0 时不使用缓存
+    private long blockCacheBytes = 8 * 1024 * 1024;
+
+    // 数据块缓存的分片数为 2^blockCacheShardBits
+    private int blockCacheShardBits = 4;
+
+    // 数据块缓存的淘汰策略
+    private CachePolicy blockCachePolicy = CachePolicy.LRU;
+
+    // 数据块是否缓存在堆外
+    private boolean blockCacheOffHeap = false;
+
+    // 共享的数据块缓存, 为空时按照上面的参数创建, 多个 TinyKV 实例可以设置同一个缓存
+    private BlockCache blockCache;
+
+    // 同时打开的表文件数量上限, 超过后关闭最久未使用的文件
+    private int maxOpenFiles = 1000;
+
+    // 使用内存映射读取表文件, 适合内存充足、读多写少的场景
+    // 映射的地址空间受 maxOpenFiles 限制, 文件关闭时释放映射
+    private boolean useMmapReads = false;
+
+    // L0 文件数达到这个值后压缩到 L1
+    private int level0CompactionTrigger = 4;
+
+    // L1 的目标大小(字节), 约为 4 个内存表, 超过后压缩到下一层
+    private long maxBytesForLevelBase = 16 * 1024 * 1024;
+
+    // 相邻两层目标大小的倍数
+    private int levelSizeMultiplier = 10;
+
+    // 压缩输出文件的目标大小(字节), 达到后在下一个 key 处切换到新文件
+    private long targetFileSizeBytes = 2 * 1024 * 1024;
+
+    // 压缩时不和其他输入重叠的数据块整块传输, 关闭后逐条重新编码
+    private boolean compactionBlockCopy = true;
+
+    // 压缩的文件和下一层不重叠时, 直接把文件移到下一层而不重写
+    private boolean allowTrivialMove = true;
+
+    // 刷盘线程数, 多个只读表同时写文件, 按新旧顺序加入 L0
+    private int flushThreads = 2;
+
+    // 刷盘失败后重试的间隔(ms)
+    private long flushRetryIntervalMs = 1000;
+
+    // 压缩线程数, 涉及的 key 范围互不重叠的压缩可以同时执行
+    private int compactionThreads = 2;
+
+    // 一次压缩最多切分为多少个 key 范围互不重叠的子压缩并行执行, 1 表示不切分
+    private int maxSubcompactions = 1;
+
+    // 刷盘和压缩共享的写入速率上限(字节/秒), 小于等于 0 时不限速
+    private long rateLimitBytesPerSec = 0;
+
+    // 共享的限速器, 为空时按照 rateLimitBytesPerSec 创建, 多个 TinyKV 实例共用一块磁盘时可以设置同一个限速器
+    private RateLimiter rateLimiter;
+
+    // 根据前台 get 的 p99 延迟自动调整速率, rateLimitBytesPerSec 作为上限
+    private boolean rateLimiterAutoTune = false;
+
+    // 自动调速的目标 get p99 延迟(us)
+    private long rateLimiterTargetP99Micros = 1000;
+
+    // L0 文件数达到这个值后每次写入等待 writeSlowdownMicros
+    private int level0SlowdownFiles = 8;
+
+    // L0 文件数达到这个值后阻塞写入, 直到压缩减少 L0 的文件
+    private int level0StopFiles = 12;
+
+    // 等待刷盘的只读表估算字节数达到这个值后每次写入等待 writeSlowdownMicros
+    private long pendingFlushSlowdownBytes = 16 * 1024 * 1024;
+
+    // 等待刷盘的只读表估算字节数达到这个值后阻塞写入, 直到刷盘完成
+    private long pendingFlushStopBytes = 32 * 1024 * 1024;
+
+    // 只读表数量达到这个值后阻塞写入, 按记录数切换内存表时限制积压
+    private int maxImmutableNum = Constant.MAX_IMMUTABLE_NUM;
+
+    // 超过软限制时每次写入等待的时间(us)
+    private long writeSlowdownMicros = 1000;
+
+    // multiGet 并行查询表文件的线程数, 小于等于 0 时在调用线程中依次查询
+    private int multiGetThreads = 4;
+
+    // 共享的 multiGet 查询线程池, 为空时按照 multiGetThreads 创建
+    private ExecutorService multiGetExecutor;
+
+    /**
+     * comparator 在内部形式的 key 上的比较
+     * @return
+     */
+    public KeyOrder getKeyOrder() {
+        return KeyOrder.of(comparator);
+    }
+}
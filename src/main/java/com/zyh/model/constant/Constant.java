@@ -2,31 +2,46 @@ package com.zyh.model.constant;
 
 public class Constant {
 
-    // bloomfilter的初始大小
-    public static final int BLOOMFILTER_INIT_SIZE = 100;
-
-    // bloomfilter的错误率
-    public static final double BLOOMFILTER_WRONG_RATE = 0.001;
+    // bloomfilter每个key占用的位数, 10 位约为 1% 的错误率
+    public static final int BLOOMFILTER_BITS_PER_KEY = 10;
 
     // 稀疏索引构建的大小
     public static final long SPARSE_INDEX_PART_SIZE = 10;
 
-    public static final String RW = "rw";
+    // SsTable 数据块的目标大小(字节)
+    public static final int BLOCK_SIZE = 4 * 1024;
 
-    // L0 层SSTable文件的最大值（MB）
-    public static final int MAX_FILE_SIZE = 128;
+    // 数据块内重启点的间隔(记录数)
+    public static final int BLOCK_RESTART_INTERVAL = 16;
 
-    // 每一层最大的文件数量 = MAX_FILE_NUM * max(level * ratio,1)
-    public static final int MAX_FILE_NUM = 2;
+    // 写 SsTable 时堆外缓冲区的大小(字节)
+    public static final int TABLE_WRITE_BUFFER_SIZE = 256 * 1024;
 
-    // 每一个文件存储的记录数 = MAX_ITEM_NUM * max(level * ratio,1)
-    public static final int MAX_ITEM_NUM = 100;
+    // 内存映射读取时每一段映射的大小, 单个 MappedByteBuffer 最大只能映射 2GB
+    public static final int MMAP_CHUNK_SIZE = 1 << 30;
 
-    // 放大因子
-    public static final int RATIO = 2;
+    public static final String RW = "rw";
+
+    // L0 层SSTable文件的最大值（MB）
+    public static final int MAX_FILE_SIZE = 128;
 
     public static final long VERSION = 0;
 
+    // manifest 中增量记录的最大数量, 超过后启动时重写为一份快照
+    public static final int MANIFEST_MAX_EDITS = 1000;
+
     // 内存中只读表的最大数量
     public static final int MAX_IMMUTABLE_NUM = 10;
+
+    // 每个子压缩至少处理的数据块数量, 数据量太小时不切分
+    public static final int SUBCOMPACTION_MIN_BLOCKS = 8;
+
+    // 限速器令牌桶最多积累多长时间的令牌(ms)
+    public static final long RATE_LIMITER_REFILL_PERIOD_MS = 100;
+
+    // 两个优先级都在排队时, 低优先级至少得到补充的令牌的 1/RATE_LIMITER_FAIRNESS
+    public static final long RATE_LIMITER_FAIRNESS = 10;
+
+    // 自动调速的统计窗口(ms)
+    public static final long RATE_LIMITER_TUNE_INTERVAL_MS = 1000;
 }
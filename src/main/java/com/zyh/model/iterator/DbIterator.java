@@ -0,0 +1,138 @@
+package com.zyh.model.iterator;
+
+import com.zyh.model.snapshot.Snapshot;
+import com.zyh.utils.BytesUtil;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+
+/**
+ * 面向用户的迭代器: 合并内存表、只读表和每一层的文件, 每个 key 只返回对快照可见的最新版本, 跳过删除标记
+ * 迭代范围为 [lower, upper), 边界为空时不限制
+ * 创建时固定了参与合并的内存表和文件, 之后的刷盘和压缩不会影响迭代; 文件在迭代器关闭前不会被删除
+ * 内存表中之后写入的记录 seq 大于快照, 迭代过程中看到的始终是创建快照时的数据
+ * key 和 value 可以按文本(UTF-8)读取, 也可以读取原始字节; 边界 lower/upper 为内部形式, 见 {@link BytesUtil}
+ * 使用结束后必须关闭
+ */
+public class DbIterator implements Closeable {
+
+    private final KvIterator iterator;
+
+    private final Comparator<String> comparator;
+
+    private final String lower;
+
+    private final String upper;
+
+    private final Snapshot snapshot;
+
+    // 迭代器自己创建的快照在关闭时释放, 调用方传入的快照由调用方释放
+    private final boolean ownsSnapshot;
+
+    public DbIterator(KvIterator iterator, Comparator<String> comparator, String lower, String upper,
+                      Snapshot snapshot, boolean ownsSnapshot) {
+        this.iterator = iterator;
+        this.comparator = comparator;
+        this.lower = lower;
+        this.upper = upper;
+        this.snapshot = snapshot;
+        this.ownsSnapshot = ownsSnapshot;
+    }
+
+    public boolean valid() {
+        return iterator.valid() && (Objects.isNull(upper) || comparator.compare(iterator.key(), upper) < 0);
+    }
+
+    public void seekToFirst() {
+        if (Objects.isNull(lower)) {
+            iterator.seekToFirst();
+        } else {
+            iterator.seek(lower);
+        }
+        findVisible(null);
+    }
+
+    /**
+     * 定位到第一个大于等于 target 的 key, 小于 lower 时定位到 lower
+     * @param target 文本
+     */
+    public void seek(String target) {
+        seekRaw(BytesUtil.fromText(target));
+    }
+
+    public void seek(byte[] target) {
+        seekRaw(BytesUtil.fromBytes(target));
+    }
+
+    private void seekRaw(String target) {
+        iterator.seek(Objects.nonNull(lower) && comparator.compare(target, lower) < 0 ? lower : target);
+        findVisible(null);
+    }
+
+    /**
+     * 移动到下一个 key, 当前 key 剩余的旧版本一起跳过
+     */
+    public void next() {
+        String key = iterator.key();
+        iterator.next();
+        findVisible(key);
+    }
+
+    /**
+     * 跳过对快照不可见的版本、已经返回过的 key 的旧版本, 以及最新可见版本为删除标记的 key
+     * @param skipKey 需要跳过的 key, 为空时不跳过
+     */
+    private void findVisible(String skipKey) {
+        while (valid()) {
+            String key = iterator.key();
+            if (key.equals(skipKey) || iterator.seq() > snapshot.getSeq()) {
+                iterator.next();
+            } else if (iterator.isDeleted()) {
+                skipKey = key;
+                iterator.next();
+            } else {
+                return;
+            }
+        }
+    }
+
+    public String key() {
+        return BytesUtil.toText(iterator.key());
+    }
+
+    public String value() {
+        return new String(iterator.valueArray(), iterator.valueOffset(), iterator.valueLength(), BytesUtil.TEXT);
+    }
+
+    public byte[] keyBytes() {
+        return BytesUtil.toBytes(iterator.key());
+    }
+
+    public byte[] valueBytes() {
+        int offset = iterator.valueOffset();
+        return Arrays.copyOfRange(iterator.valueArray(), offset, offset + iterator.valueLength());
+    }
+
+    /**
+     * 当前 value 的只读视图, 不复制数据, 移动迭代器后失效
+     * @return
+     */
+    public ByteBuffer valueBuffer() {
+        return ByteBuffer.wrap(iterator.valueArray(), iterator.valueOffset(), iterator.valueLength()).slice().asReadOnlyBuffer();
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void close() {
+        iterator.close();
+        if (ownsSnapshot) {
+            snapshot.close();
+        }
+    }
+}
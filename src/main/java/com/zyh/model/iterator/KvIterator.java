@@ -0,0 +1,44 @@
+package com.zyh.model.iterator;
+
+import java.io.Closeable;
+
+/**
+ * 有序的 key-value 迭代器, key 为内部形式, 按 Options 中比较器的顺序排列, 同一个 key 的多个版本按 seq 从大到小排列
+ * value 以 (数组, 偏移量, 长度) 的形式返回, 只在下一次移动之前有效, 调用方不能修改
+ */
+public interface KvIterator extends Closeable {
+
+    boolean valid();
+
+    void seekToFirst();
+
+    /**
+     * 定位到第一个大于等于 target 的记录
+     * @param target
+     */
+    void seek(String target);
+
+    void next();
+
+    String key();
+
+    boolean isDeleted();
+
+    /**
+     * 当前记录的写入顺序号, 旧版本文件中的记录为 0
+     * @return
+     */
+    long seq();
+
+    byte[] valueArray();
+
+    int valueOffset();
+
+    int valueLength();
+
+    /**
+     * 释放迭代器持有的资源, 不抛出受检异常
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,118 @@
+package com.zyh.model.iterator;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 依次遍历一层(L1 及以上)中按 key 排列、互不重叠的文件
+ * 定位时按每个文件的最小 key 二分查找, 只有定位到的文件会读取数据块
+ */
+public class LevelIterator implements KvIterator {
+
+    // 每个文件的最小 key, 和 tables 一一对应
+    private final List<String> minKeys;
+
+    private final List<? extends KvIterator> tables;
+
+    private final Comparator<String> comparator;
+
+    private int index;
+
+    public LevelIterator(List<String> minKeys, List<? extends KvIterator> tables, Comparator<String> comparator) {
+        this.minKeys = minKeys;
+        this.tables = tables;
+        this.comparator = comparator;
+        this.index = tables.size();
+    }
+
+    @Override
+    public boolean valid() {
+        return index < tables.size() && tables.get(index).valid();
+    }
+
+    @Override
+    public void seekToFirst() {
+        index = 0;
+        if (!tables.isEmpty()) {
+            tables.get(0).seekToFirst();
+        }
+        skipEmptyTables();
+    }
+
+    @Override
+    public void seek(String target) {
+        // 最后一个最小 key 小于等于 target 的文件
+        int idx = Collections.binarySearch(minKeys, target, comparator);
+        if (idx < 0) {
+            idx = Math.max(-idx - 2, 0);
+        }
+        index = idx;
+        if (index < tables.size()) {
+            tables.get(index).seek(target);
+        }
+        skipEmptyTables();
+    }
+
+    @Override
+    public void next() {
+        tables.get(index).next();
+        skipEmptyTables();
+    }
+
+    /**
+     * 当前文件遍历结束后移动到下一个文件的开头
+     */
+    private void skipEmptyTables() {
+        while (index < tables.size() && !tables.get(index).valid()) {
+            index++;
+            if (index < tables.size()) {
+                tables.get(index).seekToFirst();
+            }
+        }
+    }
+
+    private KvIterator current() {
+        return tables.get(index);
+    }
+
+    @Override
+    public String key() {
+        return current().key();
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return current().isDeleted();
+    }
+
+    @Override
+    public long seq() {
+        return current().seq();
+    }
+
+    @Override
+    public byte[] valueArray() {
+        return current().valueArray();
+    }
+
+    @Override
+    public int valueOffset() {
+        return current().valueOffset();
+    }
+
+    @Override
+    public int valueLength() {
+        return current().valueLength();
+    }
+
+    @Override
+    public void close() {
+        for (KvIterator table : tables) {
+            if (Objects.nonNull(table)) {
+                table.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.zyh.model.iterator;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * 多路归并迭代器: 用小顶堆合并多个有序的迭代器, 内存占用只和输入的数量有关
+ * 返回所有输入中的每一个版本, 按 key 升序、seq 降序排列; 旧文件中的记录 seq 都为 0, 这时按 children 的顺序(从新到旧)
+ * 哪些版本可见由调用方决定: 读取时见 {@link DbIterator}, 压缩时见 {@link com.zyh.model.snapshot.VersionFilter}
+ */
+public class MergingIterator implements KvIterator {
+
+    private final List<? extends KvIterator> children;
+
+    // 堆中保存 children 的下标: 先按 key 排序, key 相同时 seq 大的靠前, seq 也相同时越新(下标越小)越靠前
+    private final PriorityQueue<Integer> heap;
+
+    public MergingIterator(List<? extends KvIterator> children, Comparator<String> comparator) {
+        this.children = children;
+        this.heap = new PriorityQueue<>(Math.max(children.size(), 1), (a, b) -> {
+            KvIterator left = children.get(a);
+            KvIterator right = children.get(b);
+            int cmp = comparator.compare(left.key(), right.key());
+            if (cmp != 0) {
+                return cmp;
+            }
+            cmp = Long.compare(right.seq(), left.seq());
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+    }
+
+    @Override
+    public boolean valid() {
+        return !heap.isEmpty();
+    }
+
+    @Override
+    public void seekToFirst() {
+        heap.clear();
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).seekToFirst();
+            if (children.get(i).valid()) {
+                heap.add(i);
+            }
+        }
+    }
+
+    @Override
+    public void seek(String target) {
+        heap.clear();
+        for (int i = 0; i < children.size(); i++) {
+            children.get(i).seek(target);
+            if (children.get(i).valid()) {
+                heap.add(i);
+            }
+        }
+    }
+
+    /**
+     * 移动到下一条记录, 可能是同一个 key 更旧的版本
+     */
+    @Override
+    public void next() {
+        int index = heap.poll();
+        KvIterator child = children.get(index);
+        child.next();
+        if (child.valid()) {
+            heap.add(index);
+        }
+    }
+
+    private KvIterator current() {
+        return children.get(heap.peek());
+    }
+
+    /**
+     * 当前记录所在的输入
+     */
+    public KvIterator currentChild() {
+        return current();
+    }
+
+    /**
+     * 除当前输入以外, 其他输入中最小的 key
+     * @return 没有其他输入时为空
+     */
+    public String peekOtherKey() {
+        int top = heap.poll();
+        Integer second = heap.peek();
+        heap.add(top);
+        return Objects.isNull(second) ? null : children.get(second).key();
+    }
+
+    /**
+     * 在外部移动当前输入(例如跳过一整个数据块), 然后重新排序
+     * 调用方保证跳过的记录不会和其他输入中的 key 重复
+     * @param action
+     */
+    public void advanceCurrent(Consumer<KvIterator> action) {
+        int top = heap.poll();
+        KvIterator child = children.get(top);
+        action.accept(child);
+        if (child.valid()) {
+            heap.add(top);
+        }
+    }
+
+    @Override
+    public String key() {
+        return current().key();
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return current().isDeleted();
+    }
+
+    @Override
+    public long seq() {
+        return current().seq();
+    }
+
+    @Override
+    public byte[] valueArray() {
+        return current().valueArray();
+    }
+
+    @Override
+    public int valueOffset() {
+        return current().valueOffset();
+    }
+
+    @Override
+    public int valueLength() {
+        return current().valueLength();
+    }
+
+    @Override
+    public void close() {
+        for (KvIterator child : children) {
+            child.close();
+        }
+    }
+}
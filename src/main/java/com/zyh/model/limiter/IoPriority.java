@@ -0,0 +1,11 @@
+package com.zyh.model.limiter;
+
+/**
+ * 后台写入的优先级, 令牌不足时先满足高优先级的请求
+ */
+public enum IoPriority {
+    // 刷盘: 只读表堆积会阻塞前台写入
+    HIGH,
+    // 压缩
+    LOW
+}
@@ -0,0 +1,224 @@
+package com.zyh.model.limiter;
+
+import com.zyh.model.constant.Constant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 后台写入(刷盘和压缩)共享的令牌桶, 每写入一个字节消耗一个令牌
+ * 令牌按速率持续补充, 最多积累 RATE_LIMITER_REFILL_PERIOD_MS 的量, 空闲时不会积累出很大的突发
+ * 令牌不足时请求按优先级排队, 先分配给高优先级; 低优先级排队期间补充的令牌中至少 1/RATE_LIMITER_FAIRNESS 留给低优先级,
+ * 刷盘持续排队时压缩也不会停下; 大于桶容量的请求分多次得到令牌
+ * 速率可以在运行时修改, 小于等于 0 时不限速
+ */
+public class RateLimiter {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(RateLimiter.class);
+
+    private static final long REFILL_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(Constant.RATE_LIMITER_REFILL_PERIOD_MS);
+
+    private static class Request {
+        long remaining;
+
+        Request(long bytes) {
+            this.remaining = bytes;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition granted = lock.newCondition();
+
+    // 下标为 IoPriority.ordinal()
+    private final List<Deque<Request>> queues;
+
+    private final LongAdder[] requestedBytes;
+
+    private final LongAdder[] waitNanos;
+
+    private volatile long bytesPerSecond;
+
+    private long available;
+
+    private long lastRefillNanos;
+
+    // 低优先级排队期间补充的令牌数, 减去已经分给低优先级的部分(乘以 RATE_LIMITER_FAIRNESS)
+    private long lowPriorityRefilled;
+
+    public RateLimiter(long bytesPerSecond) {
+        int priorities = IoPriority.values().length;
+        this.queues = new ArrayList<>(priorities);
+        this.requestedBytes = new LongAdder[priorities];
+        this.waitNanos = new LongAdder[priorities];
+        for (int i = 0; i < priorities; i++) {
+            queues.add(new ArrayDeque<>());
+            requestedBytes[i] = new LongAdder();
+            waitNanos[i] = new LongAdder();
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 写入前申请令牌, 令牌不足时阻塞
+     * @param bytes 写入的字节数
+     * @param priority
+     */
+    public void request(long bytes, IoPriority priority) {
+        if (bytes <= 0) {
+            return;
+        }
+        requestedBytes[priority.ordinal()].add(bytes);
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long begin = System.nanoTime();
+        Request request = new Request(bytes);
+        Deque<Request> queue = queues.get(priority.ordinal());
+        lock.lock();
+        try {
+            queue.addLast(request);
+            while (request.remaining > 0) {
+                if (bytesPerSecond <= 0) {
+                    // 等待期间改为不限速
+                    request.remaining = 0;
+                    queue.remove(request);
+                    break;
+                }
+                refill();
+                grant();
+                if (request.remaining > 0) {
+                    granted.awaitNanos(nanosUntilRefill(request.remaining));
+                }
+            }
+        } catch (InterruptedException e) {
+            queue.remove(request);
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+        waitNanos[priority.ordinal()].add(System.nanoTime() - begin);
+    }
+
+    /**
+     * 按经过的时间补充令牌, 不足一个令牌的时间留到下一次
+     */
+    private void refill() {
+        long now = System.nanoTime();
+        long rate = bytesPerSecond;
+        long elapsed = now - lastRefillNanos;
+        long burst = Math.max(rate * REFILL_PERIOD_NANOS / TimeUnit.SECONDS.toNanos(1), 1);
+        long tokens = (long) ((double) rate * elapsed / TimeUnit.SECONDS.toNanos(1));
+        if (tokens <= 0) {
+            return;
+        }
+        long before = available;
+        if (available + tokens >= burst) {
+            available = burst;
+            lastRefillNanos = now;
+        } else {
+            available += tokens;
+            lastRefillNanos += (long) ((double) tokens * TimeUnit.SECONDS.toNanos(1) / rate);
+        }
+        if (!queues.get(IoPriority.LOW.ordinal()).isEmpty()) {
+            lowPriorityRefilled += available - before;
+        }
+    }
+
+    /**
+     * 先把低优先级应得的份额分给低优先级, 剩下的令牌按优先级分配
+     */
+    private void grant() {
+        Deque<Request> low = queues.get(IoPriority.LOW.ordinal());
+        if (low.isEmpty()) {
+            lowPriorityRefilled = 0;
+        } else {
+            grant(low, lowPriorityRefilled / Constant.RATE_LIMITER_FAIRNESS);
+        }
+        for (Deque<Request> queue : queues) {
+            grant(queue, available);
+        }
+    }
+
+    /**
+     * 把最多 limit 个令牌依次分给队头的请求, 得到全部令牌的请求出队
+     */
+    private void grant(Deque<Request> queue, long limit) {
+        long tokens = Math.min(available, limit);
+        long taken = 0;
+        boolean done = false;
+        while (taken < tokens && !queue.isEmpty()) {
+            Request head = queue.peekFirst();
+            long take = Math.min(tokens - taken, head.remaining);
+            head.remaining -= take;
+            taken += take;
+            if (head.remaining == 0) {
+                queue.pollFirst();
+                done = true;
+            }
+        }
+        available -= taken;
+        if (queue == queues.get(IoPriority.LOW.ordinal())) {
+            lowPriorityRefilled = Math.max(lowPriorityRefilled - taken * Constant.RATE_LIMITER_FAIRNESS, 0);
+        }
+        if (done) {
+            granted.signalAll();
+        }
+    }
+
+    private long nanosUntilRefill(long remaining) {
+        long rate = Math.max(bytesPerSecond, 1);
+        long nanos = (long) ((double) remaining * TimeUnit.SECONDS.toNanos(1) / rate);
+        return Math.max(Math.min(nanos, REFILL_PERIOD_NANOS), TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * 修改速率, 正在等待的请求按新的速率继续
+     * @param bytesPerSecond 小于等于 0 时不限速
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        lock.lock();
+        try {
+            refill();
+            this.bytesPerSecond = bytesPerSecond;
+            granted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        LOGGER.info("[RateLimiter][setBytesPerSecond] 后台写入速率: {} B/s", bytesPerSecond);
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * 申请的总字节数
+     */
+    public long getRequestedBytes(IoPriority priority) {
+        return requestedBytes[priority.ordinal()].sum();
+    }
+
+    /**
+     * 等待令牌的总时间(ns)
+     */
+    public long getWaitNanos(IoPriority priority) {
+        return waitNanos[priority.ordinal()].sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RateLimiter{bytesPerSecond=%d, flushBytes=%d, flushWaitMs=%d, compactionBytes=%d, compactionWaitMs=%d}",
+                bytesPerSecond, getRequestedBytes(IoPriority.HIGH), getWaitNanos(IoPriority.HIGH) / 1_000_000,
+                getRequestedBytes(IoPriority.LOW), getWaitNanos(IoPriority.LOW) / 1_000_000);
+    }
+}
@@ -0,0 +1,93 @@
+package com.zyh.model.limiter;
+
+import com.zyh.model.constant.Constant;
+import com.zyh.model.worker.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 根据前台 get 的 p99 延迟自动调整后台写入速率
+ * 每个窗口内 p99 超过目标时速率乘以 0.7, 低于目标的一半时乘以 1.1, 速率在 [max / 20, max] 之间
+ * 样本数太少的窗口不调整
+ */
+public class RateLimiterTuner {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(RateLimiterTuner.class);
+
+    private static final double DECREASE = 0.7;
+
+    private static final double INCREASE = 1.1;
+
+    private static final int MIN_SAMPLES = 100;
+
+    private final RateLimiter rateLimiter;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final long maxBytesPerSecond;
+
+    private final long minBytesPerSecond;
+
+    private final long targetP99Nanos;
+
+    private final ScheduledExecutorService workerPool;
+
+    private volatile long lastP99Nanos;
+
+    public RateLimiterTuner(RateLimiter rateLimiter, long maxBytesPerSecond, long targetP99Micros) {
+        this.rateLimiter = rateLimiter;
+        this.maxBytesPerSecond = maxBytesPerSecond;
+        this.minBytesPerSecond = Math.max(maxBytesPerSecond / 20, 1);
+        this.targetP99Nanos = TimeUnit.MICROSECONDS.toNanos(targetP99Micros);
+        this.workerPool = Executors.newScheduledThreadPool(1, new DefaultThreadFactory("RateLimiterTuner"));
+        this.workerPool.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                tune();
+            }
+        }, Constant.RATE_LIMITER_TUNE_INTERVAL_MS, Constant.RATE_LIMITER_TUNE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次前台读取的延迟
+     * @param nanos
+     */
+    public void recordLatency(long nanos) {
+        latency.record(nanos);
+    }
+
+    void tune() {
+        long[] snapshot = latency.snapshotAndReset();
+        if (LatencyHistogram.count(snapshot) < MIN_SAMPLES) {
+            return;
+        }
+        long p99 = LatencyHistogram.percentile(snapshot, 99);
+        this.lastP99Nanos = p99;
+        long current = rateLimiter.getBytesPerSecond();
+        if (current <= 0) {
+            current = maxBytesPerSecond;
+        }
+        long next = current;
+        if (p99 > targetP99Nanos) {
+            next = Math.max((long) (current * DECREASE), minBytesPerSecond);
+        } else if (p99 < targetP99Nanos / 2) {
+            next = Math.min((long) (current * INCREASE), maxBytesPerSecond);
+        }
+        if (next != current) {
+            LOGGER.info("[RateLimiterTuner][tune] get p99: {} us, 后台写入速率: {} -> {} B/s", p99 / 1000, current, next);
+            rateLimiter.setBytesPerSecond(next);
+        }
+    }
+
+    public long getLastP99Nanos() {
+        return lastP99Nanos;
+    }
+
+    public void shutdown() {
+        workerPool.shutdownNow();
+    }
+}
@@ -0,0 +1,119 @@
+package com.zyh.model.limiter;
+
+import com.zyh.model.TreeNode;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 写入流控: 刷盘或压缩跟不上写入时, 先让每次写入等待一小段时间, 到达硬限制后阻塞写入
+ * 检查 L0 文件数、等待刷盘的字节数和只读表数量, 突发写入积压在可预期的范围内, 不会无限占用内存
+ * 刷盘和压缩完成后调用 {@link #signal()} 唤醒阻塞的写入
+ */
+public class WriteController {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(WriteController.class);
+
+    // 阻塞时重新检查的最长间隔, 避免错过唤醒
+    private static final long STOP_RECHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Options options;
+
+    private final TreeNode root;
+
+    // 等待刷盘的只读表
+    private final Collection<MemTable> immutable;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition changed = lock.newCondition();
+
+    @Getter
+    private final WriteStallStats stats = new WriteStallStats();
+
+    public WriteController(Options options, TreeNode root, Collection<MemTable> immutable) {
+        this.options = options;
+        this.root = root;
+        this.immutable = immutable;
+    }
+
+    /**
+     * 当前的流控状态
+     * @return
+     */
+    public WriteStall current() {
+        int level0Files = root.getTableList().size();
+        long pendingBytes = pendingFlushBytes();
+        if (level0Files >= options.getLevel0StopFiles()
+                || pendingBytes >= options.getPendingFlushStopBytes()
+                || immutable.size() >= options.getMaxImmutableNum()) {
+            return WriteStall.STOP;
+        }
+        if (level0Files >= options.getLevel0SlowdownFiles()
+                || pendingBytes >= options.getPendingFlushSlowdownBytes()) {
+            return WriteStall.SLOWDOWN;
+        }
+        return WriteStall.NONE;
+    }
+
+    private long pendingFlushBytes() {
+        long bytes = 0;
+        for (MemTable table : immutable) {
+            bytes += table.approximateBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 写入前调用, 不能持有会阻止刷盘的锁
+     * 到达硬限制时阻塞直到低于硬限制, 之后仍超过软限制时再等待一次
+     */
+    public void maybeStall() {
+        WriteStall stall = current();
+        if (stall == WriteStall.NONE) {
+            return;
+        }
+        if (stall == WriteStall.STOP) {
+            long begin = System.nanoTime();
+            LOGGER.warn("[WriteController][maybeStall] 写入阻塞, L0 文件数: {}, 等待刷盘: {} 字节, 只读表: {}",
+                    root.getTableList().size(), pendingFlushBytes(), immutable.size());
+            lock.lock();
+            try {
+                while ((stall = current()) == WriteStall.STOP) {
+                    changed.awaitNanos(STOP_RECHECK_NANOS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("[WriteController][maybeStall] 等待时被中断", e);
+            } finally {
+                lock.unlock();
+                stats.recordStop(System.nanoTime() - begin);
+            }
+        }
+        if (stall == WriteStall.SLOWDOWN) {
+            long begin = System.nanoTime();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(options.getWriteSlowdownMicros()));
+            stats.recordSlowdown(System.nanoTime() - begin);
+        }
+    }
+
+    /**
+     * 刷盘或压缩完成后调用
+     */
+    public void signal() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
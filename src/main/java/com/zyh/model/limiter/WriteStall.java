@@ -0,0 +1,13 @@
+package com.zyh.model.limiter;
+
+/**
+ * 写入流控的状态
+ */
+public enum WriteStall {
+    // 正常写入
+    NONE,
+    // 每次写入前等待一小段时间, 让刷盘和压缩追上写入
+    SLOWDOWN,
+    // 阻塞写入, 直到低于硬限制
+    STOP
+}
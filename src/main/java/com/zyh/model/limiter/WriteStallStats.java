@@ -0,0 +1,56 @@
+package com.zyh.model.limiter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 写入流控统计: 减速和阻塞的次数以及累计等待的时间
+ */
+public class WriteStallStats {
+
+    private final LongAdder slowdowns = new LongAdder();
+
+    private final LongAdder slowdownNanos = new LongAdder();
+
+    private final LongAdder stops = new LongAdder();
+
+    private final LongAdder stopNanos = new LongAdder();
+
+    public void recordSlowdown(long nanos) {
+        slowdowns.increment();
+        slowdownNanos.add(nanos);
+    }
+
+    public void recordStop(long nanos) {
+        stops.increment();
+        stopNanos.add(nanos);
+    }
+
+    public long getSlowdowns() {
+        return slowdowns.sum();
+    }
+
+    public long getSlowdownNanos() {
+        return slowdownNanos.sum();
+    }
+
+    public long getStops() {
+        return stops.sum();
+    }
+
+    public long getStopNanos() {
+        return stopNanos.sum();
+    }
+
+    /**
+     * 写入因为流控等待的总时间(ns)
+     */
+    public long getStallNanos() {
+        return getSlowdownNanos() + getStopNanos();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteStallStats{slowdowns=%d, slowdownMs=%d, stops=%d, stopMs=%d}",
+                getSlowdowns(), getSlowdownNanos() / 1_000_000, getStops(), getStopNanos() / 1_000_000);
+    }
+}
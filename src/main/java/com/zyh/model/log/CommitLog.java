@@ -1,8 +1,11 @@
 package com.zyh.model.log;
 
+import com.zyh.model.comparator.KeyOrder;
 import com.zyh.model.constant.Constant;
+import com.zyh.model.memtable.MemTable;
 import com.zyh.model.sstable.Element;
-import com.zyh.utils.ConvertUtil;
+import com.zyh.model.worker.DefaultThreadFactory;
+import com.zyh.utils.FileUtil;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.slf4j.Logger;
@@ -13,8 +16,17 @@ import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 @Data
@@ -31,63 +43,374 @@ public class CommitLog implements Closeable {
 
     private ConcurrentLinkedDeque<Integer> tmpNumList;
 
+    // 下一个临时日志编号, 只增不减, 由 groupLock 保护
+    private int nextTmpNum;
+
     private RandomAccessFile wal;
 
     private File walFile;
 
     private String dataDir;
 
+    private FileChannel channel;
+
+    private SyncPolicy syncPolicy;
+
+    private final KeyOrder comparator;
+
+    /**
+     * 组提交: 写线程把记录放入 pending 后等待, 第一个发现没有 leader 的线程成为 leader,
+     * 把当前 pending 中的所有记录用一次 write 写入文件, 按照刷盘策略执行一次 force
+     */
+    private final ReentrantLock groupLock = new ReentrantLock();
+
+    private final Condition groupDone = groupLock.newCondition();
+
+    private ArrayList<byte[]> pending = new ArrayList<>();
+
+    // 已入队 / 已写入 / 已刷盘的记录编号
+    private long enqueuedSeq;
+
+    private long writtenSeq;
+
+    private long syncedSeq;
+
+    // 当前是否有线程持有文件(leader 写入、定时刷盘、切换日志)
+    private boolean channelBusy;
+
+    // 写入失败后保留, 之后的提交全部失败: 写线程只在提交成功后写入内存表, 失败的写入不会在之后出现
+    private IOException writeError;
+
+    // leader 复用的写缓冲区
+    private ByteBuffer writeBuffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    private ScheduledExecutorService syncWorker;
+
     public CommitLog(String dataDir){
+        this(dataDir, SyncPolicy.NONE, 0);
+    }
+
+    public CommitLog(String dataDir, SyncPolicy syncPolicy, long syncIntervalMs){
+        this(dataDir, syncPolicy, syncIntervalMs, KeyOrder.BYTEWISE);
+    }
+
+    /**
+     * @param comparator 恢复的内存表使用的 key 比较器
+     */
+    public CommitLog(String dataDir, SyncPolicy syncPolicy, long syncIntervalMs, KeyOrder comparator){
+        this.comparator = comparator;
         try {
             this.dataDir = dataDir;
+            this.syncPolicy = syncPolicy;
             this.tmpNumList = new ConcurrentLinkedDeque<>();
             this.walFile = new File(dataDir + File.separator + WAL + SUFFIX);
             if (!walFile.exists()){
                 walFile.createNewFile();
             }
-            this.wal = new RandomAccessFile(walFile, Constant.RW);
-            this.wal.seek(0);
+            openWal();
             detectTmpFile();
+            if (syncPolicy == SyncPolicy.INTERVAL) {
+                this.syncWorker = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("CommitLog"));
+                this.syncWorker.scheduleWithFixedDelay(new Runnable() {
+                    @Override
+                    public void run() {
+                        syncNow();
+                    }
+                }, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    public void append(Element element){
+    /**
+     * 打开 wal 文件, 新文件需要先写入文件头, 起始顺序号为当前已分配的最大顺序号
+     * @throws IOException
+     */
+    private void openWal() throws IOException {
+        this.wal = new RandomAccessFile(walFile, Constant.RW);
+        if (wal.length() == 0) {
+            writeFileHeader(wal, enqueuedSeq);
+        }
+        this.channel = wal.getChannel();
+        this.channel.position(channel.size());
+    }
+
+    private static void writeFileHeader(RandomAccessFile file, long baseSeq) throws IOException {
+        file.seek(0);
+        file.writeInt(LogReader.MAGIC);
+        file.writeInt(LogReader.VERSION);
+        file.writeLong(baseSeq);
+    }
+
+    /**
+     * 恢复时从 SSTable 中的最大顺序号继续分配, 需要在恢复日志之前调用
+     * @param seq
+     */
+    public void recoverSeq(long seq){
         try {
-            byte[] bytes = ConvertUtil.convertObjectToBytes(element);
-            int len = bytes.length;
-            wal.seek(wal.length());
-            wal.writeInt(len);
-            wal.write(bytes);
+            groupLock.lock();
+            advanceSeq(seq);
+        } finally {
+            groupLock.unlock();
+        }
+    }
+
+    private void advanceSeq(long seq){
+        if (seq > enqueuedSeq) {
+            enqueuedSeq = seq;
+            writtenSeq = seq;
+            syncedSeq = seq;
+        }
+    }
+
+    /**
+     * 已分配的最大顺序号
+     * @return
+     */
+    public long getLastSeq(){
+        try {
+            groupLock.lock();
+            return enqueuedSeq;
+        } finally {
+            groupLock.unlock();
+        }
+    }
+
+    /**
+     * 记录入队, 不等待写入
+     * 记录编号同时写入 element 的 seq, 内存表根据它判断同一个 key 的写入先后
+     * 之后调用 {@link #sync(long)} 等待提交完成
+     * @param element
+     * @return 记录编号
+     */
+    public long append(Element element){
+        byte[] bytes = LogRecord.encode(element);
+        try {
+            groupLock.lock();
+            pending.add(bytes);
+            element.setSeq(++enqueuedSeq);
+            return enqueuedSeq;
+        } finally {
+            groupLock.unlock();
+        }
+    }
+
+    /**
+     * 多条数据编码为一条 BATCH 记录入队, 恢复时整体生效或整体丢弃
+     * 每条数据依次分配记录编号, 同一批次中后面的数据比前面的新
+     * @param elements
+     * @return 最后一条数据的记录编号, 用于 {@link #sync(long)}
+     */
+    public long appendBatch(List<Element> elements){
+        byte[] bytes = LogRecord.encodeBatch(elements);
+        try {
+            groupLock.lock();
+            pending.add(bytes);
+            for (Element element : elements) {
+                element.setSeq(++enqueuedSeq);
+            }
+            return enqueuedSeq;
+        } finally {
+            groupLock.unlock();
+        }
+    }
+
+    /**
+     * 等待编号为 seq 的记录提交完成
+     * 可能成为 leader, 替同一组的所有记录完成写入和刷盘
+     * @param seq
+     */
+    public void sync(long seq){
+        boolean needSync = syncPolicy == SyncPolicy.EVERY_COMMIT;
+        try {
+            groupLock.lock();
+            while (true) {
+                if (Objects.nonNull(writeError)) {
+                    throw new RuntimeException("[CommitLog][sync] 日志写入失败", writeError);
+                }
+                if (writtenSeq >= seq && (!needSync || syncedSeq >= seq)) {
+                    return;
+                }
+                if (channelBusy) {
+                    groupDone.awaitUninterruptibly();
+                } else {
+                    writeGroup(needSync);
+                }
+            }
+        } finally {
+            groupLock.unlock();
+        }
+    }
+
+    /**
+     * 以 leader 身份写入当前 pending 中的所有记录, 调用时必须持有 groupLock
+     * 真正的文件写入在释放 groupLock 之后进行, 期间新的记录可以继续入队
+     * @param needSync
+     */
+    private void writeGroup(boolean needSync){
+        ArrayList<byte[]> group = pending;
+        long groupEnd = enqueuedSeq;
+        pending = new ArrayList<>();
+        channelBusy = true;
+        groupLock.unlock();
+        IOException error = null;
+        try {
+            writeRecords(group);
+            if (needSync) {
+                channel.force(false);
+            }
         } catch (IOException e) {
-            throw new RuntimeException(e);
+            error = e;
+        } finally {
+            groupLock.lock();
+            channelBusy = false;
+            if (Objects.isNull(error)) {
+                writtenSeq = groupEnd;
+                if (needSync) {
+                    syncedSeq = groupEnd;
+                }
+            } else {
+                writeError = error;
+            }
+            groupDone.signalAll();
+        }
+    }
+
+    private void writeRecords(List<byte[]> group) throws IOException {
+        if (group.isEmpty()) {
+            return;
+        }
+        int size = 0;
+        for (byte[] record : group) {
+            size += record.length;
+        }
+        if (writeBuffer.capacity() < size) {
+            writeBuffer = ByteBuffer.allocateDirect(Integer.highestOneBit(size) << 1);
+        }
+        writeBuffer.clear();
+        for (byte[] record : group) {
+            writeBuffer.put(record);
+        }
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
         }
     }
 
-    public TreeMap<String, Element> recoverTableFromLog(){
-        TreeMap<String, Element> data = new TreeMap<>();
-        long lastPoint = 0;
+    /**
+     * 获取文件的独占权, 并写入所有未写入的记录, 调用时必须持有 groupLock
+     */
+    private void drain() throws IOException {
+        while (channelBusy) {
+            groupDone.awaitUninterruptibly();
+        }
+        if (Objects.nonNull(writeError)) {
+            throw writeError;
+        }
+        writeRecords(pending);
+        pending = new ArrayList<>();
+        writtenSeq = enqueuedSeq;
+    }
+
+    /**
+     * INTERVAL 策略下由后台线程调用
+     */
+    private void syncNow(){
         try {
-            wal.seek(0);
-            while(wal.getFilePointer() != wal.length()){
-                int len = wal.readInt();
-                byte[] bytes = new byte[len];
-                wal.read(bytes);
-                Element element = (Element) ConvertUtil.readObjectFromBytes(bytes, Element.class);
-                data.put(element.getKey(),element);
-                lastPoint += len + 4;
+            groupLock.lock();
+            while (channelBusy) {
+                groupDone.awaitUninterruptibly();
+            }
+            if (syncedSeq >= writtenSeq || !channel.isOpen()) {
+                return;
             }
+            long target = writtenSeq;
+            channelBusy = true;
+            groupLock.unlock();
+            try {
+                channel.force(false);
+            } finally {
+                groupLock.lock();
+                channelBusy = false;
+                syncedSeq = Math.max(syncedSeq, target);
+                groupDone.signalAll();
+            }
+        } catch (IOException e) {
+            LOGGER.error("[CommitLog][syncNow] 刷盘失败", e);
+        } finally {
+            groupLock.unlock();
+        }
+    }
+
+    /**
+     * 恢复 wal 中的数据, 需要在 {@link #recoverTableFromTmpLog()} 之后调用, 之后分配的顺序号接着 wal 中的最后一条
+     * @return
+     */
+    public MemTable recoverTableFromLog(){
+        try (LogReader reader = new LogReader(walFile)) {
+            long baseSeq = enqueuedSeq;
+            MemTable data = reader.readAll(baseSeq, comparator);
+            if (reader.getRecordCount() == 0) {
+                // 没有记录, 以当前的顺序号重写文件头
+                if (reader.isSequenced()) {
+                    baseSeq = Math.max(baseSeq, reader.getBaseSeq());
+                    advanceSeq(baseSeq);
+                }
+                wal.setLength(0);
+                writeFileHeader(wal, baseSeq);
+                channel.position(channel.size());
+                return data;
+            }
+            if (!reader.isSequenced() || reader.getBaseSeq() < baseSeq) {
+                // 旧格式的日志没有顺序号, 重写后的顺序号和恢复的内存表一致
+                return rewriteWal(data, baseSeq);
+            }
+            if (reader.getValidLength() < wal.length()) {
+                // 丢弃末尾不完整的数据
+                LOGGER.info("[CommitLog][recoverTableFromLog] 截断损坏的日志, 有效长度: {}", reader.getValidLength());
+                wal.setLength(reader.getValidLength());
+                channel.position(channel.size());
+            }
+            advanceSeq(reader.getLastSeq());
             return data;
         } catch (IOException e) {
-            try {
-                // 指向最后完整的数据
-                wal.seek(lastPoint);
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
+            throw new RuntimeException("[CommitLog][recoverTableFromLog] 恢复失败", e);
+        }
+    }
+
+    /**
+     * 旧版本的日志恢复后以当前格式重写, 保证后续追加的记录格式一致
+     * 记录按顺序号排列, 从 baseSeq 开始重新连续编号
+     * 新文件刷盘后原子替换 wal, 任何时刻宕机都能恢复出旧文件或新文件中的一个
+     * @param data
+     * @param baseSeq
+     * @return 重新编号后的内存表
+     * @throws IOException
+     */
+    private MemTable rewriteWal(MemTable data, long baseSeq) throws IOException {
+        LOGGER.info("[CommitLog][rewriteWal] 将日志转换为当前格式, 记录数: {}, 起始顺序号: {}", data.size(), baseSeq);
+        List<Element> elements = new ArrayList<>(data.values());
+        elements.sort(Comparator.comparingLong(Element::getSeq));
+        MemTable rewritten = new MemTable(comparator);
+        long seq = baseSeq;
+        File rewriteFile = new File(formatFilePath(dataDir, WAL + SUFFIX + ".rewrite"));
+        try (RandomAccessFile file = new RandomAccessFile(rewriteFile, Constant.RW)) {
+            file.setLength(0);
+            writeFileHeader(file, baseSeq);
+            for (Element element : elements) {
+                file.write(LogRecord.encode(element));
+                element.setSeq(++seq);
+                rewritten.put(element);
             }
+            file.getChannel().force(true);
         }
-        return data;
+        wal.close();
+        Files.move(rewriteFile.toPath(), walFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileUtil.syncDir(new File(dataDir));
+        advanceSeq(seq);
+        openWal();
+        return rewritten;
     }
 
     public static boolean containWAL(String dataDir){
@@ -107,41 +430,71 @@ public class CommitLog implements Closeable {
      */
     public void switchLog(){
         try {
-            wal.close();
-            Integer tmpNum = getMaxTmpNum();
-            if(Objects.isNull(tmpNum)){
-                tmpNum = 0;
-            } else {
-                tmpNum ++;
-            }
+            groupLock.lock();
+            // 编号只增不减, 不会和刷盘线程正在删除的临时日志重名, 恢复时按编号的顺序就是写入顺序
+            int tmpNum = nextTmpNum++;
             File tmpfile = new File(formatFilePath(dataDir, WAL_TMP + tmpNum + SUFFIX));
-            if(tmpfile.exists()){
-                if(!tmpfile.delete()){
-                    throw new RuntimeException("删除文件失败：" + WAL_TMP + SUFFIX);
-                }
+            while (tmpfile.exists()) {
+                LOGGER.warn("[CommitLog][switchLog] 临时日志已存在, 跳过编号: {}", tmpNum);
+                tmpNum = nextTmpNum++;
+                tmpfile = new File(formatFilePath(dataDir, WAL_TMP + tmpNum + SUFFIX));
+            }
+            // 旧文件中的记录全部落盘后再切换
+            drain();
+            if (syncPolicy != SyncPolicy.NONE) {
+                channel.force(false);
+                syncedSeq = writtenSeq;
             }
+            wal.close();
             if(!walFile.renameTo(tmpfile)){
-                throw new RuntimeException("重命名失败：" + WAL_TMP + tmpNum + SUFFIX);
+                // 重新打开原来的日志, 切换失败不影响之后的写入
+                openWal();
+                throw new RuntimeException("[CommitLog][switchLog] 重命名失败：" + tmpfile.getName());
             }
-            walFile = new File(formatFilePath(dataDir,WAL + SUFFIX));
-            wal = new RandomAccessFile(walFile,Constant.RW);
+            openWal();
             tmpNumList.add(tmpNum);
         } catch (IOException e) {
             throw new RuntimeException(e);
+        } finally {
+            groupDone.signalAll();
+            groupLock.unlock();
         }
     }
 
     @Override
     public void close() throws IOException {
-        wal.close();
+        if (Objects.nonNull(syncWorker)) {
+            syncWorker.shutdown();
+            try {
+                syncWorker.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            groupLock.lock();
+            drain();
+            if (syncPolicy != SyncPolicy.NONE) {
+                channel.force(false);
+            }
+            wal.close();
+        } finally {
+            groupLock.unlock();
+        }
     }
 
+    /**
+     * 删除最旧的临时日志, 调用方需要保证它的数据已经写入 SSTable
+     * 先删除文件再移除编号; 删除失败时同样移除编号, 残留的文件在恢复时跳过, 见 {@link #recoverTableFromTmpLog()}
+     */
     public void deleteTmpLog() {
-        Integer tmpNum = tmpNumList.pollFirst();
+        Integer tmpNum = tmpNumList.peekFirst();
         String fileName = WAL_TMP + tmpNum +SUFFIX;
         String filePath = formatFilePath(dataDir, fileName);
         File file = new File(filePath);
-        if (file.delete()) {
+        boolean deleted = file.delete() || !file.exists();
+        tmpNumList.pollFirst();
+        if (deleted) {
             LOGGER.info("[CommitLog][deleteTmpLog] {}文件删除成功",fileName);
         } else {
             throw new RuntimeException("[CommitLog][deleteTmpLog] 文件删除失败： " + fileName);
@@ -169,44 +522,45 @@ public class CommitLog implements Closeable {
         for (Integer num : numList) {
             tmpNumList.add(num);
         }
+        if (!numList.isEmpty()) {
+            nextTmpNum = numList.get(numList.size() - 1) + 1;
+        }
     }
 
     public ConcurrentLinkedDeque<Integer> getTmpNumLsit(){
         return tmpNumList;
     }
 
-    public List<TreeMap<String, Element>> recoverTableFromTmpLog(){
-        List<TreeMap<String, Element>>  data = new ArrayList<>();
-        for (int i = 0; i < tmpNumList.size(); i++) {
-            int tmpNum = tmpNumList.peekFirst();
-            TreeMap<String, Element> current = new TreeMap<>();
-            RandomAccessFile file = null;
-            String filePath = formatFilePath(dataDir, WAL_TMP + tmpNum + SUFFIX);
-            try {
-                file = new RandomAccessFile(filePath,Constant.RW);
-                file.seek(0);
-                while(file.getFilePointer() != file.length()){
-                    int len = file.readInt();
-                    byte[] bytes = new byte[len];
-                    file.read(bytes);
-                    Element element = (Element) ConvertUtil.readObjectFromBytes(bytes, Element.class);
-                    current.put(element.getKey(),element);
-                }
-            } catch (IOException e) {
-                LOGGER.info("[recoverTableFromTmpLog]临时文件损坏: {}", filePath);
-            } finally {
-                try {
-                    file.close();
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
+    /**
+     * 按编号顺序恢复临时日志, 需要在 {@link #recoverSeq(long)} 之后调用
+     * 旧格式的临时日志没有顺序号, 接着前一个文件的最后一条编号
+     * 刷盘按顺序安装, 最后一条顺序号不超过 SSTable 中最大顺序号的临时日志已经安装过, 只是没有删除,
+     * 返回空的内存表, 重新写入 L0 会遮住之后更新的数据
+     * @return
+     */
+    public List<MemTable> recoverTableFromTmpLog(){
+        List<MemTable>  data = new ArrayList<>();
+        long installedSeq = getLastSeq();
+        for (Integer tmpNum : tmpNumList) {
+            MemTable table = readFromFile(tmpNum);
+            if (table.size() > 0 && maxSeq(table) <= installedSeq) {
+                LOGGER.info("[CommitLog][recoverTableFromTmpLog] 临时日志已经写入 SSTable, 跳过: {}", tmpNum);
+                table = new MemTable(comparator);
             }
-            data.add(current);
+            data.add(table);
         }
 
         return data;
     }
 
+    private static long maxSeq(MemTable table) {
+        long seq = 0;
+        for (Element element : table.values()) {
+            seq = Math.max(seq, element.getSeq());
+        }
+        return seq;
+    }
+
     private String formatFilePath(String ...args){
         StringBuilder res = new StringBuilder();
         for (int i = 0; i < args.length; i++) {
@@ -219,37 +573,14 @@ public class CommitLog implements Closeable {
         return res.toString();
     }
 
-    public TreeMap<String, Element> readFromFile(Integer num){
-        TreeMap<String, Element> data = new TreeMap<>();
-        try {
-            RandomAccessFile file = new RandomAccessFile(formatFilePath(dataDir, WAL_TMP + num + SUFFIX), Constant.RW);
-            file.seek(0);
-            while(file.getFilePointer() != file.length()){
-                int len = file.readInt();
-                byte[] bytes = new byte[len];
-                file.read(bytes);
-                Element element = (Element) ConvertUtil.readObjectFromBytes(bytes, Element.class);
-                data.put(element.getKey(),element);
-            }
+    public MemTable readFromFile(Integer num){
+        File file = new File(formatFilePath(dataDir, WAL_TMP + num + SUFFIX));
+        try (LogReader reader = new LogReader(file)) {
+            MemTable data = reader.readAll(getLastSeq(), comparator);
+            recoverSeq(reader.getLastSeq());
             return data;
         } catch (IOException e) {
             throw new RuntimeException("[CommitLog][readFromFile] 读取失败！",e);
         }
     }
-
-    public String query(String key) {
-        ArrayList<Integer> tmpList = new ArrayList<>();
-        for (Integer currentNum : tmpNumList) {
-            tmpList.add(currentNum);
-        }
-        // 查询时是逆序的
-        for (int i = tmpList.size() - 1; i >= 0; i--) {
-            TreeMap<String, Element> data = readFromFile(tmpList.get(i));
-            if(data.containsKey(key)){
-                return data.get(key).getValue();
-            }
-        }
-
-        return null;
-    }
 }
@@ -0,0 +1,225 @@
+package com.zyh.model.log;
+
+import com.alibaba.fastjson.JSONObject;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.utils.BytesUtil;
+import com.zyh.utils.CodingUtil;
+import com.zyh.utils.ConvertUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 顺序读取 WAL 文件, 同时兼容二进制格式和旧版本的 JSON 格式
+ * 遇到不完整或者校验失败的记录时停止, validLength 指向最后一条完整记录的末尾
+ * 版本 2 的文件头记录了文件中第一条记录之前的写入顺序号, 记录按文件中的顺序依次加一
+ * 版本 1 和 JSON 格式的日志没有顺序号, 由调用方指定起始顺序号
+ */
+public class LogReader implements Closeable {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(LogReader.class);
+
+    // 二进制日志文件头: | magic(4) | version(4) | baseSeq(8) |, 版本 1 没有 baseSeq
+    public static final int MAGIC = 0x544B564C;
+
+    public static final int VERSION = 2;
+
+    public static final int FILE_HEADER_SIZE = 16;
+
+    private static final int V1_HEADER_SIZE = 8;
+
+    private final String filePath;
+
+    private final long fileLength;
+
+    private final DataInputStream in;
+
+    private boolean legacy;
+
+    // 文件头中是否有起始顺序号
+    private boolean sequenced;
+
+    private long baseSeq;
+
+    // readAll 之后最后一条记录的顺序号
+    private long lastSeq;
+
+    private int recordCount;
+
+    private long validLength;
+
+    private boolean finished;
+
+    public LogReader(File file) throws IOException {
+        this.filePath = file.getPath();
+        this.fileLength = file.length();
+        this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        readFileHeader();
+    }
+
+    private void readFileHeader() throws IOException {
+        if (fileLength < FILE_HEADER_SIZE) {
+            // 空文件或者只写了一半的文件头
+            this.legacy = false;
+            this.finished = true;
+            return;
+        }
+        in.mark(FILE_HEADER_SIZE);
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic == MAGIC) {
+            if (version == VERSION) {
+                this.baseSeq = in.readLong();
+                this.sequenced = true;
+                this.validLength = FILE_HEADER_SIZE;
+            } else if (version == 1) {
+                this.validLength = V1_HEADER_SIZE;
+            } else {
+                throw new IOException("[LogReader] 不支持的日志版本: " + version + ", file: " + filePath);
+            }
+        } else {
+            // 旧版本的 JSON 日志没有文件头
+            in.reset();
+            this.legacy = true;
+        }
+    }
+
+    /**
+     * 读取下一条记录
+     * @return 没有完整的记录时返回 null
+     */
+    public LogRecord next() {
+        if (finished) {
+            return null;
+        }
+        try {
+            LogRecord record = legacy ? readLegacyRecord() : readRecord();
+            if (Objects.isNull(record)) {
+                finished = true;
+            }
+            return record;
+        } catch (EOFException e) {
+            finished = true;
+            return null;
+        } catch (Exception e) {
+            LOGGER.info("[LogReader][next] 日志损坏, file: {}, validLength: {}", filePath, validLength);
+            finished = true;
+            return null;
+        }
+    }
+
+    private LogRecord readRecord() throws IOException {
+        if (validLength + LogRecord.HEADER_SIZE > fileLength) {
+            return null;
+        }
+        int len = in.readInt();
+        int crc = in.readInt();
+        if (len <= 0 || validLength + LogRecord.HEADER_SIZE + len > fileLength) {
+            return null;
+        }
+        byte[] payload = new byte[len];
+        in.readFully(payload);
+        if (CodingUtil.crc32(payload, 0, len) != crc) {
+            LOGGER.info("[LogReader][readRecord] 校验失败, file: {}, offset: {}", filePath, validLength);
+            return null;
+        }
+        LogRecord record = LogRecord.decode(payload);
+        validLength += LogRecord.HEADER_SIZE + len;
+        return record;
+    }
+
+    private LogRecord readLegacyRecord() throws IOException {
+        if (validLength + 4 > fileLength) {
+            return null;
+        }
+        int len = in.readInt();
+        if (len <= 0 || validLength + 4 + len > fileLength) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        JSONObject object = JSONObject.parseObject(new String(bytes, ConvertUtil.CHARSET));
+        // JSON 中保存的是文本
+        Element element = new Element(BytesUtil.fromText(object.getString("key")), BytesUtil.fromText(object.getString("value")),
+                Boolean.TRUE.equals(object.getBoolean("deleted")));
+        validLength += 4 + len;
+        return LogRecord.fromElement(element);
+    }
+
+    /**
+     * 读取全部记录, 同一个 key 只保留最新的一条
+     * 被覆盖的记录不会被解码成字符串
+     * 重启后没有快照, 恢复的内存表不需要旧版本
+     * @param defaultBaseSeq 文件头中没有起始顺序号时使用
+     * @param comparator 内存表的 key 比较器
+     * @return
+     */
+    public MemTable readAll(long defaultBaseSeq, Comparator<String> comparator) {
+        HashMap<String, LogRecord> records = new HashMap<>();
+        long seq = sequenced ? baseSeq : defaultBaseSeq;
+        LogRecord record;
+        while (Objects.nonNull(record = next())) {
+            // 批量记录按写入顺序展开, 同一批次中后面的记录覆盖前面的
+            for (LogRecord entry : record.getEntries()) {
+                entry.setSeq(++seq);
+                records.put(entry.getKey(), entry);
+                recordCount++;
+            }
+        }
+        if (!sequenced) {
+            // 去重后按写入顺序重新连续编号, 按这个顺序重写为新格式后编号不变
+            List<LogRecord> ordered = new ArrayList<>(records.values());
+            ordered.sort(Comparator.comparingLong(LogRecord::getSeq));
+            seq = defaultBaseSeq;
+            for (LogRecord current : ordered) {
+                current.setSeq(++seq);
+            }
+        }
+        this.lastSeq = seq;
+        MemTable data = new MemTable(comparator);
+        for (LogRecord current : records.values()) {
+            data.put(current.toElement());
+        }
+        return data;
+    }
+
+    public boolean isLegacy() {
+        return legacy;
+    }
+
+    public boolean isSequenced() {
+        return sequenced;
+    }
+
+    public long getBaseSeq() {
+        return baseSeq;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    /**
+     * 读取到的记录数, BATCH 中的每条记录各算一条
+     * @return
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public long getValidLength() {
+        return validLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
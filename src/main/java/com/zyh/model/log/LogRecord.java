@@ -0,0 +1,219 @@
+package com.zyh.model.log;
+
+import com.zyh.model.sstable.Element;
+import com.zyh.utils.BytesUtil;
+import com.zyh.utils.CodingUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * WAL 中的一条记录
+ * 二进制格式: | length(4) | crc(4) | type(1) | keyLen(varint) | valueLen(varint) | key | value |
+ * length 为 type 之后的字节数, crc 覆盖 type 及之后的所有字节
+ * 批量写入为一条 BATCH 记录: | length(4) | crc(4) | type(1) | count(varint) | entry ... |
+ * 每个 entry 的格式和单条记录 type 之后的部分相同, 整个批次共用一个 crc, 恢复时要么全部生效要么全部丢弃
+ * 记录中不保存写入顺序号: 日志文件头中记录了起始顺序号, 按文件中的顺序每条记录(BATCH 中的每条)依次加一, 见 {@link LogReader}
+ * 记录只保存原始字节, key/value 在第一次使用时才转换为内部形式的 String, 见 {@link BytesUtil}
+ */
+public class LogRecord {
+
+    public static final int HEADER_SIZE = 8;
+
+    public static final byte TYPE_PUT = 1;
+
+    public static final byte TYPE_DELETE = 2;
+
+    public static final byte TYPE_BATCH = 3;
+
+    private byte[] payload;
+
+    private byte type;
+
+    private int keyOffset;
+
+    private int keyLen;
+
+    private int valueOffset;
+
+    private int valueLen;
+
+    private String key;
+
+    private String value;
+
+    // BATCH 记录中的每一条记录, 按写入顺序排列
+    private List<LogRecord> entries;
+
+    // 读取时根据记录在文件中的位置计算
+    private long seq;
+
+    private LogRecord() {
+    }
+
+    /**
+     * 将数据编码为一条完整的记录(包含 length 和 crc)
+     * @param element
+     * @return
+     */
+    public static byte[] encode(Element element) {
+        return encode(Collections.singletonList(element), false);
+    }
+
+    /**
+     * 将多条数据编码为一条 BATCH 记录(包含 length 和 crc)
+     * @param elements
+     * @return
+     */
+    public static byte[] encodeBatch(List<Element> elements) {
+        return encode(elements, true);
+    }
+
+    private static byte[] encode(List<Element> elements, boolean batch) {
+        int count = elements.size();
+        byte[][] keys = new byte[count][];
+        byte[][] values = new byte[count][];
+        int payloadLen = batch ? 1 + CodingUtil.varIntSize(count) : 0;
+        for (int i = 0; i < count; i++) {
+            Element element = elements.get(i);
+            keys[i] = element.getKey().getBytes(BytesUtil.RAW);
+            values[i] = Boolean.TRUE.equals(element.getDeleted()) || Objects.isNull(element.getValue())
+                    ? new byte[0] : element.getValue().getBytes(BytesUtil.RAW);
+            payloadLen += 1 + CodingUtil.varIntSize(keys[i].length) + CodingUtil.varIntSize(values[i].length)
+                    + keys[i].length + values[i].length;
+        }
+        byte[] record = new byte[HEADER_SIZE + payloadLen];
+        int pos = HEADER_SIZE;
+        if (batch) {
+            record[pos++] = TYPE_BATCH;
+            pos = CodingUtil.writeVarInt(record, pos, count);
+        }
+        for (int i = 0; i < count; i++) {
+            record[pos++] = Boolean.TRUE.equals(elements.get(i).getDeleted()) ? TYPE_DELETE : TYPE_PUT;
+            pos = CodingUtil.writeVarInt(record, pos, keys[i].length);
+            pos = CodingUtil.writeVarInt(record, pos, values[i].length);
+            System.arraycopy(keys[i], 0, record, pos, keys[i].length);
+            pos += keys[i].length;
+            System.arraycopy(values[i], 0, record, pos, values[i].length);
+            pos += values[i].length;
+        }
+
+        CodingUtil.writeInt(record, 0, payloadLen);
+        CodingUtil.writeInt(record, 4, CodingUtil.crc32(record, HEADER_SIZE, payloadLen));
+        return record;
+    }
+
+    /**
+     * 解析 payload(type 及之后的部分), 只记录偏移量不做字符串解码
+     * @param payload
+     * @return
+     */
+    public static LogRecord decode(byte[] payload) {
+        if (payload[0] != TYPE_BATCH) {
+            LogRecord record = new LogRecord();
+            if (decodeEntry(payload, 0, record) != payload.length) {
+                throw new IllegalArgumentException("[LogRecord][decode] 记录长度不匹配");
+            }
+            return record;
+        }
+        LogRecord batch = new LogRecord();
+        batch.payload = payload;
+        batch.type = TYPE_BATCH;
+        int pos = 1;
+        int count = CodingUtil.readVarInt(payload, pos);
+        pos += CodingUtil.varIntSize(count);
+        batch.entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            LogRecord entry = new LogRecord();
+            pos = decodeEntry(payload, pos, entry);
+            batch.entries.add(entry);
+        }
+        if (pos != payload.length) {
+            throw new IllegalArgumentException("[LogRecord][decode] 批量记录长度不匹配");
+        }
+        return batch;
+    }
+
+    /**
+     * 解析从 pos 开始的一条记录
+     * @return 下一条记录的位置
+     */
+    private static int decodeEntry(byte[] payload, int pos, LogRecord record) {
+        record.payload = payload;
+        record.type = payload[pos++];
+        if (record.type != TYPE_PUT && record.type != TYPE_DELETE) {
+            throw new IllegalArgumentException("[LogRecord][decode] 未知的记录类型: " + record.type);
+        }
+        record.keyLen = CodingUtil.readVarInt(payload, pos);
+        pos += CodingUtil.varIntSize(record.keyLen);
+        record.valueLen = CodingUtil.readVarInt(payload, pos);
+        pos += CodingUtil.varIntSize(record.valueLen);
+        record.keyOffset = pos;
+        record.valueOffset = pos + record.keyLen;
+        if (record.valueOffset + record.valueLen > payload.length) {
+            throw new IllegalArgumentException("[LogRecord][decode] 记录长度不匹配");
+        }
+        return record.valueOffset + record.valueLen;
+    }
+
+    /**
+     * 旧版本 JSON 日志中的记录
+     * @param element
+     * @return
+     */
+    public static LogRecord fromElement(Element element) {
+        LogRecord record = new LogRecord();
+        record.type = Boolean.TRUE.equals(element.getDeleted()) ? TYPE_DELETE : TYPE_PUT;
+        record.key = element.getKey();
+        record.value = element.getValue();
+        return record;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public boolean isBatch() {
+        return type == TYPE_BATCH;
+    }
+
+    /**
+     * BATCH 记录中的全部记录
+     * @return 单条记录返回只包含自己的列表
+     */
+    public List<LogRecord> getEntries() {
+        return isBatch() ? entries : Collections.singletonList(this);
+    }
+
+    public boolean isDeleted() {
+        return type == TYPE_DELETE;
+    }
+
+    public String getKey() {
+        if (Objects.isNull(key)) {
+            key = new String(payload, keyOffset, keyLen, BytesUtil.RAW);
+        }
+        return key;
+    }
+
+    public String getValue() {
+        if (Objects.isNull(value)) {
+            value = new String(payload, valueOffset, valueLen, BytesUtil.RAW);
+        }
+        return value;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public Element toElement() {
+        return new Element(getKey(), getValue(), isDeleted(), seq);
+    }
+}
@@ -1,31 +1,65 @@
 package com.zyh.model.log;
 
-import com.alibaba.fastjson.TypeReference;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONException;
+import com.alibaba.fastjson.JSONObject;
 import com.zyh.model.TreeNode;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.comparator.BytewiseComparator;
+import com.zyh.model.config.Options;
 import com.zyh.model.constant.Constant;
+import com.zyh.model.sstable.FileMeta;
+import com.zyh.utils.BytesUtil;
 import com.zyh.utils.ConvertUtil;
+import com.zyh.utils.FileUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
+/**
+ * 记录每一层的表文件信息, 每条记录为 | len(4) | JSON |
+ * 记录分为完整的快照和增量的 {@link VersionEdit}, 启动时从头依次应用得到当前的文件列表
+ * 增量记录超过 MANIFEST_MAX_EDITS 条时, 启动时把当前的文件列表写成一份快照替换原文件
+ * 旧版本只记录文件名, 启动时打开这些文件补全信息并重新写入
+ * 快照中记录了 key 的比较器, 启动时使用的比较器必须相同; 没有记录的旧版本按字节序排列
+ */
 public class ManiFest implements Closeable {
+    public static final Logger LOGGER = LoggerFactory.getLogger(ManiFest.class);
+
     public static final String MANIFEST = "manifest";
+
+    // 增量记录在 JSON 中的字段名, 快照的字段名都是层号
+    private static final String EDIT = "edit";
+
+    // 快照中比较器名字的字段名
+    private static final String COMPARATOR = "comparator";
     private String dataDir;
 
+    private Options options;
+
+    private TableCache tableCache;
+
     private RandomAccessFile log;
 
     private File file;
 
-    private volatile ConcurrentHashMap<Integer,List<String>> fileNameTree;
+    private volatile ConcurrentHashMap<Integer,List<FileMeta>> fileNameTree;
 
     private ConcurrentLinkedDeque<String> expiredFileName;
 
     private Set<String> pastFilePaths;
 
-    public ManiFest(String dataDir) throws IOException {
+    public ManiFest(String dataDir, Options options, TableCache tableCache) throws IOException {
         this.dataDir = dataDir;
+        this.options = options;
+        this.tableCache = tableCache;
         this.file = new File(dataDir + File.separator + MANIFEST);
         this.expiredFileName = new ConcurrentLinkedDeque();
         this.pastFilePaths = new HashSet<>();
@@ -37,63 +71,184 @@ public class ManiFest implements Closeable {
 
     public TreeNode rebuildTreeFromFile(){
         long lastPoint = 0;
+        int edits = 0;
+        String comparatorName = null;
         try {
             log.seek(0);
-            while(log.getFilePointer() != log.length()){
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        while(true){
+            JSONObject object;
+            try {
+                if (log.getFilePointer() == log.length()) {
+                    break;
+                }
                 int len = log.readInt();
                 byte[] bytes = new byte[len];
-                log.read(bytes);
-                fileNameTree = (ConcurrentHashMap<Integer, List<String>>) ConvertUtil.readMapObjectFromBytes(bytes, new TypeReference<ConcurrentHashMap<Integer, List<String>>>(){});
-                insertIntoPastFileList();
+                log.readFully(bytes);
+                object = JSONObject.parseObject(new String(bytes, ConvertUtil.CHARSET));
                 lastPoint += len + 4;
+            } catch (IOException | JSONException | NegativeArraySizeException e) {
+                // 最后一条记录没有写完整, 丢弃
+                LOGGER.warn("[ManiFest][rebuildTreeFromFile] 丢弃不完整的记录, 位置: {}", lastPoint);
+                break;
+            }
+            if (object.containsKey(EDIT)) {
+                apply(object.getJSONObject(EDIT).toJavaObject(VersionEdit.class));
+                edits++;
+            } else {
+                comparatorName = object.getString(COMPARATOR);
+                fileNameTree = parseFileTree(object);
+                edits = 0;
             }
+            insertIntoPastFileList();
+        }
+        try {
+            log.setLength(lastPoint);
+            log.seek(lastPoint);
         } catch (IOException e) {
-            try {
-                // 指向最后完整的数据
-                log.seek(lastPoint);
-            } catch (IOException ex) {
-                throw new RuntimeException(ex);
+            throw new RuntimeException(e);
+        }
+        checkComparator(comparatorName);
+        removeLiveFiles();
+        // 新建的数据或旧版本的 manifest, 写入一份带有比较器的快照
+        TreeNode root = rebuildTree(Objects.isNull(comparatorName));
+        if (Objects.nonNull(comparatorName) && edits > Constant.MANIFEST_MAX_EDITS) {
+            rewrite();
+        }
+        return root;
+    }
+
+    /**
+     * 旧版本的 manifest 没有记录比较器, 其中的文件按字节序排列
+     * @param comparatorName manifest 中记录的比较器, 没有记录时为空
+     */
+    private void checkComparator(String comparatorName) {
+        String current = options.getComparator().name();
+        if (Objects.isNull(comparatorName)) {
+            if (hasFiles() && !BytewiseComparator.NAME.equals(current)) {
+                throw new RuntimeException("[ManiFest][checkComparator] 已有的数据按字节序排列, 不能使用比较器: " + current);
             }
+        } else if (!comparatorName.equals(current)) {
+            throw new RuntimeException("[ManiFest][checkComparator] 比较器不一致, 创建时: " + comparatorName + ", 当前: " + current);
         }
-        return rebuildTree();
+    }
+
+    private boolean hasFiles() {
+        if (Objects.isNull(fileNameTree)) {
+            return false;
+        }
+        for (List<FileMeta> metas : fileNameTree.values()) {
+            if (!metas.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析一份快照, 兼容只记录文件名的旧版本
+     * @param object
+     * @return
+     */
+    private static ConcurrentHashMap<Integer, List<FileMeta>> parseFileTree(JSONObject object) {
+        ConcurrentHashMap<Integer, List<FileMeta>> tree = new ConcurrentHashMap<>();
+        for (Map.Entry<String, Object> entry : object.entrySet()) {
+            if (COMPARATOR.equals(entry.getKey())) {
+                continue;
+            }
+            List<FileMeta> metas = new ArrayList<>();
+            for (Object item : (JSONArray) entry.getValue()) {
+                if (item instanceof String) {
+                    metas.add(new FileMeta((String) item));
+                } else {
+                    metas.add(((JSONObject) item).toJavaObject(FileMeta.class));
+                }
+            }
+            tree.put(Integer.valueOf(entry.getKey()), metas);
+        }
+        return tree;
     }
 
     private void insertIntoPastFileList() {
         if(Objects.isNull(fileNameTree)){
             return;
         }
-        for (Map.Entry<Integer, List<String>> entry : fileNameTree.entrySet()) {
-            List<String> fileNames = entry.getValue();
-            for (String fileName : fileNames) {
-                this.pastFilePaths.add(fileName);
+        for (Map.Entry<Integer, List<FileMeta>> entry : fileNameTree.entrySet()) {
+            List<FileMeta> metas = entry.getValue();
+            for (FileMeta meta : metas) {
+                this.pastFilePaths.add(meta.getFileName());
+            }
+        }
+    }
+
+    /**
+     * 当前仍在使用的文件不能被清理, 剩下的是已经被压缩删除但没有删掉的文件
+     */
+    private void removeLiveFiles() {
+        if(Objects.isNull(fileNameTree)){
+            return;
+        }
+        for (List<FileMeta> metas : fileNameTree.values()) {
+            for (FileMeta meta : metas) {
+                this.pastFilePaths.remove(meta.getFileName());
             }
         }
     }
 
-    private TreeNode rebuildTree() {
-        if(Objects.isNull(fileNameTree))    return new TreeNode(dataDir, 0, this);
+    /**
+     * @param forceSnapshot 是否写入一份快照
+     * @return
+     */
+    private TreeNode rebuildTree(boolean forceSnapshot) {
+        if(Objects.isNull(fileNameTree) || fileNameTree.isEmpty()) {
+            if (forceSnapshot) {
+                appendToLog();
+            }
+            return new TreeNode(dataDir, 0, this, options, tableCache);
+        }
 
+        boolean legacy = forceSnapshot;
+        int maxLevel = Collections.max(fileNameTree.keySet());
         TreeNode root = null, last = null;
-        for (Map.Entry<Integer, List<String>> entry : fileNameTree.entrySet()) {
-            int level = entry.getKey();
-            List<String> fileNameList = entry.getValue();
-            TreeNode treeNode = new TreeNode(dataDir, level, this);
-            treeNode.initTreeNode(fileNameList);
+        // 中间某一层的文件全部被压缩到下一层后, 这一层仍然要保留
+        for (int level = 0; level <= maxLevel; level++) {
+            List<FileMeta> metas = fileNameTree.computeIfAbsent(level, k -> new ArrayList<>());
+            for (FileMeta meta : metas) {
+                legacy |= !meta.isComplete();
+                if (meta.isComplete() && !meta.isRawKeys()) {
+                    // 旧版本记录的是文本 key
+                    meta.setMinKey(BytesUtil.fromText(meta.getMinKey()));
+                    meta.setMaxKey(BytesUtil.fromText(meta.getMaxKey()));
+                    meta.setRawKeys(true);
+                    legacy = true;
+                }
+            }
+            TreeNode treeNode = new TreeNode(dataDir, level, this, options, tableCache);
+            treeNode.initTreeNode(metas);
             if(level == 0){
                 root = treeNode;
-            } else if(Objects.nonNull(last)){
+            } else {
                 treeNode.buildSparseIndex();
                 last.setNextLevel(treeNode);
             }
             last = treeNode;
         }
+        if (legacy) {
+            // initTreeNode 已经补全了文件信息, 下次启动只需要读取 manifest
+            appendToLog();
+        }
 
         return root;
     }
 
+    /**
+     * 追加一份完整的快照
+     */
     public void appendToLog(){
         try {
-            byte[] bytes = ConvertUtil.convertObjectToBytes(fileNameTree);
+            byte[] bytes = ConvertUtil.convertObjectToBytes(snapshot());
             int len = bytes.length;
             log.writeInt(len);
             log.write(bytes);
@@ -102,38 +257,110 @@ public class ManiFest implements Closeable {
         }
     }
 
-    public synchronized void insertFile(Integer level,String filName){
-        if(Objects.isNull(fileNameTree)){
-            fileNameTree = new ConcurrentHashMap<>();
+    /**
+     * 每一层的文件列表和比较器的名字
+     * @return
+     */
+    private JSONObject snapshot() {
+        JSONObject object = new JSONObject();
+        if (Objects.nonNull(fileNameTree)) {
+            for (Map.Entry<Integer, List<FileMeta>> entry : fileNameTree.entrySet()) {
+                object.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+        }
+        object.put(COMPARATOR, options.getComparator().name());
+        return object;
+    }
+
+    /**
+     * 把当前的文件列表写成一份快照, 写入临时文件后替换原文件
+     */
+    private synchronized void rewrite() {
+        File tmp = new File(dataDir + File.separator + MANIFEST + ".tmp");
+        try {
+            try (RandomAccessFile out = new RandomAccessFile(tmp, Constant.RW)) {
+                out.setLength(0);
+                byte[] bytes = ConvertUtil.convertObjectToBytes(snapshot());
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                out.getChannel().force(true);
+            }
+            log.close();
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileUtil.syncDir(new File(dataDir));
+            log = new RandomAccessFile(file, Constant.RW);
+            log.seek(log.length());
+            LOGGER.info("[ManiFest][rewrite] manifest 重写完成, 大小: {}", log.length());
+        } catch (IOException e) {
+            throw new RuntimeException("[ManiFest][rewrite] manifest 重写失败", e);
         }
-        List<String> currentLevelFileNames = fileNameTree.get(level);
-        if(Objects.isNull(currentLevelFileNames)){
-            currentLevelFileNames = new ArrayList<>();
+    }
+
+    /**
+     * 新增一个 L0 文件
+     * @param level
+     * @param meta
+     */
+    public void insertFile(Integer level,FileMeta meta){
+        VersionEdit edit = new VersionEdit();
+        edit.addFile(level, meta);
+        logAndApply(edit);
+    }
+
+    /**
+     * 先持久化增量记录再修改内存中的文件列表, 记录写入成功后才能删除被替换的文件
+     * 写入失败时截掉写了一半的记录, 调用方可以重试
+     * @param edit
+     */
+    public synchronized void logAndApply(VersionEdit edit){
+        JSONObject record = new JSONObject();
+        record.put(EDIT, edit);
+        long position = -1;
+        try {
+            position = log.getFilePointer();
+            byte[] bytes = ConvertUtil.convertObjectToBytes(record);
+            log.writeInt(bytes.length);
+            log.write(bytes);
+            log.getChannel().force(false);
+        } catch (IOException e) {
+            truncate(position);
+            throw new RuntimeException("[ManiFest][logAndApply] 写入失败", e);
         }
-        currentLevelFileNames.add(filName);
-        fileNameTree.put(level,currentLevelFileNames);
-        appendToLog();
+        apply(edit);
     }
 
-    public synchronized void updateLevelFileNames(Integer level, List<String> fileNameList){
-        fileNameTree.put(level,fileNameList);
-        appendToLog();
+    private void truncate(long position) {
+        if (position < 0) {
+            return;
+        }
+        try {
+            log.setLength(position);
+            log.seek(position);
+        } catch (IOException e) {
+            LOGGER.error("[ManiFest][truncate] 截断失败, 位置: {}", position, e);
+        }
     }
 
-    public synchronized void delete(int level,List<String> deletedFilePaths){
-        List<String> fileNames = fileNameTree.get(level);
-        if(fileNames.size() < deletedFilePaths.size()){
-            throw new RuntimeException("[Manifest][delete] 删除失败");
+    private void apply(VersionEdit edit) {
+        if(Objects.isNull(fileNameTree)){
+            fileNameTree = new ConcurrentHashMap<>();
+        }
+        for (Map.Entry<Integer, List<String>> entry : edit.getDeletedFiles().entrySet()) {
+            List<FileMeta> metas = fileNameTree.get(entry.getKey());
+            Set<String> deleted = new HashSet<>(entry.getValue());
+            if (Objects.isNull(metas) || !metas.removeIf(meta -> deleted.contains(meta.getFileName()))) {
+                throw new RuntimeException("[ManiFest][apply] 删除的文件不存在, level: " + entry.getKey() + ", " + deleted);
+            }
         }
-        Iterator<String> iterator = fileNames.iterator();
-        while(iterator.hasNext()){
-            String fileName = iterator.next();
-            String filePath = dataDir + File.separator + fileName;
-            if(deletedFilePaths.contains(filePath)){
-                iterator.remove();
+        for (Map.Entry<Integer, List<FileMeta>> entry : edit.getAddedFiles().entrySet()) {
+            int level = entry.getKey();
+            List<FileMeta> metas = fileNameTree.computeIfAbsent(level, k -> new ArrayList<>());
+            metas.addAll(entry.getValue());
+            if (level > 0) {
+                // L0 按写入顺序排列, 其他层的文件互不重叠, 按 key 排列
+                metas.sort(Comparator.comparing(FileMeta::getMinKey, options.getKeyOrder()));
             }
         }
-        appendToLog();
     }
 
     @Override
@@ -0,0 +1,16 @@
+package com.zyh.model.log;
+
+/**
+ * WAL 刷盘策略
+ */
+public enum SyncPolicy {
+
+    // 只写入操作系统缓存, 不主动刷盘
+    NONE,
+
+    // 后台线程每隔固定时间刷盘一次
+    INTERVAL,
+
+    // 每次提交都等待刷盘完成, 同一组提交共用一次刷盘
+    EVERY_COMMIT
+}
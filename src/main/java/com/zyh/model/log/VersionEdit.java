@@ -0,0 +1,37 @@
+package com.zyh.model.log;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import com.zyh.model.sstable.FileMeta;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一次变更中每一层新增和删除的文件, 作为增量记录追加到 manifest
+ * 刷盘只新增 L0 的文件; 压缩在同一个记录中删除输入文件并新增输出文件, 恢复时要么全部生效要么都不生效
+ */
+@Data
+public class VersionEdit {
+
+    // 层号 -> 新增的文件
+    private Map<Integer, List<FileMeta>> addedFiles = new TreeMap<>();
+
+    // 层号 -> 删除的文件名
+    private Map<Integer, List<String>> deletedFiles = new TreeMap<>();
+
+    public void addFile(int level, FileMeta meta) {
+        addedFiles.computeIfAbsent(level, k -> new ArrayList<>()).add(meta);
+    }
+
+    public void deleteFile(int level, String fileName) {
+        deletedFiles.computeIfAbsent(level, k -> new ArrayList<>()).add(fileName);
+    }
+
+    @JSONField(serialize = false)
+    public boolean isEmpty() {
+        return addedFiles.isEmpty() && deletedFiles.isEmpty();
+    }
+}
@@ -0,0 +1,147 @@
+package com.zyh.model.memtable;
+
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.sstable.Element;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于跳表的内存表, 写入和读取都不需要加锁
+ * 只有切换内存表时需要和写线程协调
+ * 同一个 key 的每次写入都是一个新的版本, 按 key 升序、seq 降序排列, 快照读取时找到对它可见的最新版本
+ * 不再需要的旧版本在刷盘时丢弃
+ */
+public class MemTable {
+
+    // 跳表节点: Node(24) + 平均约 0.5 个 Index(24), 取整
+    public static final int NODE_OVERHEAD = 40;
+
+    // Element 对象: 对象头(12) + 3 个引用(12) + seq(8)
+    public static final int ELEMENT_OVERHEAD = 32;
+
+    // String 对象(24) + 数组对象头(16)
+    public static final int STRING_OVERHEAD = 40;
+
+    // 内部形式的字符都不超过 0xFF, JDK 9 之后的紧凑字符串每个字符 1 字节, Java 8 的 char[] 每个字符 2 字节
+    private static final int BYTES_PER_CHAR = System.getProperty("java.specification.version").startsWith("1.") ? 2 : 1;
+
+    private final ConcurrentSkipListSet<Element> data;
+
+    // ConcurrentSkipListMap.size() 需要遍历整个跳表, 单独计数
+    private final AtomicInteger count;
+
+    // 估算的内存占用(字节)
+    private final AtomicLong approximateBytes;
+
+    public MemTable() {
+        this(KeyOrder.BYTEWISE);
+    }
+
+    public MemTable(Comparator<String> comparator) {
+        this.data = new ConcurrentSkipListSet<>(versionOrder(comparator));
+        this.count = new AtomicInteger(0);
+        this.approximateBytes = new AtomicLong(0);
+    }
+
+    /**
+     * 先按 key 升序, key 相同时 seq 大的在前
+     * @param comparator
+     * @return
+     */
+    public static Comparator<Element> versionOrder(Comparator<String> comparator) {
+        return (a, b) -> {
+            int cmp = comparator.compare(a.getKey(), b.getKey());
+            return cmp != 0 ? cmp : Long.compare(b.getSeq(), a.getSeq());
+        };
+    }
+
+    /**
+     * 写入一个新的版本, 写入前 element 已经分配了顺序号
+     * @param element
+     */
+    public void put(Element element) {
+        if (data.add(element)) {
+            count.incrementAndGet();
+            approximateBytes.addAndGet(NODE_OVERHEAD + stringSize(element.getKey()) + elementSize(element));
+        }
+    }
+
+    /**
+     * 查找最新的版本
+     * @param key
+     * @return
+     */
+    public Element get(String key) {
+        return get(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * 查找 seq 小于等于 snapshot 的最新版本
+     * @param key
+     * @param snapshot
+     * @return 没有可见的版本时返回 null, 被删除的记录返回删除标记
+     */
+    public Element get(String key, long snapshot) {
+        Element element = data.ceiling(probe(key, snapshot));
+        return Objects.nonNull(element) && element.getKey().equals(key) ? element : null;
+    }
+
+    /**
+     * 用于定位的记录: 排在 key 的所有 seq 小于等于 snapshot 的版本之前
+     */
+    static Element probe(String key, long snapshot) {
+        return new Element(key, null, false, snapshot);
+    }
+
+    /**
+     * 记录数, 同一个 key 的每个版本各算一条
+     * @return
+     */
+    public int size() {
+        return count.get();
+    }
+
+    /**
+     * 估算的内存占用, 包括 key、value、Element 对象和跳表节点
+     * @return
+     */
+    public long approximateBytes() {
+        return approximateBytes.get();
+    }
+
+    private static long elementSize(Element element) {
+        return ELEMENT_OVERHEAD + stringSize(element.getValue());
+    }
+
+    private static long stringSize(String value) {
+        if (Objects.isNull(value)) {
+            return 0;
+        }
+        return STRING_OVERHEAD + (long) BYTES_PER_CHAR * value.length();
+    }
+
+    public boolean isEmpty() {
+        return count.get() == 0;
+    }
+
+    /**
+     * 按 key 有序遍历的迭代器, 使用前需要定位
+     * @return
+     */
+    public MemTableIterator iterator() {
+        return new MemTableIterator(data);
+    }
+
+    /**
+     * 按 key 升序、seq 降序排列的全部版本
+     * @return
+     */
+    public Collection<Element> values() {
+        return data;
+    }
+}
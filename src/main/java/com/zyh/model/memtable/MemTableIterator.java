@@ -0,0 +1,95 @@
+package com.zyh.model.memtable;
+
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.model.sstable.Element;
+import com.zyh.utils.BytesUtil;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.Objects;
+
+/**
+ * 按 key 顺序遍历内存表的所有版本, 不复制数据
+ * 跳表的迭代是弱一致的: 迭代期间写入内存表的记录可能可见, 但不会抛出并发修改异常,
+ * 这些记录的 seq 大于迭代器的快照, 由 {@link com.zyh.model.iterator.DbIterator} 跳过
+ */
+public class MemTableIterator implements KvIterator {
+
+    private final NavigableSet<Element> data;
+
+    private Iterator<Element> iterator;
+
+    private Element current;
+
+    // 当前记录 value 的编码, 第一次读取时生成
+    private byte[] value;
+
+    MemTableIterator(NavigableSet<Element> data) {
+        this.data = data;
+    }
+
+    @Override
+    public boolean valid() {
+        return Objects.nonNull(current);
+    }
+
+    @Override
+    public void seekToFirst() {
+        position(data.iterator());
+    }
+
+    @Override
+    public void seek(String target) {
+        position(data.tailSet(MemTable.probe(target, Long.MAX_VALUE), true).iterator());
+    }
+
+    private void position(Iterator<Element> iterator) {
+        this.iterator = iterator;
+        next();
+    }
+
+    @Override
+    public void next() {
+        current = iterator.hasNext() ? iterator.next() : null;
+        value = null;
+    }
+
+    @Override
+    public String key() {
+        return current.getKey();
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return current.getDeleted();
+    }
+
+    @Override
+    public long seq() {
+        return current.getSeq();
+    }
+
+    @Override
+    public byte[] valueArray() {
+        if (Objects.isNull(value)) {
+            value = Objects.isNull(current.getValue()) ? new byte[0] : current.getValue().getBytes(BytesUtil.RAW);
+        }
+        return value;
+    }
+
+    @Override
+    public int valueOffset() {
+        return 0;
+    }
+
+    @Override
+    public int valueLength() {
+        return valueArray().length;
+    }
+
+    @Override
+    public void close() {
+        current = null;
+        iterator = null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.zyh.model.snapshot;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 已发布的写入顺序号: 小于等于它的写入都已经进入内存表
+ * 顺序号在日志入队时连续分配, 写线程写完内存表后发布各自的区间, 发布的顺序可能和分配的顺序不同
+ * 前面还有写入没有完成时, 后面的区间先暂存, 前面的区间发布后一起推进
+ */
+public class SequenceTracker {
+
+    private volatile long visible;
+
+    // 已完成但前面还有未完成写入的区间: 起始顺序号 -> 结束顺序号
+    private final Map<Long, Long> completed = new HashMap<>();
+
+    public SequenceTracker(long visible) {
+        this.visible = visible;
+    }
+
+    /**
+     * [first, last] 中的写入都已经进入内存表
+     * @param first
+     * @param last
+     */
+    public synchronized void publish(long first, long last) {
+        if (first != visible + 1) {
+            completed.put(first, last);
+            return;
+        }
+        long current = last;
+        Long next;
+        while (Objects.nonNull(next = completed.remove(current + 1))) {
+            current = next;
+        }
+        visible = current;
+        notifyAll();
+    }
+
+    /**
+     * 等待 seq 之前的写入全部完成, 写线程返回前调用, 之后创建的快照一定能看到自己的写入
+     * @param seq
+     */
+    public void await(long seq) {
+        if (visible >= seq) {
+            return;
+        }
+        synchronized (this) {
+            while (visible < seq) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("[SequenceTracker][await] 等待被中断", e);
+                }
+            }
+        }
+    }
+
+    public long visible() {
+        return visible;
+    }
+}
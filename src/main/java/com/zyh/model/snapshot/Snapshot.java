@@ -0,0 +1,44 @@
+package com.zyh.model.snapshot;
+
+import java.io.Closeable;
+
+/**
+ * 数据库在某个写入顺序号时的只读视图, 读取时只能看到 seq 小于等于它的版本
+ * 快照释放前, 刷盘和压缩会保留它需要的旧版本; 使用结束后必须释放
+ */
+public class Snapshot implements Closeable {
+
+    private final long seq;
+
+    private final SnapshotList list;
+
+    private boolean released;
+
+    Snapshot(long seq, SnapshotList list) {
+        this.seq = seq;
+        this.list = list;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    /**
+     * 释放快照, 重复调用没有影响
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+        }
+        list.release(seq);
+    }
+
+    @Override
+    public String toString() {
+        return "Snapshot{seq=" + seq + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.zyh.model.snapshot;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 所有未释放的快照, 刷盘和压缩开始前取一份顺序号列表决定保留哪些旧版本
+ * 创建快照和读取列表在同一个锁内: 没有出现在列表中的快照, 顺序号一定不小于当时已经发布的写入,
+ * 而刷盘和压缩的输入都已经发布, 这些快照只需要每个 key 的最新版本
+ */
+public class SnapshotList {
+
+    private final SequenceTracker sequence;
+
+    // 顺序号 -> 引用次数
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+
+    public SnapshotList(SequenceTracker sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * 以当前已经发布的顺序号创建快照
+     * @return
+     */
+    public synchronized Snapshot acquire() {
+        long seq = sequence.visible();
+        snapshots.merge(seq, 1, Integer::sum);
+        return new Snapshot(seq, this);
+    }
+
+    synchronized void release(long seq) {
+        Integer count = snapshots.get(seq);
+        if (count == null) {
+            throw new IllegalStateException("[SnapshotList][release] 快照不存在: " + seq);
+        }
+        if (count == 1) {
+            snapshots.remove(seq);
+        } else {
+            snapshots.put(seq, count - 1);
+        }
+    }
+
+    /**
+     * 未释放的快照的顺序号, 从小到大排列, 不重复
+     * @return
+     */
+    public synchronized long[] seqs() {
+        long[] seqs = new long[snapshots.size()];
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : snapshots.entrySet()) {
+            seqs[i++] = entry.getKey();
+        }
+        return seqs;
+    }
+
+    public synchronized int size() {
+        int size = 0;
+        for (int count : snapshots.values()) {
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * 最旧的快照的顺序号
+     * @return 没有快照时为 -1
+     */
+    public synchronized long oldest() {
+        return snapshots.isEmpty() ? -1 : snapshots.firstKey();
+    }
+}
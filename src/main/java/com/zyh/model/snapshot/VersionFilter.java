@@ -0,0 +1,73 @@
+package com.zyh.model.snapshot;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 刷盘和压缩时决定一条记录是否保留: 记录按 key 升序、同一个 key 按 seq 降序依次传入
+ * 每个 key 的最新版本总是保留; 旧版本只有在某个快照 s 满足 seq <= s < 更新一个版本的 seq 时才保留,
+ * 也就是它是这个快照能看到的版本, 否则已经没有读取能看到它
+ * 删除标记和普通记录的处理相同, 最新版本为删除标记时同样保留
+ */
+public class VersionFilter {
+
+    private final long[] snapshots;
+
+    private String lastKey;
+
+    // 上一条记录(同一个 key 更新一个版本)的 seq
+    private long newerSeq;
+
+    private long dropped;
+
+    /**
+     * @param snapshots 未释放的快照的顺序号, 从小到大排列
+     */
+    public VersionFilter(long[] snapshots) {
+        this.snapshots = snapshots;
+    }
+
+    public boolean keep(String key, long seq) {
+        if (!key.equals(lastKey)) {
+            lastKey = key;
+            newerSeq = seq;
+            return true;
+        }
+        long newer = newerSeq;
+        newerSeq = seq;
+        // 第一个大于等于 seq 的快照
+        int idx = Arrays.binarySearch(snapshots, seq);
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        if (idx < snapshots.length && snapshots[idx] < newer) {
+            return true;
+        }
+        dropped++;
+        return false;
+    }
+
+    /**
+     * 记录被整块复制时没有经过过滤, 下一条记录一定是新的 key
+     */
+    public void reset() {
+        lastKey = null;
+    }
+
+    /**
+     * 是否和上一条传入的记录是同一个 key
+     * @param key
+     * @return
+     */
+    public boolean isSameKey(String key) {
+        return Objects.equals(lastKey, key);
+    }
+
+    /**
+     * 丢弃的旧版本数量
+     * @return
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
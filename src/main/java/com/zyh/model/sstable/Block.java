@@ -0,0 +1,50 @@
+package com.zyh.model.sstable;
+
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.utils.CodingUtil;
+
+/**
+ * 只读的数据块, 格式见 {@link BlockBuilder}
+ */
+public class Block {
+
+    // 记录被删除
+    public static final byte FLAG_DELETED = 1;
+
+    // flags 之后带有写入顺序号, 旧文件的记录没有顺序号, 按 0 处理
+    public static final byte FLAG_SEQ = 2;
+
+    private final byte[] data;
+
+    private final int restartOffset;
+
+    private final int restartCount;
+
+    public Block(byte[] data) {
+        if (data.length < 4) {
+            throw new IllegalArgumentException("[Block] 数据块长度错误: " + data.length);
+        }
+        this.data = data;
+        this.restartCount = CodingUtil.readInt(data, data.length - 4);
+        this.restartOffset = data.length - 4 - restartCount * 4;
+        if (restartCount <= 0 || restartOffset < 0) {
+            throw new IllegalArgumentException("[Block] 重启点数量错误: " + restartCount);
+        }
+    }
+
+    public BlockIterator iterator() {
+        return iterator(KeyOrder.BYTEWISE);
+    }
+
+    public BlockIterator iterator(KeyOrder comparator) {
+        return new BlockIterator(data, restartOffset, restartCount, comparator);
+    }
+
+    public int size() {
+        return data.length;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+}
@@ -0,0 +1,139 @@
+package com.zyh.model.sstable;
+
+import com.zyh.utils.CodingUtil;
+
+import java.util.Arrays;
+
+/**
+ * 构建数据块
+ * 记录格式: | shared(varint) | unshared(varint) | valueLen(varint) | flags(1) | seq(varlong, 可选) | key 后缀 | value |
+ * seq 大于 0 时写入并设置 {@link Block#FLAG_SEQ}, 同一个 key 的多个版本按 seq 从大到小相邻排列
+ * 每隔 restartInterval 条记录设置一个重启点, 重启点处的 key 不做前缀压缩
+ * 块尾部: | restart(4) * n | n(4) |
+ */
+public class BlockBuilder {
+
+    private final int restartInterval;
+
+    private byte[] buffer;
+
+    private int size;
+
+    private int[] restarts;
+
+    private int restartCount;
+
+    // 距离上一个重启点的记录数
+    private int counter;
+
+    private byte[] lastKey;
+
+    private int entryCount;
+
+    public BlockBuilder(int restartInterval) {
+        this.restartInterval = restartInterval;
+        this.buffer = new byte[1024];
+        this.restarts = new int[16];
+        reset();
+    }
+
+    public void reset() {
+        this.size = 0;
+        this.restartCount = 0;
+        this.counter = 0;
+        this.entryCount = 0;
+        this.lastKey = new byte[0];
+        addRestart(0);
+    }
+
+    /**
+     * 添加一条记录, key 必须按顺序添加
+     */
+    public void add(byte[] key, byte flags, byte[] value, int valueOffset, int valueLen) {
+        add(key, flags, 0, value, valueOffset, valueLen);
+    }
+
+    /**
+     * 添加一条带写入顺序号的记录, 同一个 key 的版本按 seq 从大到小添加
+     */
+    public void add(byte[] key, byte flags, long seq, byte[] value, int valueOffset, int valueLen) {
+        if (seq > 0) {
+            flags |= Block.FLAG_SEQ;
+        }
+        int shared = 0;
+        if (counter < restartInterval) {
+            int limit = Math.min(lastKey.length, key.length);
+            while (shared < limit && lastKey[shared] == key[shared]) {
+                shared++;
+            }
+        } else {
+            addRestart(size);
+            counter = 0;
+        }
+        int unshared = key.length - shared;
+
+        ensureCapacity(CodingUtil.varIntSize(shared) + CodingUtil.varIntSize(unshared)
+                + CodingUtil.varIntSize(valueLen) + 1 + (seq > 0 ? CodingUtil.varLongSize(seq) : 0) + unshared + valueLen);
+        size = CodingUtil.writeVarInt(buffer, size, shared);
+        size = CodingUtil.writeVarInt(buffer, size, unshared);
+        size = CodingUtil.writeVarInt(buffer, size, valueLen);
+        buffer[size++] = flags;
+        if (seq > 0) {
+            size = CodingUtil.writeVarLong(buffer, size, seq);
+        }
+        System.arraycopy(key, shared, buffer, size, unshared);
+        size += unshared;
+        System.arraycopy(value, valueOffset, buffer, size, valueLen);
+        size += valueLen;
+
+        lastKey = key;
+        counter++;
+        entryCount++;
+    }
+
+    public void add(byte[] key, byte[] value) {
+        add(key, (byte) 0, value, 0, value.length);
+    }
+
+    /**
+     * 当前块完成后的大小
+     */
+    public int currentSize() {
+        return size + restartCount * 4 + 4;
+    }
+
+    public boolean isEmpty() {
+        return entryCount == 0;
+    }
+
+    public byte[] getLastKey() {
+        return lastKey;
+    }
+
+    /**
+     * 写入重启点数组, 返回完整的块
+     */
+    public byte[] finish() {
+        byte[] block = Arrays.copyOf(buffer, currentSize());
+        int pos = size;
+        for (int i = 0; i < restartCount; i++) {
+            CodingUtil.writeInt(block, pos, restarts[i]);
+            pos += 4;
+        }
+        CodingUtil.writeInt(block, pos, restartCount);
+        return block;
+    }
+
+    private void addRestart(int offset) {
+        if (restartCount == restarts.length) {
+            restarts = Arrays.copyOf(restarts, restarts.length * 2);
+        }
+        restarts[restartCount++] = offset;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.zyh.model.sstable;
+
+import com.zyh.utils.CodingUtil;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 数据块在文件中的位置
+ */
+@Data
+@AllArgsConstructor
+public class BlockHandle {
+
+    private long offset;
+
+    private int size;
+
+    public byte[] encode() {
+        byte[] bytes = new byte[CodingUtil.varLongSize(offset) + CodingUtil.varIntSize(size)];
+        int pos = CodingUtil.writeVarLong(bytes, 0, offset);
+        CodingUtil.writeVarInt(bytes, pos, size);
+        return bytes;
+    }
+
+    public static BlockHandle decode(byte[] src, int offset) {
+        long blockOffset = CodingUtil.readVarLong(src, offset);
+        int size = CodingUtil.readVarInt(src, offset + CodingUtil.varLongSize(blockOffset));
+        return new BlockHandle(blockOffset, size);
+    }
+}
@@ -0,0 +1,210 @@
+package com.zyh.model.sstable;
+
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.utils.BytesUtil;
+import com.zyh.utils.CodingUtil;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * 数据块的迭代器, key 的比较方式和内存表一致, 定位时直接比较块中的字节, 不创建字符串
+ * 同一个 key 的多个版本相邻, seek 定位到其中 seq 最大的版本
+ */
+public class BlockIterator implements KvIterator {
+
+    private final byte[] data;
+
+    private final int restartOffset;
+
+    private final int restartCount;
+
+    private final KeyOrder comparator;
+
+    // 当前记录的起始位置, 等于 restartOffset 时迭代结束
+    private int current;
+
+    private int nextOffset;
+
+    private byte[] key = new byte[32];
+
+    private int keyLen;
+
+    private String keyString;
+
+    private byte flags;
+
+    private long seq;
+
+    private int valueOffset;
+
+    private int valueLen;
+
+    BlockIterator(byte[] data, int restartOffset, int restartCount, KeyOrder comparator) {
+        this.data = data;
+        this.comparator = comparator;
+        this.restartOffset = restartOffset;
+        this.restartCount = restartCount;
+        this.current = restartOffset;
+        this.nextOffset = restartOffset;
+    }
+
+    @Override
+    public boolean valid() {
+        return current < restartOffset;
+    }
+
+    @Override
+    public void seekToFirst() {
+        seekToRestart(0);
+        parseNext();
+    }
+
+    /**
+     * 定位到第一个大于等于 target 的记录
+     * @param target
+     */
+    @Override
+    public void seek(String target) {
+        // 二分查找最后一个 key 小于 target 的重启点
+        int left = 0;
+        int right = restartCount - 1;
+        while (left < right) {
+            int mid = (left + right + 1) >>> 1;
+            if (compareRestartKey(mid, target) < 0) {
+                left = mid;
+            } else {
+                right = mid - 1;
+            }
+        }
+        seekToRestart(left);
+        while (parseNext()) {
+            if (comparator.compare(key, 0, keyLen, target) >= 0) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void next() {
+        parseNext();
+    }
+
+    @Override
+    public String key() {
+        if (Objects.isNull(keyString)) {
+            keyString = new String(key, 0, keyLen, BytesUtil.RAW);
+        }
+        return keyString;
+    }
+
+    public byte[] keyBytes() {
+        return Arrays.copyOf(key, keyLen);
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return (flags & Block.FLAG_DELETED) != 0;
+    }
+
+    public byte getFlags() {
+        return flags;
+    }
+
+    @Override
+    public long seq() {
+        return seq;
+    }
+
+    public byte[] value() {
+        return Arrays.copyOfRange(data, valueOffset, valueOffset + valueLen);
+    }
+
+    public String valueString() {
+        return new String(data, valueOffset, valueLen, BytesUtil.RAW);
+    }
+
+    /**
+     * 块内部的原始数据, 只能读取
+     */
+    @Override
+    public byte[] valueArray() {
+        return data;
+    }
+
+    /**
+     * value 在块内的偏移量
+     */
+    @Override
+    public int valueOffset() {
+        return valueOffset;
+    }
+
+    @Override
+    public int valueLength() {
+        return valueLen;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private int restartPoint(int index) {
+        return CodingUtil.readInt(data, restartOffset + index * 4);
+    }
+
+    private int compareRestartKey(int index, String target) {
+        int pos = restartPoint(index);
+        // 重启点处 shared 一定为 0
+        int shared = CodingUtil.readVarInt(data, pos);
+        pos += CodingUtil.varIntSize(shared);
+        int unshared = CodingUtil.readVarInt(data, pos);
+        pos += CodingUtil.varIntSize(unshared);
+        int len = CodingUtil.readVarInt(data, pos);
+        pos += CodingUtil.varIntSize(len);
+        if ((data[pos++] & Block.FLAG_SEQ) != 0) {
+            pos += CodingUtil.varLongSize(CodingUtil.readVarLong(data, pos));
+        }
+        return comparator.compare(data, pos, unshared, target);
+    }
+
+    private void seekToRestart(int index) {
+        keyLen = 0;
+        keyString = null;
+        nextOffset = restartPoint(index);
+    }
+
+    private boolean parseNext() {
+        current = nextOffset;
+        if (current >= restartOffset) {
+            current = restartOffset;
+            return false;
+        }
+        int pos = current;
+        int shared = CodingUtil.readVarInt(data, pos);
+        pos += CodingUtil.varIntSize(shared);
+        int unshared = CodingUtil.readVarInt(data, pos);
+        pos += CodingUtil.varIntSize(unshared);
+        valueLen = CodingUtil.readVarInt(data, pos);
+        pos += CodingUtil.varIntSize(valueLen);
+        flags = data[pos++];
+        seq = 0;
+        if ((flags & Block.FLAG_SEQ) != 0) {
+            seq = CodingUtil.readVarLong(data, pos);
+            pos += CodingUtil.varLongSize(seq);
+        }
+
+        if (shared + unshared > key.length) {
+            key = Arrays.copyOf(key, Math.max(key.length * 2, shared + unshared));
+        }
+        System.arraycopy(data, pos, key, shared, unshared);
+        keyLen = shared + unshared;
+        keyString = null;
+        pos += unshared;
+
+        valueOffset = pos;
+        nextOffset = pos + valueLen;
+        return true;
+    }
+}
@@ -14,8 +14,17 @@ public class Element {
 
     private Boolean deleted = false;
 
+    // 写入顺序号, 内存表和表文件中同一个 key 的多个版本按它从新到旧排列, 快照只读取不大于自己顺序号的版本
+    private long seq;
+
     public Element(String key, String value) {
         this.key = key;
         this.value = value;
     }
+
+    public Element(String key, String value, Boolean deleted) {
+        this.key = key;
+        this.value = value;
+        this.deleted = deleted;
+    }
 }
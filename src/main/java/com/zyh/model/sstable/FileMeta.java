@@ -0,0 +1,44 @@
+package com.zyh.model.sstable;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 记录在 manifest 中的表文件信息, 启动时不需要打开文件就可以构建每一层的索引
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileMeta {
+
+    private String fileName;
+
+    private long fileSize;
+
+    private String minKey;
+
+    private String maxKey;
+
+    private long entryCount;
+
+    // 文件中最大的写入顺序号, 启动时用于恢复全局顺序号, 旧版本的 manifest 中为 0
+    private long maxSeq;
+
+    // minKey 和 maxKey 是否为内部形式, 旧版本的 manifest 中保存的是文本
+    private boolean rawKeys;
+
+    public FileMeta(String fileName) {
+        this.fileName = fileName;
+    }
+
+    /**
+     * 旧版本的 manifest 只记录了文件名, 需要打开文件补全
+     * @return
+     */
+    @JSONField(serialize = false)
+    public boolean isComplete() {
+        return minKey != null && maxKey != null;
+    }
+}
@@ -0,0 +1,65 @@
+package com.zyh.model.sstable;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.zyh.utils.BytesUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * SsTable 中的布隆过滤器块
+ * 写入时先记录每个 key 的 64 位哈希, 完成时按照实际的 key 数量和 bitsPerKey 创建过滤器,
+ * 序列化后作为单独的块写入文件, 打开文件时直接读取, 不需要重新计算 key 的哈希
+ */
+public class FilterBlock {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private long[] hashes = new long[1024];
+
+    private int count;
+
+    public static long hash(String key) {
+        return HASH.hashString(key, BytesUtil.RAW).asLong();
+    }
+
+    public void add(String key) {
+        if (count == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+        }
+        hashes[count++] = hash(key);
+    }
+
+    /**
+     * 每个 key 占用 bitsPerKey 位, 对应的误判率为 e^(-bitsPerKey * ln2 * ln2)
+     * @param bitsPerKey
+     * @return 序列化后的过滤器
+     */
+    public byte[] finish(int bitsPerKey) {
+        double fpp = Math.exp(-bitsPerKey * Math.log(2) * Math.log(2));
+        BloomFilter<Long> filter = BloomFilter.create(Funnels.longFunnel(), Math.max(count, 1), fpp);
+        for (int i = 0; i < count; i++) {
+            filter.put(hashes[i]);
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            filter.writeTo(out);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("[FilterBlock][finish] 序列化失败", e);
+        }
+    }
+
+    public static BloomFilter<Long> read(byte[] data) {
+        try {
+            return BloomFilter.readFrom(new ByteArrayInputStream(data), Funnels.longFunnel());
+        } catch (IOException e) {
+            throw new RuntimeException("[FilterBlock][read] 反序列化失败", e);
+        }
+    }
+}
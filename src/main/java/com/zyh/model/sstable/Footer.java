@@ -0,0 +1,57 @@
+package com.zyh.model.sstable;
+
+import com.zyh.utils.CodingUtil;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * SsTable 文件尾部的定长数据
+ * | metaOffset(8) | metaSize(4) | indexOffset(8) | indexSize(4) | version(4) | magic(8) |
+ */
+@Data
+@AllArgsConstructor
+public class Footer {
+
+    public static final long MAGIC = 0x54696E794B565442L;
+
+    public static final int VERSION = 1;
+
+    public static final int SIZE = 36;
+
+    private BlockHandle metaHandle;
+
+    private BlockHandle indexHandle;
+
+    private int version;
+
+    public byte[] encode() {
+        byte[] bytes = new byte[SIZE];
+        CodingUtil.writeLong(bytes, 0, metaHandle.getOffset());
+        CodingUtil.writeInt(bytes, 8, metaHandle.getSize());
+        CodingUtil.writeLong(bytes, 12, indexHandle.getOffset());
+        CodingUtil.writeInt(bytes, 20, indexHandle.getSize());
+        CodingUtil.writeInt(bytes, 24, version);
+        CodingUtil.writeLong(bytes, 28, MAGIC);
+        return bytes;
+    }
+
+    public static Footer decode(byte[] bytes) {
+        if (bytes.length != SIZE || !hasMagic(bytes)) {
+            throw new IllegalArgumentException("[Footer][decode] 不是 SsTable 文件");
+        }
+        int version = CodingUtil.readInt(bytes, 24);
+        if (version != VERSION) {
+            throw new IllegalArgumentException("[Footer][decode] 不支持的版本: " + version);
+        }
+        BlockHandle metaHandle = new BlockHandle(CodingUtil.readLong(bytes, 0), CodingUtil.readInt(bytes, 8));
+        BlockHandle indexHandle = new BlockHandle(CodingUtil.readLong(bytes, 12), CodingUtil.readInt(bytes, 20));
+        return new Footer(metaHandle, indexHandle, version);
+    }
+
+    /**
+     * 旧版本(JSON 索引)的文件尾部是 TableMetaInfo, 没有 magic
+     */
+    public static boolean hasMagic(byte[] bytes) {
+        return bytes.length >= 8 && CodingUtil.readLong(bytes, bytes.length - 8) == MAGIC;
+    }
+}
@@ -0,0 +1,70 @@
+package com.zyh.model.sstable;
+
+import com.alibaba.fastjson.TypeReference;
+import com.zyh.model.config.Options;
+import com.zyh.utils.BytesUtil;
+import com.zyh.utils.ConvertUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 旧版本的 SsTable 文件: | value ... | JSON 索引 | TableMetaInfo(5 * 8) |
+ * 打开时转换为数据块格式
+ */
+public class LegacyTable {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(LegacyTable.class);
+
+    // version, dataStart, dataLen, indexStart, indexLen
+    private static final int META_INFO_SIZE = 5 * 8;
+
+    public static void convert(String filePath, Options options) {
+        String convertPath = filePath + ".convert";
+        TableBuilder builder = new TableBuilder(convertPath, options);
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            long length = file.length();
+            file.seek(length - META_INFO_SIZE);
+            file.readLong();
+            file.readLong();
+            file.readLong();
+            long indexStart = file.readLong();
+            long indexLen = file.readLong();
+
+            byte[] indexData = new byte[(int) indexLen];
+            file.seek(indexStart);
+            file.readFully(indexData);
+            TreeMap<String, Position> index = ConvertUtil.readMapObjectFromBytes(indexData,
+                    new TypeReference<TreeMap<String, Position>>() {});
+
+            // 旧文件的 key 是文本, 转换为内部形式后重新排序
+            TreeMap<String, Position> sorted = new TreeMap<>(options.getKeyOrder());
+            for (Map.Entry<String, Position> entry : index.entrySet()) {
+                sorted.put(BytesUtil.fromText(entry.getKey()), entry.getValue());
+            }
+
+            for (Map.Entry<String, Position> entry : sorted.entrySet()) {
+                Position position = entry.getValue();
+                byte[] value = new byte[position.getLen().intValue()];
+                file.seek(position.getStart());
+                file.readFully(value);
+                builder.add(entry.getKey(), value, 0, value.length, Boolean.TRUE.equals(position.getDeleted()));
+            }
+            builder.finish();
+        } catch (IOException | RuntimeException e) {
+            builder.abandon();
+            throw new RuntimeException("[LegacyTable][convert] 转换失败: " + filePath, e);
+        }
+
+        File source = new File(filePath);
+        if (!source.delete() || !new File(convertPath).renameTo(source)) {
+            throw new RuntimeException("[LegacyTable][convert] 重命名失败: " + convertPath);
+        }
+        LOGGER.info("[LegacyTable][convert] 旧版本文件转换完成: {}", filePath);
+    }
+}
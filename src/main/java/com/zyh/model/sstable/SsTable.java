@@ -1,236 +1,205 @@
 package com.zyh.model.sstable;
 
-import com.alibaba.fastjson.TypeReference;
-import com.google.common.hash.BloomFilter;
-import com.google.common.hash.Funnels;
-import com.zyh.model.constant.Constant;
-import com.zyh.utils.ConvertUtil;
-import com.zyh.utils.LoggerUtil;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.snapshot.VersionFilter;
 import lombok.Data;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * 层中的一个表文件, 只保存 manifest 中记录的文件信息
+ * 文件句柄、索引和布隆过滤器在读取时通过 {@link TableCache} 按需打开
+ */
 @Data
-public class SsTable implements Closeable {
-    private final Logger LOGGER = LoggerFactory.getLogger(SsTable.class);
+public class SsTable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SsTable.class);
 
-    public RandomAccessFile tableFile;
+    private final String filePath;
 
-    public TreeMap<String,Position> index;
+    private final FileMeta meta;
 
-    public BloomFilter<String>  bloomFilter;
+    private final TableCache tableCache;
 
-    public TableMetaInfo tableMetaInfo;
+    private SsTable(String filePath, FileMeta meta, TableCache tableCache) {
+        this.filePath = filePath;
+        this.meta = meta;
+        this.tableCache = tableCache;
+    }
 
-    public String filePath;
+    /**
+     * 从内存表中构建ssTable
+     * @param filePath
+     * @param map
+     * @return
+     */
+    public static SsTable createFromMemory(String filePath, MemTable map, Options options, TableCache tableCache) {
+        return createFromMemory(filePath, map, options, tableCache, new long[0]);
+    }
 
     /**
-     * 指定文件路径和分区大小
-     * @param filePath 表文件路径
+     * 从内存表中构建ssTable, 只写入每个 key 的最新版本和快照需要的旧版本
+     * @param filePath
+     * @param map
+     * @param snapshots 未释放的快照的顺序号, 从小到大排列
+     * @return
      */
-    private SsTable(String filePath) {
+    public static SsTable createFromMemory(String filePath, MemTable map, Options options, TableCache tableCache, long[] snapshots) {
+        TableBuilder builder = new TableBuilder(filePath, options);
+        VersionFilter filter = new VersionFilter(snapshots);
         try {
-            this.filePath = filePath;
-            this.tableMetaInfo = new TableMetaInfo(Constant.VERSION);
-            this.bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Constant.BLOOMFILTER_INIT_SIZE,Constant.BLOOMFILTER_WRONG_RATE);
-            this.tableFile = new RandomAccessFile(filePath, Constant.RW);
-            tableFile.seek(0);
-            index = new TreeMap<String, Position>();
-        } catch (IOException e) {
-            throw new RuntimeException("SsTable 初始化失败");
+            for (Element element : map.values()) {
+                if (filter.keep(element.getKey(), element.getSeq())) {
+                    builder.add(element);
+                }
+            }
+        } catch (RuntimeException e) {
+            builder.abandon();
+            throw e;
         }
+        return createFromBuilder(builder, tableCache);
     }
 
-    public SsTable(String filePath, RandomAccessFile tableFile, TreeMap<String,Position> index, TableMetaInfo tableMetaInfo){
-        this.filePath = filePath;
-        this.tableFile = tableFile;
-        this.index = index;
-        this.tableMetaInfo = tableMetaInfo;
-        this.bloomFilter = BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), Constant.BLOOMFILTER_INIT_SIZE,Constant.BLOOMFILTER_WRONG_RATE);
-        initBloomFilter();
+    /**
+     * 完成写入, 文件信息直接从 builder 中获取
+     * @param builder
+     * @return
+     */
+    public static SsTable createFromBuilder(TableBuilder builder, TableCache tableCache) {
+        builder.finish();
+        return new SsTable(builder.getFilePath(), builder.toFileMeta(), tableCache);
     }
 
     /**
-     * 从内存表中构建ssTable
-     * @param filePath
-     * @param map
+     * 根据 manifest 中的文件信息构建ssTable, 不打开文件
+     * @param dataDir
+     * @param meta
      * @return
      */
-    public static SsTable createFromMemory(String filePath, TreeMap<String, Element> map) {
-        SsTable ssTable = new SsTable(filePath);
-        ssTable.initFromMemory(map);
-        ssTable.initBloomFilter();
-        return ssTable;
+    public static SsTable open(String dataDir, FileMeta meta, TableCache tableCache) {
+        return new SsTable(dataDir + File.separator + meta.getFileName(), meta, tableCache);
     }
 
     /**
-     * 从文件中构建ssTable
+     * 打开文件读取文件信息, 用于旧版本只记录了文件名的 manifest, 旧版本的文件同时转换格式
      * @param filePath
      * @return
      */
-    public static SsTable createFromFile(String filePath) {
-        SsTable ssTable = new SsTable(filePath);
-        ssTable.restoreFromFile();
-        return ssTable;
+    public static SsTable createFromFile(String filePath, TableCache tableCache) {
+        TableReader reader = tableCache.acquire(filePath);
+        try {
+            return new SsTable(filePath, reader.toFileMeta(), tableCache);
+        } finally {
+            tableCache.release(reader);
+        }
     }
 
     /**
-     * 从ssTable中查询数据
+     * 查询最新版本
      * @param key
-     * @return
+     * @return 不存在时返回 null, 被删除的记录返回删除标记
      */
-    public String query(String key) {
-        if(!bloomFilter.mightContain(key) || !index.containsKey(key)){
-            return null;
-        }
-
-        Position position = index.get(key);
-        if(position.getDeleted()){
-            return null;
-        }
+    public Element get(String key) {
+        return get(key, Long.MAX_VALUE);
+    }
 
-        long start = position.getStart();
-        long len = position.getLen();
-        byte[] data = new byte[(int) len];
+    /**
+     * 从ssTable中查询数据
+     * @param key
+     * @param snapshot 只返回 seq 小于等于它的版本
+     * @return 不存在时返回 null, 被删除的记录返回删除标记
+     */
+    public Element get(String key, long snapshot) {
+        TableReader reader = tableCache.acquire(filePath);
         try {
-            tableFile.seek(start);
-            tableFile.read(data);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            return reader.get(key, snapshot);
+        } finally {
+            tableCache.release(reader);
         }
-
-        String res = new String(data, ConvertUtil.CHARSET);
-
-        return res;
     }
 
     /**
-     * 从文件中恢复ssTable到内存
+     * 批量查询, 所有 key 只获取一次文件引用
+     * @param keys 按升序排列, 不重复
+     * @param snapshot 只返回 seq 小于等于它的版本
+     * @return 和 keys 一一对应, 不存在时为 null, 被删除的记录为删除标记
      */
-    private void restoreFromFile() {
+    public Element[] multiGet(List<String> keys, long snapshot) {
+        TableReader reader = tableCache.acquire(filePath);
         try {
-            TableMetaInfo tableMetaInfo = TableMetaInfo.readFromFile(tableFile);
-            LoggerUtil.info(LOGGER,"[SsTable][restoreFromFile][TableMetaInfo]: {}",tableMetaInfo);
-
-            long indexStart = tableMetaInfo.getIndexStart();
-            long indexLen = tableMetaInfo.getIndexLen();
-            tableFile.seek(indexStart);
-            byte[] indexData = new byte[(int)indexLen];
-            tableFile.read(indexData);
-            String indexDataStr = new String(indexData, StandardCharsets.UTF_8);
-            LoggerUtil.info(LOGGER,"[SsTable][restoreFromFile][indexString]: {}",indexDataStr);
-
-
-            this.index = (TreeMap<String, Position>) ConvertUtil.readMapObjectFromBytes(indexData,
-                    new TypeReference<TreeMap<String, Position>>() {});
-//            this.index = ConvertUtil.readObjectFromBytes(indexData, this.index.getClass());
-            LoggerUtil.info(LOGGER,"[SsTable][restoreFromFile][sparseIndex]: {}",this.index);
-
-            // 根据index构建bloomfilter
-            initBloomFilter();
-
-            this.tableMetaInfo = tableMetaInfo;
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            return reader.multiGet(keys, snapshot);
+        } finally {
+            tableCache.release(reader);
         }
     }
 
     /**
-     * 初始化布隆过滤器
+     * 遍历表中的全部记录, 迭代器持有文件引用, 使用结束后必须关闭
+     * @param fillCache 读取的数据块是否放入块缓存, 压缩时为 false
+     * @return
      */
-    private void initBloomFilter() {
-        index.keySet().stream().forEach(k -> this.bloomFilter.put(k));
+    public TableIterator iterator(boolean fillCache) {
+        return new TableIterator(tableCache.acquire(filePath), tableCache, fillCache);
     }
 
     /**
-     * 从内存表转化为ssTable
-     * @param memData
+     * 每个数据块的最大 key, 从索引块中读取, 不读取数据块
+     * 用于按数据量切分子压缩的 key 范围
+     * @return
      */
-    private void initFromMemory(TreeMap<String, Element> memData) {
+    public List<String> blockLastKeys() {
+        TableReader reader = tableCache.acquire(filePath);
         try {
-            // 当前的记录数
-            ArrayList<Element> data = new ArrayList<>();
-            // 当前的filePointer是0
-            tableMetaInfo.setDataStart(tableFile.getFilePointer());
-            for (Element element : memData.values()) {
-                data.add(element);
-                if(data.size() >= Constant.SPARSE_INDEX_PART_SIZE){
-                    writeDataPart(data);
-                }
+            List<String> keys = new ArrayList<>();
+            BlockIterator iterator = reader.getIndexBlock().iterator();
+            for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+                keys.add(iterator.key());
             }
-
-            // 将剩余的写入文件
-            if(data.size() > 0){
-                writeDataPart(data);
-            }
-
-            long dataLen = tableFile.getFilePointer() - tableMetaInfo.getDataStart();
-            tableMetaInfo.setDataLen(dataLen);
-            // 写入索引
-            byte[] indexBytes = ConvertUtil.convertObjectToBytes(index);
-
-            tableMetaInfo.setIndexLen((long) indexBytes.length);
-            tableMetaInfo.setIndexStart(tableFile.getFilePointer());
-            tableFile.write(indexBytes);
-            LoggerUtil.info(LOGGER,"[SsTable][initFromIndex][index]: {}",index);
-
-            // 写入元数据
-            tableMetaInfo.writeToFile(tableFile);
-            LoggerUtil.info(LOGGER, "[SsTable][initFromIndex]: {},{}", filePath, tableMetaInfo);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+            return keys;
+        } finally {
+            tableCache.release(reader);
         }
     }
 
-    /**
-     * 将数据分区写入文件
-     * @param partData
-     * @throws IOException
-     */
-    private void writeDataPart(ArrayList<Element> partData) throws IOException {
-        long dataStart = tableFile.getFilePointer();
-        StringBuilder partDataStr = new StringBuilder();
-        for (Element element : partData) {
-            String value = element.getValue();
-            partDataStr.append(value);
-            long len = value.getBytes(StandardCharsets.UTF_8).length;
-            index.put(element.getKey(), new Position(dataStart, len, element.getDeleted()));
-            dataStart += len;
-        }
+    public String getMinKey(){
+        return meta.getMinKey();
+    }
 
-        byte[] partDataBytes = partDataStr.toString().getBytes(StandardCharsets.UTF_8);
-        tableFile.write(partDataBytes);
-        partData.clear();
+    public String getMaxKey(){
+        return meta.getMaxKey();
     }
 
+    public long getEntryCount() {
+        return meta.getEntryCount();
+    }
 
-    public String getMinKey(){
-        return index.firstKey();
+    public long getMaxSeq() {
+        return meta.getMaxSeq();
     }
 
-    public String getMaxKey(){
-        return index.lastKey();
+    public long getFileSize() {
+        return meta.getFileSize();
     }
 
-    public void close() throws IOException {
-        tableFile.close();
+    public String getFileName() {
+        return meta.getFileName();
     }
 
+    /**
+     * 删除文件, 文件正在被读取时等读取结束后删除
+     */
     public void deleteFile(){
-        try {
-            close();
-            File file = new File(filePath);
-            if(file.delete()){
-                LOGGER.info("[SsTable][deleteFile] 文件删除成功: {}",filePath);
-            }
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+        if (tableCache.evict(filePath)) {
+            return;
+        }
+        File file = new File(filePath);
+        if(file.delete()){
+            LOGGER.info("[SsTable][deleteFile] 文件删除成功: {}",filePath);
         }
-
     }
 }
@@ -0,0 +1,370 @@
+package com.zyh.model.sstable;
+
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.config.Options;
+import com.zyh.model.constant.Constant;
+import com.zyh.model.limiter.IoPriority;
+import com.zyh.model.limiter.RateLimiter;
+import com.zyh.utils.BytesUtil;
+import com.zyh.utils.CodingUtil;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 按 key 的顺序写入 SsTable 文件
+ * 文件格式: | 数据块 ... | 过滤器块 | 元数据块 | 索引块 | Footer |
+ * 索引块中每个数据块对应一条记录: 块内最大的 key -> BlockHandle
+ * 元数据块记录过滤器块的位置、minKey、maxKey、最大的写入顺序号和记录数
+ * 同一个 key 的多个版本按 seq 从大到小相邻写入, 并且总在同一个数据块中
+ * 编码后的块先写入线程复用的堆外缓冲区, 缓冲区满时一次写入文件
+ * 压缩时完整保留的输入数据块通过 {@link #addRawBlock} 直接在文件之间传输(transferTo), 不经过用户态
+ * 每次写入文件前向 {@link Options#getRateLimiter()} 申请令牌, 刷盘和压缩按各自的优先级排队
+ */
+public class TableBuilder implements Closeable {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(TableBuilder.class);
+
+    public static final String META_ENTRIES = "entries";
+
+    public static final String META_FILTER = "filter";
+
+    public static final String META_MAX_KEY = "maxKey";
+
+    public static final String META_MAX_SEQ = "maxSeq";
+
+    public static final String META_MIN_KEY = "minKey";
+
+    @Getter
+    private final String filePath;
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    // 每个线程同一时间只会写一个文件, 缓冲区在线程内复用
+    private static final ThreadLocal<ByteBuffer> WRITE_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(Constant.TABLE_WRITE_BUFFER_SIZE));
+
+    private final ByteBuffer writeBuffer;
+
+    // 等待传输的连续输入块: 来源文件、起始位置和长度, 相邻的块合并为一次 transferTo
+    private FileChannel pendingSource;
+
+    private long pendingPosition;
+
+    private long pendingLength;
+
+    private long offset;
+
+    private final BlockBuilder dataBlock;
+
+    private final BlockBuilder indexBlock;
+
+    // bitsPerKey 小于等于 0 时为空
+    private final FilterBlock filterBlock;
+
+    private final int bitsPerKey;
+
+    private String firstKey;
+
+    private String lastKey;
+
+    private long lastSeq;
+
+    @Getter
+    private long maxSeq;
+
+    @Getter
+    private long entryCount;
+
+    private boolean finished;
+
+    // 为空时不限速
+    private final RateLimiter rateLimiter;
+
+    private final IoPriority priority;
+
+    private final KeyOrder comparator;
+
+    public TableBuilder(String filePath, Options options) {
+        this(filePath, options, IoPriority.HIGH);
+    }
+
+    public TableBuilder(String filePath, Options options, IoPriority priority) {
+        try {
+            this.rateLimiter = options.getRateLimiter();
+            this.priority = priority;
+            this.comparator = options.getKeyOrder();
+            this.filePath = filePath;
+            this.bitsPerKey = options.getBloomBitsPerKey();
+            this.filterBlock = bitsPerKey > 0 ? new FilterBlock() : null;
+            this.file = new RandomAccessFile(filePath, Constant.RW);
+            this.file.setLength(0);
+            this.channel = file.getChannel();
+            this.writeBuffer = WRITE_BUFFER.get();
+            this.writeBuffer.clear();
+            this.dataBlock = new BlockBuilder(Constant.BLOCK_RESTART_INTERVAL);
+            this.indexBlock = new BlockBuilder(1);
+        } catch (IOException e) {
+            throw new RuntimeException("[TableBuilder] 创建文件失败: " + filePath, e);
+        }
+    }
+
+    public void add(Element element) {
+        byte[] value = element.getValue().getBytes(BytesUtil.RAW);
+        add(element.getKey(), element.getSeq(), value, 0, value.length, element.getDeleted());
+    }
+
+    /**
+     * 添加一条没有写入顺序号的记录, key 必须严格递增
+     */
+    public void add(String key, byte[] value, int valueOffset, int valueLen, boolean deleted) {
+        add(key, 0, value, valueOffset, valueLen, deleted);
+    }
+
+    /**
+     * 添加一条记录, key 必须递增, 同一个 key 的版本按 seq 从大到小添加
+     * 数据块只在 key 变化时切换, 读取一个 key 的所有版本只需要一个数据块
+     */
+    public void add(String key, long seq, byte[] value, int valueOffset, int valueLen, boolean deleted) {
+        int cmp = Objects.isNull(lastKey) ? 1 : comparator.compare(key, lastKey);
+        if (cmp < 0 || (cmp == 0 && seq >= lastSeq)) {
+            throw new IllegalArgumentException("[TableBuilder][add] key 没有按顺序写入: " + key + ", seq: " + seq);
+        }
+        if (cmp != 0 && dataBlock.currentSize() >= Constant.BLOCK_SIZE) {
+            flushDataBlock();
+        }
+        if (Objects.isNull(firstKey)) {
+            firstKey = key;
+        }
+        byte[] keyBytes = key.getBytes(BytesUtil.RAW);
+        dataBlock.add(keyBytes, deleted ? Block.FLAG_DELETED : 0, seq, value, valueOffset, valueLen);
+        if (Objects.nonNull(filterBlock) && cmp != 0) {
+            filterBlock.add(key);
+        }
+        lastKey = key;
+        lastSeq = seq;
+        maxSeq = Math.max(maxSeq, seq);
+        entryCount++;
+    }
+
+    /**
+     * 追加一个完整的输入数据块, 块的内容不解码, 直接从来源文件传输
+     * 调用方保证块中的记录都需要保留, 并且 key 大于已经写入的所有 key
+     * @param source 来源文件
+     * @param handle 数据块在来源文件中的位置
+     * @param keys 块中的全部 key, 用于过滤器和元数据
+     * @param blockMaxSeq 块中最大的写入顺序号
+     */
+    public void addRawBlock(FileChannel source, BlockHandle handle, List<String> keys, long blockMaxSeq) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        String first = keys.get(0);
+        if (Objects.nonNull(lastKey) && comparator.compare(lastKey, first) >= 0) {
+            throw new IllegalArgumentException("[TableBuilder][addRawBlock] key 没有按顺序写入: " + first);
+        }
+        flushDataBlock();
+        if (Objects.isNull(firstKey)) {
+            firstKey = first;
+        }
+        if (Objects.nonNull(filterBlock)) {
+            for (String key : keys) {
+                filterBlock.add(key);
+            }
+        }
+        lastKey = keys.get(keys.size() - 1);
+        lastSeq = 0;
+        maxSeq = Math.max(maxSeq, blockMaxSeq);
+        entryCount += keys.size();
+
+        BlockHandle target = new BlockHandle(offset, handle.getSize());
+        indexBlock.add(lastKey.getBytes(BytesUtil.RAW), target.encode());
+        if (pendingSource == source && pendingPosition + pendingLength == handle.getOffset()) {
+            pendingLength += handle.getSize();
+        } else {
+            flushPending();
+            pendingSource = source;
+            pendingPosition = handle.getOffset();
+            pendingLength = handle.getSize();
+        }
+        offset += handle.getSize();
+    }
+
+    /**
+     * 当前文件的大小(包含未写入的数据块)
+     */
+    public long getFileSize() {
+        return offset + (dataBlock.isEmpty() ? 0 : dataBlock.currentSize());
+    }
+
+    private void flushDataBlock() {
+        if (dataBlock.isEmpty()) {
+            return;
+        }
+        byte[] lastKeyBytes = dataBlock.getLastKey();
+        BlockHandle handle = writeBlock(dataBlock.finish());
+        indexBlock.add(lastKeyBytes, handle.encode());
+        dataBlock.reset();
+    }
+
+    private BlockHandle writeBlock(byte[] block) {
+        try {
+            BlockHandle handle = new BlockHandle(offset, block.length);
+            write(block);
+            offset += block.length;
+            return handle;
+        } catch (IOException e) {
+            throw new RuntimeException("[TableBuilder][writeBlock] 写入失败: " + filePath, e);
+        }
+    }
+
+    private void write(byte[] data) throws IOException {
+        transferPending();
+        if (data.length > writeBuffer.remaining()) {
+            flushBuffer();
+        }
+        if (data.length > writeBuffer.capacity()) {
+            acquire(data.length);
+            ByteBuffer wrapped = ByteBuffer.wrap(data);
+            while (wrapped.hasRemaining()) {
+                channel.write(wrapped);
+            }
+            return;
+        }
+        writeBuffer.put(data);
+    }
+
+    private void flushBuffer() throws IOException {
+        writeBuffer.flip();
+        acquire(writeBuffer.remaining());
+        while (writeBuffer.hasRemaining()) {
+            channel.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    /**
+     * 先写出缓冲区中的数据, 再传输等待中的输入块, 保证文件中的顺序和 offset 一致
+     */
+    private void transferPending() throws IOException {
+        if (Objects.isNull(pendingSource)) {
+            return;
+        }
+        flushBuffer();
+        long position = pendingPosition;
+        long end = pendingPosition + pendingLength;
+        while (position < end) {
+            // 分段传输, 每段写入前申请令牌, 避免一次大传输占满磁盘带宽
+            long length = Math.min(end - position, Constant.TABLE_WRITE_BUFFER_SIZE);
+            acquire(length);
+            long n = pendingSource.transferTo(position, length, channel);
+            if (n <= 0) {
+                throw new IOException("transferTo 失败, position: " + position);
+            }
+            position += n;
+        }
+        pendingSource = null;
+        pendingLength = 0;
+    }
+
+    private void acquire(long bytes) {
+        if (Objects.nonNull(rateLimiter)) {
+            rateLimiter.request(bytes, priority);
+        }
+    }
+
+    private void flushPending() {
+        try {
+            transferPending();
+        } catch (IOException e) {
+            throw new RuntimeException("[TableBuilder][flushPending] 写入失败: " + filePath, e);
+        }
+    }
+
+    /**
+     * 写入过滤器块、元数据块、索引块和 Footer, 并刷盘
+     */
+    public void finish() {
+        if (entryCount == 0) {
+            throw new IllegalStateException("[TableBuilder][finish] 空文件: " + filePath);
+        }
+        flushDataBlock();
+        BlockHandle filterHandle = null;
+        if (Objects.nonNull(filterBlock)) {
+            // 过滤器按照实际的记录数创建
+            filterHandle = writeBlock(filterBlock.finish(bitsPerKey));
+        }
+
+        BlockBuilder metaBlock = new BlockBuilder(1);
+        byte[] entries = new byte[CodingUtil.varLongSize(entryCount)];
+        CodingUtil.writeVarLong(entries, 0, entryCount);
+        // 元数据块的 key 同样需要有序
+        metaBlock.add(META_ENTRIES.getBytes(BytesUtil.RAW), entries);
+        if (Objects.nonNull(filterHandle)) {
+            metaBlock.add(META_FILTER.getBytes(BytesUtil.RAW), filterHandle.encode());
+        }
+        metaBlock.add(META_MAX_KEY.getBytes(BytesUtil.RAW), lastKey.getBytes(BytesUtil.RAW));
+        byte[] seqBytes = new byte[CodingUtil.varLongSize(maxSeq)];
+        CodingUtil.writeVarLong(seqBytes, 0, maxSeq);
+        metaBlock.add(META_MAX_SEQ.getBytes(BytesUtil.RAW), seqBytes);
+        metaBlock.add(META_MIN_KEY.getBytes(BytesUtil.RAW), firstKey.getBytes(BytesUtil.RAW));
+        BlockHandle metaHandle = writeBlock(metaBlock.finish());
+        BlockHandle indexHandle = writeBlock(indexBlock.finish());
+
+        Footer footer = new Footer(metaHandle, indexHandle, Footer.VERSION);
+        try {
+            write(footer.encode());
+            flushBuffer();
+            offset += Footer.SIZE;
+            channel.force(true);
+            file.close();
+        } catch (IOException e) {
+            throw new RuntimeException("[TableBuilder][finish] 写入失败: " + filePath, e);
+        }
+        finished = true;
+        LOGGER.info("[TableBuilder][finish] {}, 记录数: {}, 文件大小: {}", filePath, entryCount, offset);
+    }
+
+    /**
+     * 写入完成后的文件信息
+     * @return
+     */
+    public FileMeta toFileMeta() {
+        if (!finished) {
+            throw new IllegalStateException("[TableBuilder][toFileMeta] 文件未完成: " + filePath);
+        }
+        return new FileMeta(new File(filePath).getName(), offset, firstKey, lastKey, entryCount, maxSeq, true);
+    }
+
+    /**
+     * 放弃写入, 删除文件
+     */
+    public void abandon() {
+        writeBuffer.clear();
+        pendingSource = null;
+        try {
+            close();
+        } catch (IOException e) {
+            LOGGER.error("[TableBuilder][abandon] 关闭失败: {}", filePath, e);
+        }
+        new File(filePath).delete();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            file.close();
+        }
+    }
+}
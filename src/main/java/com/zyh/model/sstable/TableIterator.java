@@ -0,0 +1,205 @@
+package com.zyh.model.sstable;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.iterator.KvIterator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 表文件的迭代器: 先在索引块中定位数据块, 再在数据块中迭代, 同一时间只持有一个数据块
+ * 迭代期间持有 TableReader 的引用, close 时释放
+ */
+public class TableIterator implements KvIterator {
+
+    private final TableReader reader;
+
+    private final TableCache tableCache;
+
+    // 压缩等一次性的遍历不放入块缓存
+    private final boolean fillCache;
+
+    private final BlockIterator indexIterator;
+
+    private BlockIterator dataIterator;
+
+    private Block block;
+
+    private BlockHandle handle;
+
+    // 当前位置是否为数据块的第一条记录
+    private boolean blockStart;
+
+    private boolean closed;
+
+    /**
+     * @param reader 已经增加过引用的 TableReader
+     * @param tableCache 为空时 close 不释放引用
+     * @param fillCache 读取的数据块是否放入块缓存
+     */
+    public TableIterator(TableReader reader, TableCache tableCache, boolean fillCache) {
+        this.reader = reader;
+        this.tableCache = tableCache;
+        this.fillCache = fillCache;
+        this.indexIterator = reader.getIndexBlock().iterator(reader.getComparator());
+    }
+
+    @Override
+    public boolean valid() {
+        return Objects.nonNull(dataIterator) && dataIterator.valid();
+    }
+
+    @Override
+    public void seekToFirst() {
+        indexIterator.seekToFirst();
+        loadBlock();
+        if (Objects.nonNull(dataIterator)) {
+            dataIterator.seekToFirst();
+        }
+        blockStart = true;
+        skipEmptyBlocks();
+    }
+
+    @Override
+    public void seek(String target) {
+        // 索引中的 key 是每个数据块的最大 key
+        indexIterator.seek(target);
+        loadBlock();
+        if (Objects.nonNull(dataIterator)) {
+            dataIterator.seek(target);
+        }
+        blockStart = false;
+        skipEmptyBlocks();
+    }
+
+    @Override
+    public void next() {
+        dataIterator.next();
+        blockStart = false;
+        skipEmptyBlocks();
+    }
+
+    /**
+     * 跳过当前数据块剩余的记录, 移动到下一个数据块的第一条记录
+     */
+    public void nextBlock() {
+        indexIterator.next();
+        loadBlock();
+        if (Objects.nonNull(dataIterator)) {
+            dataIterator.seekToFirst();
+        }
+        blockStart = true;
+        skipEmptyBlocks();
+    }
+
+    private void loadBlock() {
+        if (!indexIterator.valid()) {
+            dataIterator = null;
+            block = null;
+            handle = null;
+            return;
+        }
+        handle = BlockHandle.decode(indexIterator.value(), 0);
+        block = reader.readDataBlock(handle, fillCache);
+        dataIterator = block.iterator(reader.getComparator());
+    }
+
+    private void skipEmptyBlocks() {
+        while (Objects.nonNull(dataIterator) && !dataIterator.valid()) {
+            indexIterator.next();
+            loadBlock();
+            if (Objects.nonNull(dataIterator)) {
+                dataIterator.seekToFirst();
+            }
+            blockStart = true;
+        }
+    }
+
+    /**
+     * 是否位于数据块的第一条记录, 只有这时才能整块复制
+     */
+    public boolean atBlockStart() {
+        return blockStart && valid();
+    }
+
+    /**
+     * 当前数据块的最大 key(索引块中的 key)
+     */
+    public String blockLastKey() {
+        return indexIterator.key();
+    }
+
+    public BlockHandle blockHandle() {
+        return handle;
+    }
+
+    /**
+     * 当前数据块中的全部 key
+     */
+    public List<String> blockKeys() {
+        List<String> keys = new ArrayList<>();
+        BlockIterator iterator = block.iterator();
+        for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+            keys.add(iterator.key());
+        }
+        return keys;
+    }
+
+    /**
+     * 当前数据块中最大的写入顺序号
+     */
+    public long blockMaxSeq() {
+        long maxSeq = 0;
+        BlockIterator iterator = block.iterator();
+        for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+            maxSeq = Math.max(maxSeq, iterator.seq());
+        }
+        return maxSeq;
+    }
+
+    public TableReader getReader() {
+        return reader;
+    }
+
+    @Override
+    public String key() {
+        return dataIterator.key();
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return dataIterator.isDeleted();
+    }
+
+    @Override
+    public long seq() {
+        return dataIterator.seq();
+    }
+
+    @Override
+    public byte[] valueArray() {
+        return dataIterator.valueArray();
+    }
+
+    @Override
+    public int valueOffset() {
+        return dataIterator.valueOffset();
+    }
+
+    @Override
+    public int valueLength() {
+        return dataIterator.valueLength();
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (Objects.nonNull(tableCache)) {
+            tableCache.release(reader);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.zyh.model.sstable;
+
+import com.google.common.hash.BloomFilter;
+import com.zyh.model.cache.BlockCache;
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.config.Options;
+import com.zyh.model.constant.Constant;
+import com.zyh.utils.CodingUtil;
+import com.zyh.utils.MmapUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 打开的表文件: 文件句柄、常驻内存的索引块和布隆过滤器
+ * 由 {@link com.zyh.model.cache.TableCache} 管理, 通过引用计数控制关闭时机:
+ * 缓存本身持有一个引用, 每次读取前 acquire 一次, 读取后 release, 计数归零时关闭文件
+ * 文件已经被标记删除时, 关闭后再删除文件
+ */
+public class TableReader implements Closeable {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(TableReader.class);
+
+    private final RandomAccessFile tableFile;
+
+    // 按位置读取(pread), 不修改文件指针, 多个线程可以同时读取
+    private final FileChannel channel;
+
+    // 内存映射模式下按 MMAP_CHUNK_SIZE 分段映射整个文件, 否则为空
+    // 只有引用计数归零(没有任何读取)时才释放映射
+    private MappedByteBuffer[] chunks;
+
+    // 旧文件中没有过滤器块时为空
+    private BloomFilter<Long> bloomFilter;
+
+    private final String filePath;
+
+    private final Footer footer;
+
+    // 每个数据块对应一条索引, 常驻内存
+    private final Block indexBlock;
+
+    private final KeyOrder comparator;
+
+    private String minKey;
+
+    private String maxKey;
+
+    private long entryCount;
+
+    private long maxSeq;
+
+    private BlockHandle filterHandle;
+
+    // 共享的数据块缓存, 可以为空
+    private final BlockCache blockCache;
+
+    // 缓存 key 使用文件名, 重新打开文件后缓存仍然有效
+    private final String cacheName;
+
+    private final AtomicInteger refs = new AtomicInteger(1);
+
+    private volatile boolean obsolete;
+
+    /**
+     * 打开表文件, 读取 Footer、元数据块、过滤器块和索引块
+     * 旧版本的文件先转换格式
+     * @param filePath 表文件路径
+     */
+    public TableReader(String filePath, Options options) {
+        if (isLegacyFile(filePath)) {
+            LegacyTable.convert(filePath, options);
+        }
+        this.comparator = options.getKeyOrder();
+        try {
+            this.filePath = filePath;
+            this.blockCache = options.getBlockCache();
+            this.cacheName = new File(filePath).getName();
+            this.tableFile = new RandomAccessFile(filePath, Constant.RW);
+            this.channel = tableFile.getChannel();
+            if (options.isUseMmapReads()) {
+                mapFile();
+            }
+            byte[] footerBytes = new byte[Footer.SIZE];
+            read(channel.size() - Footer.SIZE, footerBytes);
+            this.footer = Footer.decode(footerBytes);
+            readMetaBlock(readBlock(footer.getMetaHandle()));
+            this.indexBlock = readBlock(footer.getIndexHandle());
+            if (Objects.nonNull(filterHandle)) {
+                this.bloomFilter = FilterBlock.read(readBytes(filterHandle));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("TableReader 初始化失败: " + filePath, e);
+        }
+    }
+
+    private void mapFile() throws IOException {
+        long size = channel.size();
+        int count = (int) ((size + Constant.MMAP_CHUNK_SIZE - 1) / Constant.MMAP_CHUNK_SIZE);
+        MappedByteBuffer[] mapped = new MappedByteBuffer[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                long start = (long) i * Constant.MMAP_CHUNK_SIZE;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(Constant.MMAP_CHUNK_SIZE, size - start));
+            }
+        } catch (IOException e) {
+            for (MappedByteBuffer buffer : mapped) {
+                if (buffer != null) {
+                    MmapUtil.unmap(buffer);
+                }
+            }
+            throw e;
+        }
+        this.chunks = mapped;
+    }
+
+    private static boolean isLegacyFile(String filePath) {
+        try (RandomAccessFile file = new RandomAccessFile(filePath, "r")) {
+            if (file.length() < Footer.SIZE) {
+                return true;
+            }
+            byte[] tail = new byte[8];
+            file.seek(file.length() - 8);
+            file.readFully(tail);
+            return !Footer.hasMagic(tail);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 查询最新版本
+     * @param key
+     * @return 不存在时返回 null, 被删除的记录返回删除标记
+     */
+    public Element get(String key) {
+        return get(key, Long.MAX_VALUE);
+    }
+
+    /**
+     * 从表中查询数据: 在索引块中二分查找数据块, 然后只读取这一个数据块
+     * 同一个 key 的所有版本在同一个数据块中, 从最新的版本开始找到第一个对快照可见的版本
+     * @param key
+     * @param snapshot 只返回 seq 小于等于它的版本
+     * @return 不存在时返回 null, 被删除的记录返回删除标记
+     */
+    public Element get(String key, long snapshot) {
+        if(Objects.nonNull(bloomFilter) && !bloomFilter.mightContain(FilterBlock.hash(key))){
+            return null;
+        }
+        BlockIterator indexIterator = indexBlock.iterator(comparator);
+        indexIterator.seek(key);
+        if (!indexIterator.valid()) {
+            return null;
+        }
+
+        BlockHandle handle = BlockHandle.decode(indexIterator.value(), 0);
+        BlockIterator iterator = readDataBlock(handle, true).iterator(comparator);
+        iterator.seek(key);
+        return visibleVersion(iterator, key, snapshot);
+    }
+
+    /**
+     * 从迭代器的当前位置开始跳过对快照不可见的版本
+     * @return 没有可见的版本时返回 null
+     */
+    private static Element visibleVersion(BlockIterator iterator, String key, long snapshot) {
+        while (iterator.valid() && iterator.key().equals(key)) {
+            if (iterator.seq() <= snapshot) {
+                if (iterator.isDeleted()) {
+                    return new Element(key, "", true, iterator.seq());
+                }
+                return new Element(key, iterator.valueString(), false, iterator.seq());
+            }
+            iterator.next();
+        }
+        return null;
+    }
+
+    /**
+     * 批量查询有序的 key: 落在同一个数据块中的 key 只定位和读取一次数据块
+     * 索引 key 为数据块的最大 key, 当前 key 不超过它时继续使用当前数据块
+     * @param keys 按升序排列, 不重复
+     * @param snapshot 只返回 seq 小于等于它的版本
+     * @return 和 keys 一一对应, 不存在时为 null, 被删除的记录为删除标记
+     */
+    public Element[] multiGet(List<String> keys, long snapshot) {
+        Element[] results = new Element[keys.size()];
+        BlockIterator indexIterator = indexBlock.iterator(comparator);
+        BlockIterator iterator = null;
+        for (int i = 0; i < keys.size(); i++) {
+            String key = keys.get(i);
+            if (Objects.nonNull(bloomFilter) && !bloomFilter.mightContain(FilterBlock.hash(key))) {
+                continue;
+            }
+            if (Objects.isNull(iterator) || comparator.compare(key, indexIterator.key()) > 0) {
+                indexIterator.seek(key);
+                if (!indexIterator.valid()) {
+                    // 之后的 key 都大于文件中的最大 key
+                    break;
+                }
+                BlockHandle handle = BlockHandle.decode(indexIterator.value(), 0);
+                iterator = readDataBlock(handle, true).iterator(comparator);
+            }
+            iterator.seek(key);
+            results[i] = visibleVersion(iterator, key, snapshot);
+        }
+        return results;
+    }
+
+    public Block readBlock(BlockHandle handle) {
+        return new Block(readBytes(handle));
+    }
+
+    /**
+     * 读取数据块, 优先从共享缓存中读取
+     * @param handle
+     * @param fillCache 未命中时是否放入缓存
+     * @return
+     */
+    public Block readDataBlock(BlockHandle handle, boolean fillCache) {
+        if (Objects.isNull(blockCache)) {
+            return readBlock(handle);
+        }
+        Block block = blockCache.get(cacheName, handle.getOffset());
+        if (Objects.isNull(block)) {
+            block = readBlock(handle);
+            if (fillCache) {
+                blockCache.insert(cacheName, handle.getOffset(), block);
+            }
+        }
+        return block;
+    }
+
+    private byte[] readBytes(BlockHandle handle) {
+        byte[] data = new byte[handle.getSize()];
+        read(handle.getOffset(), data);
+        return data;
+    }
+
+    /**
+     * 从指定位置读取数据, 不依赖共享的文件指针, 可以被多个线程同时调用
+     * @param position 文件中的偏移量
+     * @param dst
+     */
+    public void read(long position, byte[] dst) {
+        if (Objects.nonNull(chunks)) {
+            readMapped(position, dst);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(dst);
+        try {
+            while (buffer.hasRemaining()) {
+                int n = channel.read(buffer, position + buffer.position());
+                if (n < 0) {
+                    throw new EOFException("position: " + position + ", length: " + dst.length);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("[TableReader][read] 读取失败: " + filePath, e);
+        }
+    }
+
+    /**
+     * 从内存映射中复制数据, 没有系统调用, 跨越两段映射的数据分两次复制
+     * 使用 duplicate 避免多个线程修改同一个 buffer 的 position
+     */
+    private void readMapped(long position, byte[] dst) {
+        int copied = 0;
+        while (copied < dst.length) {
+            long current = position + copied;
+            int chunkIndex = (int) (current / Constant.MMAP_CHUNK_SIZE);
+            if (chunkIndex >= chunks.length) {
+                throw new RuntimeException("[TableReader][readMapped] 超出文件范围: " + filePath + ", position: " + position);
+            }
+            ByteBuffer chunk = chunks[chunkIndex].duplicate();
+            int offset = (int) (current % Constant.MMAP_CHUNK_SIZE);
+            int len = Math.min(dst.length - copied, chunk.limit() - offset);
+            if (len <= 0) {
+                throw new RuntimeException("[TableReader][readMapped] 超出文件范围: " + filePath + ", position: " + position);
+            }
+            chunk.position(offset);
+            chunk.get(dst, copied, len);
+            copied += len;
+        }
+    }
+
+    private void readMetaBlock(Block metaBlock) {
+        BlockIterator iterator = metaBlock.iterator();
+        for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+            switch (iterator.key()) {
+                case TableBuilder.META_ENTRIES:
+                    this.entryCount = CodingUtil.readVarLong(iterator.value(), 0);
+                    break;
+                case TableBuilder.META_FILTER:
+                    this.filterHandle = BlockHandle.decode(iterator.value(), 0);
+                    break;
+                case TableBuilder.META_MAX_KEY:
+                    this.maxKey = iterator.valueString();
+                    break;
+                case TableBuilder.META_MAX_SEQ:
+                    this.maxSeq = CodingUtil.readVarLong(iterator.value(), 0);
+                    break;
+                case TableBuilder.META_MIN_KEY:
+                    this.minKey = iterator.valueString();
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 根据文件内容生成文件信息, 用于补全旧版本 manifest
+     * @return
+     */
+    public FileMeta toFileMeta() {
+        return new FileMeta(cacheName, new File(filePath).length(), minKey, maxKey, entryCount, maxSeq, true);
+    }
+
+    public void ref() {
+        refs.incrementAndGet();
+    }
+
+    /**
+     * 释放引用, 最后一个引用释放时关闭文件
+     */
+    public void unref() {
+        int current = refs.decrementAndGet();
+        if (current == 0) {
+            close();
+            if (obsolete && !new File(filePath).delete()) {
+                LOGGER.error("[TableReader][unref] 文件删除失败: {}", filePath);
+            } else if (obsolete) {
+                LOGGER.info("[TableReader][unref] 文件删除成功: {}", filePath);
+            }
+        } else if (current < 0) {
+            throw new IllegalStateException("[TableReader][unref] 引用计数错误: " + filePath);
+        }
+    }
+
+    /**
+     * 文件已经不再属于任何一层, 最后一个引用释放后删除
+     */
+    public void markObsolete() {
+        this.obsolete = true;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    public BloomFilter<Long> getBloomFilter() {
+        return bloomFilter;
+    }
+
+    public Block getIndexBlock() {
+        return indexBlock;
+    }
+
+    public KeyOrder getComparator() {
+        return comparator;
+    }
+
+    public String getMinKey() {
+        return minKey;
+    }
+
+    public String getMaxKey() {
+        return maxKey;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    @Override
+    public void close() {
+        if (Objects.nonNull(chunks)) {
+            MappedByteBuffer[] mapped = chunks;
+            chunks = null;
+            for (MappedByteBuffer buffer : mapped) {
+                MmapUtil.unmap(buffer);
+            }
+        }
+        try {
+            tableFile.close();
+        } catch (IOException e) {
+            LOGGER.error("[TableReader][close] 关闭失败: {}", filePath, e);
+        }
+    }
+}
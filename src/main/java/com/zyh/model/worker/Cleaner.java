@@ -37,7 +37,7 @@ public class Cleaner {
                 for (File currentFile : files) {
                     if(maniFest.needDeleted(currentFile.getName())){
                         LOGGER.info("[cleaner] 定期清理，清理文件： {}",currentFile.getName());
-                        if(!file.delete()){
+                        if(!currentFile.delete()){
                             throw  new RuntimeException("[Cleaner] 文件清理失败: " + currentFile.getName());
                         }
                     }
@@ -45,4 +45,11 @@ public class Cleaner {
             }
         },1,TimeUnit.MINUTES);
     }
+
+    /**
+     * 取消还没有执行的清理
+     */
+    public void stop(){
+        workerPool.shutdownNow();
+    }
 }
@@ -1,10 +1,121 @@
 package com.zyh.service;
 
-public interface KV extends Cloneable{
+import com.zyh.model.iterator.DbIterator;
+import com.zyh.model.snapshot.Snapshot;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 文本接口按 UTF-8 编码后和二进制接口存放在同一个键空间, 二者可以混用
+ * key 的顺序由 Options 中的比较器决定, 默认按无符号字节序
+ */
+public interface KV extends Cloneable, Closeable {
 
     void set(String key,String values);
 
+    /**
+     * 二进制写入, key 和 value 原样保存, 可以包含任意字节
+     * @param key
+     * @param value
+     */
+    void set(byte[] key, byte[] value);
+
+    /**
+     * 写入 position 到 limit 之间的字节, 不改变 position
+     * @param key
+     * @param value
+     */
+    void set(ByteBuffer key, ByteBuffer value);
+
     String get(String key);
 
+    /**
+     * 读取快照能看到的版本
+     * @param key
+     * @param snapshot
+     * @return
+     */
+    String get(String key, Snapshot snapshot);
+
+    /**
+     * @param key
+     * @return 不存在或已删除时为 null
+     */
+    byte[] get(byte[] key);
+
+    byte[] get(byte[] key, Snapshot snapshot);
+
+    /**
+     * @param key 读取 position 到 limit 之间的字节, 不改变 position
+     * @return 不存在或已删除时为 null
+     */
+    ByteBuffer get(ByteBuffer key);
+
     void rm(String key);
+
+    void rm(byte[] key);
+
+    void rm(ByteBuffer key);
+
+    /**
+     * 批量查询, 相比逐个调用 get, 同一个文件和数据块只读取一次
+     * @param keys 可以无序、重复
+     * @return 和 keys 一一对应的 value, 不存在或已删除时为 null
+     */
+    List<String> multiGet(List<String> keys);
+
+    List<String> multiGet(List<String> keys, Snapshot snapshot);
+
+    List<byte[]> multiGetBytes(List<byte[]> keys);
+
+    List<byte[]> multiGetBytes(List<byte[]> keys, Snapshot snapshot);
+
+    /**
+     * 批量写入, 整个批次作为一条日志记录提交, 恢复时要么全部生效要么全部丢弃
+     * @param batch
+     */
+    void write(WriteBatch batch);
+
+    /**
+     * 按 key 顺序遍历 [startKey, endKey) 中的记录, 返回的迭代器已经定位到第一条记录, 使用结束后必须关闭
+     * @param startKey 为空时从第一个 key 开始
+     * @param endKey 不包含, 为空时遍历到最后
+     * @return
+     */
+    DbIterator scan(String startKey, String endKey);
+
+    /**
+     * 在快照上遍历, 关闭迭代器不会释放快照
+     * @param startKey
+     * @param endKey
+     * @param snapshot
+     * @return
+     */
+    DbIterator scan(String startKey, String endKey, Snapshot snapshot);
+
+    /**
+     * 按字节遍历, 通过 DbIterator 的 keyBytes / valueBytes 读取记录
+     * @param startKey 为空时从第一个 key 开始
+     * @param endKey 不包含, 为空时遍历到最后
+     * @return
+     */
+    DbIterator scanBytes(byte[] startKey, byte[] endKey);
+
+    DbIterator scanBytes(byte[] startKey, byte[] endKey, Snapshot snapshot);
+
+    /**
+     * 创建快照, 之后的写入对它不可见, 使用结束后必须释放
+     * @return
+     */
+    Snapshot getSnapshot();
+
+    void releaseSnapshot(Snapshot snapshot);
+
+    /**
+     * 停止后台线程并关闭文件, 关闭后不能再读写
+     */
+    @Override
+    void close();
 }
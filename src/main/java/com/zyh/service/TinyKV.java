@@ -1,31 +1,57 @@
 package com.zyh.service;
 
+import com.zyh.model.cache.BlockCache;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.compaction.CompactionScheduler;
+import com.zyh.model.compaction.CompactionStats;
+import com.zyh.model.comparator.KeyOrder;
+import com.zyh.model.config.Options;
 import com.zyh.model.constant.Constant;
+import com.zyh.model.iterator.DbIterator;
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.model.iterator.MergingIterator;
+import com.zyh.model.limiter.RateLimiter;
+import com.zyh.model.limiter.RateLimiterTuner;
+import com.zyh.model.limiter.WriteController;
+import com.zyh.model.limiter.WriteStallStats;
 import com.zyh.model.log.CommitLog;
 import com.zyh.model.log.ManiFest;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.snapshot.SequenceTracker;
+import com.zyh.model.snapshot.Snapshot;
+import com.zyh.model.snapshot.SnapshotList;
 import com.zyh.model.worker.Cleaner;
 import com.zyh.model.worker.DefaultThreadFactory;
 import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
 import com.zyh.model.TreeNode;
+import com.zyh.utils.BytesUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.swing.text.StyledEditorKit;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class TinyKV implements KV{
 
     public static final Logger LOGGER = LoggerFactory.getLogger(TinyKV.class);
 
-    private TreeMap<String, Element>   memtable;
+    private volatile MemTable memtable;
 
-    private ConcurrentLinkedDeque<TreeMap<String, Element>> immutable;
+    private ConcurrentLinkedDeque<MemTable> immutable;
 
     private String dataDir;
 
@@ -33,14 +59,45 @@ public class TinyKV implements KV{
 
     private TreeNode tableTree;
 
+    // 写操作持有读锁, 只有切换内存表时持有写锁
     private ReadWriteLock lock;
 
     private int storeThreshold;
 
     private ThreadPoolExecutor workerPool;
 
+    // 已经写完文件、等待按顺序安装的只读表, 由 installLock 保护
+    private final Map<MemTable, SsTable> flushed = new IdentityHashMap<>();
+
+    private final ReentrantLock installLock = new ReentrantLock();
+
     private Cleaner cleaner;
 
+    private Options options;
+
+    // 打开的表文件缓存
+    private TableCache tableCache;
+
+    private CompactionScheduler compactionScheduler;
+
+    // 写入流控, 刷盘和压缩跟不上时减慢或阻塞写入
+    private WriteController writeController;
+
+    // 未开启自动调速时为空
+    private RateLimiterTuner rateLimiterTuner;
+
+    // 已经写入内存表的顺序号, 快照以它为准
+    private SequenceTracker sequence;
+
+    private SnapshotList snapshots;
+
+    private ManiFest maniFest;
+
+    // multiGet 线程池由这个实例创建时, 关闭时一起关闭
+    private boolean ownsMultiGetExecutor;
+
+    private volatile boolean closed;
+
     public static void main(String[] args) throws InterruptedException {
         String filePath = "E:\\zyh\\java\\TinyKV\\data";
         int maxNum = 100;
@@ -85,35 +142,118 @@ public class TinyKV implements KV{
     }
 
     public TinyKV(String dataDir, int storeThreshold){
+        this(dataDir, defaultOptions(storeThreshold));
+    }
+
+    public TinyKV(String dataDir, Options options){
         this.dataDir = dataDir;
-        this.log = new CommitLog(dataDir);
-        this.storeThreshold = storeThreshold;
-        // core 1; max 1; keepAliveTime 60; 这里必须是单线程
-        this.workerPool = new ThreadPoolExecutor(1,1, 5,
-                TimeUnit.SECONDS,new LinkedBlockingDeque<>(10),new DefaultThreadFactory("TinKV"));
+        this.options = options;
+        this.log = new CommitLog(dataDir, options.getSyncPolicy(), options.getSyncIntervalMs(),
+                options.getKeyOrder());
+        this.storeThreshold = options.getStoreThreshold();
+        if (Objects.isNull(options.getBlockCache()) && options.getBlockCacheBytes() > 0) {
+            options.setBlockCache(new BlockCache(options.getBlockCacheBytes(), options.getBlockCacheShardBits(),
+                    options.getBlockCachePolicy(), options.isBlockCacheOffHeap()));
+        }
+        if (Objects.isNull(options.getRateLimiter())) {
+            options.setRateLimiter(new RateLimiter(options.getRateLimitBytesPerSec()));
+        }
+        if (Objects.isNull(options.getMultiGetExecutor()) && options.getMultiGetThreads() > 0) {
+            options.setMultiGetExecutor(Executors.newFixedThreadPool(options.getMultiGetThreads(),
+                    new DefaultThreadFactory("MultiGet")));
+            this.ownsMultiGetExecutor = true;
+        }
+        if (options.isRateLimiterAutoTune() && options.getRateLimitBytesPerSec() > 0) {
+            this.rateLimiterTuner = new RateLimiterTuner(options.getRateLimiter(),
+                    options.getRateLimitBytesPerSec(), options.getRateLimiterTargetP99Micros());
+        }
+        // 多个只读表同时刷盘, 安装到 L0 的顺序由 flush 保证
+        // 队列不限长度, 只读表的积压由 writeController 限制
+        int flushThreads = Math.max(options.getFlushThreads(), 1);
+        this.workerPool = new ThreadPoolExecutor(flushThreads, flushThreads, 5,
+                TimeUnit.SECONDS,new LinkedBlockingDeque<>(),new DefaultThreadFactory("TinKV"));
 
         this.immutable = new ConcurrentLinkedDeque<>();
         this.lock = new ReentrantReadWriteLock();
-        ManiFest maniFest = null;
         try {
-            maniFest = new ManiFest(dataDir);
+            this.tableCache = new TableCache(options);
+            maniFest = new ManiFest(dataDir, options, tableCache);
             this.tableTree = maniFest.rebuildTreeFromFile();
+            // 重启前可能有层已经超过了目标大小
+            this.compactionScheduler = new CompactionScheduler(tableTree, options.getCompactionThreads());
+            this.writeController = new WriteController(options, tableTree, immutable);
+            this.compactionScheduler.setListener(writeController::signal);
             cleaner = new Cleaner(maniFest, dataDir);
             cleaner.start();
+            // 顺序号接着文件中的最大值分配, 临时日志比 wal 旧, 先恢复
+            this.log.recoverSeq(tableTree.maxSeq());
             if(CommitLog.containWAL(dataDir)){
-                this.memtable = this.log.recoverTableFromLog();
                 recoverTmpFileWrite();
+                this.memtable = this.log.recoverTableFromLog();
             } else {
-                this.memtable = new TreeMap<>();
+                this.memtable = new MemTable(options.getKeyOrder());
             }
+            this.sequence = new SequenceTracker(log.getLastSeq());
+            this.snapshots = new SnapshotList(sequence);
+            this.tableTree.setSnapshots(snapshots);
         } catch (IOException e) {
             throw new RuntimeException("TinyKV启动失败");
         }
 
     }
 
+    /**
+     * 关闭数据库: 等待已经提交的刷盘和正在执行的压缩结束, 停止后台线程, 关闭日志、manifest 和打开的文件
+     * 内存表中的数据保存在日志中, 重新打开时恢复; 关闭后不能再读写, 重复调用没有影响
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        workerPool.shutdown();
+        try {
+            if (!workerPool.awaitTermination(1, TimeUnit.MINUTES)) {
+                // 刷盘一直失败时放弃, 数据保留在临时日志中
+                LOGGER.warn("[TinyKV][close] 等待刷盘结束超时");
+                workerPool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workerPool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        compactionScheduler.shutdown();
+        cleaner.stop();
+        if (Objects.nonNull(rateLimiterTuner)) {
+            rateLimiterTuner.shutdown();
+        }
+        if (ownsMultiGetExecutor) {
+            options.getMultiGetExecutor().shutdown();
+            // 同一个 options 重新打开时创建新的线程池
+            options.setMultiGetExecutor(null);
+        }
+        try {
+            log.close();
+            maniFest.close();
+        } catch (IOException e) {
+            throw new RuntimeException("[TinyKV][close] 关闭失败", e);
+        } finally {
+            tableCache.close();
+        }
+        LOGGER.info("[TinyKV][close] 已关闭: {}", dataDir);
+    }
+
+    private static Options defaultOptions(int storeThreshold) {
+        Options options = new Options();
+        options.setStoreThreshold(storeThreshold);
+        return options;
+    }
+
     private void recoverTmpFileWrite() {
-        List<TreeMap<String, Element>> dataList = this.log.recoverTableFromTmpLog();
+        List<MemTable> dataList = this.log.recoverTableFromTmpLog();
         ConcurrentLinkedDeque<Integer> tmpNumList = this.log.getTmpNumList();
         LOGGER.info("[TinyKV][recoverTmpFileWrite] 临时日志文件恢复写入，文件数量: {}",tmpNumList.size());
         if(tmpNumList.size() != dataList.size()){
@@ -121,101 +261,602 @@ public class TinyKV implements KV{
         }
 
         for (int i = 0; i < dataList.size(); i++) {
-            this.tableTree.insertSstable(dataList.get(i));
+            // 已经安装过的临时日志返回空表, 只需要删除
+            if (dataList.get(i).size() > 0) {
+                this.tableTree.insertSstable(dataList.get(i));
+            }
             log.deleteTmpLog();
         }
+        compactionScheduler.maybeSchedule();
     }
 
 
+    /**
+     * key 和 value 为内部的字节形式, 每个字符保存一个字节, 见 BytesUtil
+     */
     public void set0(String key, String value, boolean deleted) {
+        // 在锁外等待, 不阻塞切换内存表
+        writeController.maybeStall();
+        long logSeq;
         try {
-            lock.writeLock().lock();
-
-            if (memtable.size() >= storeThreshold) {
-                switchTable();
-                TreeMap<String, Element> currentImmutable = immutable.peekFirst();
-                // TODO 并发
-                workerPool.submit(new Runnable() {
-                    @Override
-                    public void run() {
-                        tableTree.insertSstable(currentImmutable);
-                        log.deleteTmpLog();
-                        try {
-                            // 修改只读内存表
-                            lock.writeLock().lock();
-                            ConcurrentLinkedDeque<Integer> tmpNumList = log.getTmpNumLsit();
-                            if (tmpNumList.size() < immutable.size()) {
-                                immutable.pollLast();
-                            }
-                        } catch (Exception e){
-                            throw new RuntimeException("[TinyKV][WorkerPool] 失败",e);
-                        } finally {
-                          lock.writeLock().unlock();
-                        }
-                    }
-                });
+            lock.readLock().lock();
+            Element element = new Element(key, value, deleted);
+            // 日志入队时分配写入顺序号, 内存表按顺序号保存每个版本
+            logSeq = this.log.append(element);
+            try {
+                // 组提交完成后才写入内存表, 日志写入失败的数据不会被读到, 也不会刷盘
+                // 持有读锁等待, 切换日志前这一组记录已经写入旧文件, 和写入的内存表对应
+                this.log.sync(logSeq);
+                memtable.put(element);
+            } finally {
+                // 失败时同样发布, 之后的写入不会等待这个顺序号
+                sequence.publish(logSeq, logSeq);
             }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // 之前的写入都进入内存表后再返回, 之后创建的快照一定能看到这次写入
+        sequence.await(logSeq);
 
-            Element element = new Element(key, value, deleted);
-            this.log.append(element);
-            memtable.put(key, element);
+        if (needSwitch(memtable)) {
+            switchTable();
+        }
+    }
 
+    @Override
+    public void write(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        writeController.maybeStall();
+        List<Element> elements = batch.copyElements();
+        long logSeq;
+        try {
+            lock.readLock().lock();
+            // 整个批次是一条日志记录, 并且写入同一个内存表, 切换内存表时不会被拆开
+            logSeq = this.log.appendBatch(elements);
+            try {
+                this.log.sync(logSeq);
+                for (Element element : elements) {
+                    memtable.put(element);
+                }
+            } finally {
+                // 整个批次一起发布, 快照要么看到全部要么都看不到
+                sequence.publish(logSeq - elements.size() + 1, logSeq);
+            }
         } finally {
-            lock.writeLock().unlock();
+            lock.readLock().unlock();
         }
+        sequence.await(logSeq);
 
+        if (needSwitch(memtable)) {
+            switchTable();
+        }
+    }
+
+    private boolean needSwitch(MemTable table) {
+        if (table.approximateBytes() >= options.getMemtableMaxBytes()) {
+            return true;
+        }
+        return storeThreshold > 0 && table.size() >= storeThreshold;
     }
 
     private void switchTable() {
-        TreeMap<String, Element> tmp = memtable;
-        memtable = new TreeMap<>();
-        this.log.switchLog();
-        // 队头为最新的数据
-        this.immutable.addFirst(tmp);
-        if(this.immutable.size() >= Constant.MAX_IMMUTABLE_NUM) {
-            this.immutable.pollLast();
+        try {
+            lock.writeLock().lock();
+            // 其他线程可能已经完成了切换
+            if (!needSwitch(memtable)) {
+                return;
+            }
+            MemTable tmp = memtable;
+            this.log.switchLog();
+            // 队头为最新的数据, 每个只读表对应一个临时日志, 刷盘完成后一起删除
+            // 先加入只读表再替换内存表, 无锁的读线程总能在其中一处找到数据
+            this.immutable.addFirst(tmp);
+            memtable = new MemTable(options.getKeyOrder());
+
+            workerPool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    flush(tmp);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    public String get(String key) {
-        String value = null;
+    /**
+     * 刷盘线程并行写文件, 写完后按只读表从旧到新的顺序安装到 L0
+     * 较新的只读表先写完时等待, 由写完较旧只读表的线程一起安装, L0 的新旧顺序和临时日志的删除顺序不变
+     * 写文件失败时间隔 flushRetryIntervalMs 重试, 只读表保留在内存中, 之后的只读表等待它安装
+     * @param table
+     */
+    private void flush(MemTable table) {
+        SsTable ssTable = null;
+        while (Objects.isNull(ssTable)) {
+            try {
+                ssTable = tableTree.buildSstable(table);
+            } catch (RuntimeException e) {
+                LOGGER.error("[TinyKV][flush] 刷盘失败, {}ms 后重试", options.getFlushRetryIntervalMs(), e);
+                if (!sleepBeforeRetry()) {
+                    // 关闭时放弃, 数据保留在临时日志中, 重启后恢复
+                    return;
+                }
+            }
+        }
+        installLock.lock();
         try {
-            lock.readLock().lock();
+            flushed.put(table, ssTable);
+            // 队尾为最旧的只读表
+            MemTable oldest;
+            while (Objects.nonNull(oldest = immutable.peekLast()) && flushed.containsKey(oldest)) {
+                if (!installWithRetry(flushed.get(oldest))) {
+                    // 关闭时放弃, 数据保留在临时日志中, 重启后恢复
+                    return;
+                }
+                flushed.remove(oldest);
+                // 数据已经可以从 tableTree 中读到, 只读表和临时日志一起移除
+                immutable.pollLast();
+                try {
+                    log.deleteTmpLog();
+                } catch (RuntimeException e) {
+                    // 残留的临时日志在恢复时跳过, 不影响之后的安装
+                    LOGGER.error("[TinyKV][flush] 删除临时日志失败", e);
+                }
+            }
+        } finally {
+            installLock.unlock();
+        }
+        compactionScheduler.maybeSchedule();
+        writeController.signal();
+    }
 
-            if (memtable.containsKey(key)) {
-                Element element = memtable.get(key);
-                if(!element.getDeleted()) {
-                    value = element.getValue();
+    /**
+     * 安装失败时在持有 installLock 的情况下重试, 更新的只读表必须等它安装之后才能安装
+     * @return 等待重试时被中断返回 false
+     */
+    private boolean installWithRetry(SsTable ssTable) {
+        while (true) {
+            try {
+                tableTree.installSstable(ssTable);
+                return true;
+            } catch (RuntimeException e) {
+                LOGGER.error("[TinyKV][installWithRetry] 安装失败, {}ms 后重试", options.getFlushRetryIntervalMs(), e);
+                if (!sleepBeforeRetry()) {
+                    return false;
                 }
             }
-            if(Objects.isNull(value)){
-                for (TreeMap<String, Element> data : immutable) {
-                    if(data.containsKey(key)){
-                        value = data.get(key).getValue();
-                        break;
-                    }
+        }
+    }
+
+    /**
+     * @return 被中断时返回 false
+     */
+    private boolean sleepBeforeRetry() {
+        try {
+            Thread.sleep(options.getFlushRetryIntervalMs());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 读操作不加锁: 依次查找内存表、只读表(从新到旧)和 tableTree, 读取每个 key 的最新版本
+     * 文本接口按 UTF-8 编码转换为字节后调用二进制接口
+     * @param key
+     * @return
+     */
+    @Override
+    public String get(String key) {
+        return BytesUtil.toText(getRaw(BytesUtil.fromText(key)));
+    }
+
+    @Override
+    public byte[] get(byte[] key) {
+        return BytesUtil.toBytes(getRaw(BytesUtil.fromBytes(key)));
+    }
+
+    /**
+     * 读取 key 的 position 到 limit 之间的字节, 不改变 key 的 position
+     * @param key
+     * @return 不存在时为 null
+     */
+    @Override
+    public ByteBuffer get(ByteBuffer key) {
+        String value = getRaw(BytesUtil.fromBuffer(key));
+        return Objects.isNull(value) ? null : ByteBuffer.wrap(BytesUtil.toBytes(value));
+    }
+
+    /**
+     * 内部的 key 和 value 每个字符保存一个字节, 见 BytesUtil
+     * @param key
+     * @return
+     */
+    private String getRaw(String key) {
+        if (Objects.isNull(rateLimiterTuner)) {
+            return get0(key);
+        }
+        long begin = System.nanoTime();
+        String value = get0(key);
+        rateLimiterTuner.recordLatency(System.nanoTime() - begin);
+        return value;
+    }
+
+    private String get0(String key) {
+        // 内存表和只读表中找到记录后不再继续查找, 删除标记同样有效
+        Element element = memtable.get(key);
+        if(Objects.isNull(element)){
+            for (MemTable data : immutable) {
+                element = data.get(key);
+                if(Objects.nonNull(element)){
+                    break;
                 }
-                if(Objects.isNull(value)) {
-                    value = log.query(key);
+            }
+        }
+
+        if(Objects.nonNull(element)) {
+            return element.getDeleted() ? null : element.getValue();
+        }
+        return this.tableTree.get(key);
+    }
+
+    /**
+     * 读取快照能看到的版本, 查找顺序和 get 一致
+     * @param key
+     * @param snapshot
+     * @return
+     */
+    @Override
+    public String get(String key, Snapshot snapshot) {
+        return BytesUtil.toText(getRaw(BytesUtil.fromText(key), snapshot));
+    }
+
+    @Override
+    public byte[] get(byte[] key, Snapshot snapshot) {
+        return BytesUtil.toBytes(getRaw(BytesUtil.fromBytes(key), snapshot));
+    }
+
+    private String getRaw(String key, Snapshot snapshot) {
+        Element element = findInMemory(key, snapshot.getSeq());
+        if (Objects.isNull(element)) {
+            element = tableTree.find(key, snapshot.getSeq());
+        }
+        return Objects.isNull(element) || element.getDeleted() ? null : element.getValue();
+    }
+
+    /**
+     * 在内存表和只读表(从新到旧)中查找快照能看到的版本
+     * @param key
+     * @param snapshot
+     * @return
+     */
+    private Element findInMemory(String key, long snapshot) {
+        Element element = memtable.get(key, snapshot);
+        if (Objects.isNull(element)) {
+            for (MemTable data : immutable) {
+                element = data.get(key, snapshot);
+                if (Objects.nonNull(element)) {
+                    break;
                 }
             }
+        }
+        return element;
+    }
+
+    /**
+     * 批量查询, 在一个临时快照上读取, 所有 key 看到的是同一时刻的数据
+     * @param keys
+     * @return
+     */
+    @Override
+    public List<String> multiGet(List<String> keys) {
+        try (Snapshot snapshot = snapshots.acquire()) {
+            return multiGet(keys, snapshot);
+        }
+    }
+
+    @Override
+    public List<String> multiGet(List<String> keys, Snapshot snapshot) {
+        List<String> rawKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            rawKeys.add(BytesUtil.fromText(key));
+        }
+        List<String> values = multiGetRaw(rawKeys, snapshot);
+        values.replaceAll(BytesUtil::toText);
+        return values;
+    }
+
+    @Override
+    public List<byte[]> multiGetBytes(List<byte[]> keys) {
+        try (Snapshot snapshot = snapshots.acquire()) {
+            return multiGetBytes(keys, snapshot);
+        }
+    }
+
+    @Override
+    public List<byte[]> multiGetBytes(List<byte[]> keys, Snapshot snapshot) {
+        List<String> rawKeys = new ArrayList<>(keys.size());
+        for (byte[] key : keys) {
+            rawKeys.add(BytesUtil.fromBytes(key));
+        }
+        List<byte[]> values = new ArrayList<>(keys.size());
+        for (String value : multiGetRaw(rawKeys, snapshot)) {
+            values.add(BytesUtil.toBytes(value));
+        }
+        return values;
+    }
 
-            if(Objects.isNull(value)) {
-                value = this.tableTree.get(key);
+    /**
+     * 批量查询: key 排序去重后依次在内存表、只读表中查找, 剩余的 key 交给 tableTree 逐层按文件分组查询
+     * @param keys
+     * @param snapshot
+     * @return
+     */
+    private List<String> multiGetRaw(List<String> keys, Snapshot snapshot) {
+        Map<String, Element> found = new HashMap<>();
+        List<String> remaining = new ArrayList<>();
+        TreeSet<String> sorted = new TreeSet<>(options.getKeyOrder());
+        sorted.addAll(keys);
+        for (String key : sorted) {
+            Element element = findInMemory(key, snapshot.getSeq());
+            if (Objects.nonNull(element)) {
+                found.put(key, element);
+            } else {
+                remaining.add(key);
             }
+        }
+        if (!remaining.isEmpty()) {
+            tableTree.multiFind(remaining, found, options.getMultiGetExecutor(), snapshot.getSeq());
+        }
 
-        } finally {
-            lock.readLock().unlock();
-            return value;
+        List<String> values = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            Element element = found.get(key);
+            values.add(Objects.isNull(element) || element.getDeleted() ? null : element.getValue());
+        }
+        return values;
+    }
+
+    @Override
+    public DbIterator scan(String startKey, String endKey) {
+        DbIterator iterator = newIterator(startKey, endKey);
+        iterator.seekToFirst();
+        return iterator;
+    }
+
+    @Override
+    public DbIterator scan(String startKey, String endKey, Snapshot snapshot) {
+        DbIterator iterator = newIterator(startKey, endKey, snapshot);
+        iterator.seekToFirst();
+        return iterator;
+    }
+
+    /**
+     * 按字节遍历 [startKey, endKey), 通过 DbIterator 的 keyBytes / valueBytes 读取记录
+     * @param startKey 为空时不限制
+     * @param endKey 不包含, 为空时不限制
+     * @return
+     */
+    @Override
+    public DbIterator scanBytes(byte[] startKey, byte[] endKey) {
+        DbIterator iterator = newRawIterator(BytesUtil.fromBytes(startKey), BytesUtil.fromBytes(endKey));
+        iterator.seekToFirst();
+        return iterator;
+    }
+
+    @Override
+    public DbIterator scanBytes(byte[] startKey, byte[] endKey, Snapshot snapshot) {
+        DbIterator iterator = newRawIterator(BytesUtil.fromBytes(startKey), BytesUtil.fromBytes(endKey),
+                snapshot, false);
+        iterator.seekToFirst();
+        return iterator;
+    }
+
+    /**
+     * 可以定位的迭代器, 只返回 [lower, upper) 中的记录, 使用前需要调用 seekToFirst 或 seek
+     * 迭代器持有一个临时快照, 遍历过程中的写入不可见, 关闭时释放
+     * @param lower 为空时不限制
+     * @param upper 不包含, 为空时不限制
+     * @return
+     */
+    public DbIterator newIterator(String lower, String upper) {
+        return newRawIterator(BytesUtil.fromText(lower), BytesUtil.fromText(upper));
+    }
+
+    private DbIterator newRawIterator(String lower, String upper) {
+        Snapshot snapshot = snapshots.acquire();
+        try {
+            return newRawIterator(lower, upper, snapshot, true);
+        } catch (RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 在指定快照上遍历, 关闭迭代器不会释放快照
+     * @param lower
+     * @param upper
+     * @param snapshot
+     * @return
+     */
+    public DbIterator newIterator(String lower, String upper, Snapshot snapshot) {
+        return newRawIterator(BytesUtil.fromText(lower), BytesUtil.fromText(upper), snapshot, false);
+    }
+
+    /**
+     * 按照内存表、只读表(从新到旧)、tableTree 的顺序收集数据源, 和 get 的查找顺序一致:
+     * 切换内存表和刷盘时数据总是先出现在后面的数据源中, 再从前面的数据源中移除, 不会遗漏
+     * 快照之后的版本由 DbIterator 跳过; 快照先于数据源创建, 刷盘和压缩会保留它需要的旧版本
+     * lower 和 upper 为内部的字节形式
+     */
+    private DbIterator newRawIterator(String lower, String upper, Snapshot snapshot, boolean ownsSnapshot) {
+        List<KvIterator> children = new ArrayList<>();
+        try {
+            children.add(memtable.iterator());
+            for (MemTable table : immutable) {
+                children.add(table.iterator());
+            }
+            tableTree.addIterators(children, lower, upper);
+        } catch (RuntimeException e) {
+            for (KvIterator child : children) {
+                child.close();
+            }
+            throw e;
+        }
+        KeyOrder comparator = options.getKeyOrder();
+        return new DbIterator(new MergingIterator(children, comparator), comparator, lower, upper,
+                snapshot, ownsSnapshot);
+    }
+
+    /**
+     * 以当前已经写入的数据创建快照, 释放前刷盘和压缩会保留它能看到的旧版本
+     * @return
+     */
+    @Override
+    public Snapshot getSnapshot() {
+        return snapshots.acquire();
+    }
+
+    @Override
+    public void releaseSnapshot(Snapshot snapshot) {
+        snapshot.close();
+    }
+
+    /**
+     * 未释放的快照数量
+     * @return
+     */
+    public int getSnapshotCount() {
+        return snapshots.size();
+    }
+
+    /**
+     * 已经写入内存表的最大顺序号
+     * @return
+     */
+    public long getLastSequence() {
+        return sequence.visible();
+    }
+
+    /**
+     * 当前内存表估算占用的字节数
+     * @return
+     */
+    public long getMemtableBytes() {
+        return memtable.approximateBytes();
+    }
+
+    /**
+     * 所有等待刷盘的只读表估算占用的字节数
+     * @return
+     */
+    public long getImmutableBytes() {
+        long bytes = 0;
+        for (MemTable table : immutable) {
+            bytes += table.approximateBytes();
+        }
+        return bytes;
+    }
+
+    public int getImmutableCount() {
+        return immutable.size();
+    }
+
+    /**
+     * 共享的数据块缓存, 可以通过它查看命中、未命中和淘汰的数量
+     * @return 未启用缓存时为空
+     */
+    public BlockCache getBlockCache() {
+        return options.getBlockCache();
+    }
+
+    /**
+     * 刷盘和压缩共享的限速器, 可以在运行时修改速率
+     * @return
+     */
+    public RateLimiter getRateLimiter() {
+        return options.getRateLimiter();
+    }
+
+    /**
+     * 写入流控统计, 可以查看减速和阻塞的次数与时间
+     * @return
+     */
+    public WriteStallStats getWriteStallStats() {
+        return writeController.getStats();
+    }
+
+    public TableCache getTableCache() {
+        return tableCache;
+    }
+
+    /**
+     * 每一层的文件数, 下标为层号
+     * @return
+     */
+    public List<Integer> getLevelFileCounts() {
+        List<Integer> counts = new ArrayList<>();
+        for (TreeNode node = tableTree; Objects.nonNull(node); node = node.getNextLevel()) {
+            counts.add(node.getTableList().size());
         }
+        return counts;
+    }
+
+    /**
+     * 所有层的压缩统计之和
+     * @return
+     */
+    public CompactionStats getCompactionStats() {
+        CompactionStats total = new CompactionStats();
+        for (TreeNode node = tableTree; Objects.nonNull(node); node = node.getNextLevel()) {
+            total.add(node.getStats());
+        }
+        return total;
+    }
+
+    /**
+     * 正在执行的压缩数量, 不超过压缩线程数
+     * @return
+     */
+    public int getRunningCompactions() {
+        return compactionScheduler.getRunningCount();
     }
 
     public void rm(String key) {
-        set0(key,"",true);
+        set0(BytesUtil.fromText(key),"",true);
     }
 
     public void set(String key, String value){
-        set0(key,value,false);
+        set0(BytesUtil.fromText(key),BytesUtil.fromText(value),false);
+    }
+
+    @Override
+    public void rm(byte[] key) {
+        set0(BytesUtil.fromBytes(key),"",true);
+    }
+
+    @Override
+    public void set(byte[] key, byte[] value) {
+        set0(BytesUtil.fromBytes(key),BytesUtil.fromBytes(value),false);
+    }
+
+    @Override
+    public void rm(ByteBuffer key) {
+        set0(BytesUtil.fromBuffer(key),"",true);
+    }
+
+    /**
+     * 写入 key 和 value 的 position 到 limit 之间的字节, 不改变它们的 position
+     * @param key
+     * @param value
+     */
+    @Override
+    public void set(ByteBuffer key, ByteBuffer value) {
+        set0(BytesUtil.fromBuffer(key),BytesUtil.fromBuffer(value),false);
     }
 
 }
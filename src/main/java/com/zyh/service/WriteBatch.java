@@ -0,0 +1,78 @@
+package com.zyh.service;
+
+import com.zyh.model.sstable.Element;
+import com.zyh.utils.BytesUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量写入: 多个 set 和 rm 作为一条 WAL 记录写入, 一次加锁后写入内存表
+ * 同一个批次中同一个 key 的多次修改以最后一次为准
+ * 写入后可以 clear 后复用, 写入时复制记录, 不会修改已经写入的数据
+ * 文本和字节可以混用, 文本按 UTF-8 编码, 记录以内部的字节形式保存, 见 {@link BytesUtil}
+ */
+public class WriteBatch {
+
+    private final List<Element> elements = new ArrayList<>();
+
+    public WriteBatch set(String key, String value) {
+        return add(BytesUtil.fromText(key), BytesUtil.fromText(value), false);
+    }
+
+    public WriteBatch set(byte[] key, byte[] value) {
+        return add(BytesUtil.fromBytes(key), BytesUtil.fromBytes(value), false);
+    }
+
+    /**
+     * 复制 position 到 limit 之间的字节, 不改变 position
+     * @param key
+     * @param value
+     * @return
+     */
+    public WriteBatch set(ByteBuffer key, ByteBuffer value) {
+        return add(BytesUtil.fromBuffer(key), BytesUtil.fromBuffer(value), false);
+    }
+
+    public WriteBatch rm(String key) {
+        return add(BytesUtil.fromText(key), "", true);
+    }
+
+    public WriteBatch rm(byte[] key) {
+        return add(BytesUtil.fromBytes(key), "", true);
+    }
+
+    public WriteBatch rm(ByteBuffer key) {
+        return add(BytesUtil.fromBuffer(key), "", true);
+    }
+
+    private WriteBatch add(String key, String value, boolean deleted) {
+        elements.add(new Element(key, value, deleted));
+        return this;
+    }
+
+    public int size() {
+        return elements.size();
+    }
+
+    public boolean isEmpty() {
+        return elements.isEmpty();
+    }
+
+    public void clear() {
+        elements.clear();
+    }
+
+    /**
+     * 复制批次中的记录, 写入时会为每条记录分配顺序号
+     * @return
+     */
+    List<Element> copyElements() {
+        List<Element> copy = new ArrayList<>(elements.size());
+        for (Element element : elements) {
+            copy.add(new Element(element.getKey(), element.getValue(), element.getDeleted()));
+        }
+        return copy;
+    }
+}
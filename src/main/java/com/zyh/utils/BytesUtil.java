@@ -0,0 +1,80 @@
+package com.zyh.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * key 和 value 在内部以字符串保存原始字节: 每个字节对应一个 0-255 的字符, 和原始字节一一对应
+ * 按 String.compareTo 比较就是无符号字节序, 写入日志和表文件时按 {@link #RAW} 编码, 字节原样保存
+ * String 接口的 key 和 value 是文本, 按 UTF-8 转换为内部形式; 只包含 ASCII 字符时两种形式相同, 不需要转换
+ */
+public class BytesUtil {
+
+    public static final Charset RAW = StandardCharsets.ISO_8859_1;
+
+    public static final Charset TEXT = StandardCharsets.UTF_8;
+
+    public static String fromBytes(byte[] bytes) {
+        return Objects.isNull(bytes) ? null : new String(bytes, RAW);
+    }
+
+    public static String fromBytes(byte[] bytes, int offset, int length) {
+        return new String(bytes, offset, length, RAW);
+    }
+
+    /**
+     * 读取 position 到 limit 之间的字节, 不修改 buffer 的位置
+     * @param buffer
+     * @return
+     */
+    public static String fromBuffer(ByteBuffer buffer) {
+        if (Objects.isNull(buffer)) {
+            return null;
+        }
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(), RAW);
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, RAW);
+    }
+
+    public static byte[] toBytes(String raw) {
+        return Objects.isNull(raw) ? null : raw.getBytes(RAW);
+    }
+
+    /**
+     * 文本转换为内部形式
+     * @param text
+     * @return
+     */
+    public static String fromText(String text) {
+        if (Objects.isNull(text) || isAscii(text)) {
+            return text;
+        }
+        return new String(text.getBytes(TEXT), RAW);
+    }
+
+    /**
+     * 内部形式转换为文本
+     * @param raw
+     * @return
+     */
+    public static String toText(String raw) {
+        if (Objects.isNull(raw) || isAscii(raw)) {
+            return raw;
+        }
+        return new String(raw.getBytes(RAW), TEXT);
+    }
+
+    private static boolean isAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
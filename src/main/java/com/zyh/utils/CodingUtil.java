@@ -0,0 +1,110 @@
+package com.zyh.utils;
+
+import java.util.zip.CRC32;
+
+/**
+ * 二进制编码工具: varint 与校验和
+ */
+public class CodingUtil {
+
+    /**
+     * varint 编码后的字节数
+     * @param value 非负整数
+     * @return
+     */
+    public static int varIntSize(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * 写入 varint
+     * @return 写入后的下标
+     */
+    public static int writeVarInt(byte[] dst, int offset, int value) {
+        while ((value & ~0x7F) != 0) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * 读取 varint, 占用的字节数可以通过 {@link #varIntSize(int)} 得到
+     */
+    public static int readVarInt(byte[] src, int offset) {
+        int result = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = src[offset++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("[CodingUtil][readVarInt] varint 格式错误");
+    }
+
+    public static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    public static int writeVarLong(byte[] dst, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            dst[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        dst[offset++] = (byte) value;
+        return offset;
+    }
+
+    public static long readVarLong(byte[] src, int offset) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = src[offset++];
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("[CodingUtil][readVarLong] varint 格式错误");
+    }
+
+    public static void writeInt(byte[] dst, int offset, int value) {
+        dst[offset] = (byte) (value >>> 24);
+        dst[offset + 1] = (byte) (value >>> 16);
+        dst[offset + 2] = (byte) (value >>> 8);
+        dst[offset + 3] = (byte) value;
+    }
+
+    public static int readInt(byte[] src, int offset) {
+        return ((src[offset] & 0xFF) << 24)
+                | ((src[offset + 1] & 0xFF) << 16)
+                | ((src[offset + 2] & 0xFF) << 8)
+                | (src[offset + 3] & 0xFF);
+    }
+
+    public static void writeLong(byte[] dst, int offset, long value) {
+        writeInt(dst, offset, (int) (value >>> 32));
+        writeInt(dst, offset + 4, (int) value);
+    }
+
+    public static long readLong(byte[] src, int offset) {
+        return ((long) readInt(src, offset) << 32) | (readInt(src, offset + 4) & 0xFFFFFFFFL);
+    }
+
+    public static int crc32(byte[] data, int offset, int len) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, len);
+        return (int) crc.getValue();
+    }
+}
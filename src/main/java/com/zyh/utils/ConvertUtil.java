@@ -30,9 +30,9 @@ public class ConvertUtil {
         return res;
     }
 
-    public static Object readMapObjectFromBytes(byte[] data,TypeReference typeReference){
+    public static <T> T readMapObjectFromBytes(byte[] data,TypeReference<T> typeReference){
         String indexDataStr = new String(data, StandardCharsets.UTF_8);
-        Object o = JSONObject.parseObject(indexDataStr, typeReference);
+        T o = JSONObject.parseObject(indexDataStr, typeReference);
         return o;
     }
 }
@@ -0,0 +1,27 @@
+package com.zyh.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+public class FileUtil {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(FileUtil.class);
+
+    /**
+     * 目录刷盘, 重命名和创建文件之后调用, 保证宕机后目录项不会丢失
+     * 有些平台(Windows)不能打开目录, 这时只记录日志
+     * @param dir
+     */
+    public static void syncDir(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.warn("[FileUtil][syncDir] 目录刷盘失败: {}", dir.getPath(), e);
+        }
+    }
+}
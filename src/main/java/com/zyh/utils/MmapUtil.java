@@ -0,0 +1,57 @@
+package com.zyh.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.MappedByteBuffer;
+
+/**
+ * 释放内存映射
+ * JDK 没有公开的 unmap 接口, 映射要等到 GC 回收 MappedByteBuffer 时才释放, 文件删除后磁盘空间也不会马上释放
+ * JDK 9 及以上使用 Unsafe.invokeCleaner, JDK 8 使用 DirectBuffer.cleaner().clean()
+ * 调用方必须保证释放后不会再访问这个 buffer, 否则会导致 JVM 崩溃
+ */
+public class MmapUtil {
+
+    public static final Logger LOGGER = LoggerFactory.getLogger(MmapUtil.class);
+
+    private static final Object UNSAFE;
+
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", java.nio.ByteBuffer.class);
+        } catch (Exception e) {
+            // JDK 8 没有 invokeCleaner
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    public static void unmap(MappedByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+                return;
+            }
+            Method cleaner = buffer.getClass().getMethod("cleaner");
+            cleaner.setAccessible(true);
+            Object clean = cleaner.invoke(buffer);
+            if (clean != null) {
+                clean.getClass().getMethod("clean").invoke(clean);
+            }
+        } catch (Exception e) {
+            // 释放失败时交给 GC
+            LOGGER.warn("[MmapUtil][unmap] 释放内存映射失败", e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 同样的数据分别通过文本接口(ASCII 和非 ASCII)、byte[] 接口和 ByteBuffer 接口写入和随机读取
+ * 文本接口需要在 UTF-8 和内部形式之间转换, 只包含 ASCII 字符时不需要转换
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class BinaryKeyBenchmark {
+
+    private static final int READS = 200_000;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    private static final String[] MODES = {"ascii", "utf8", "bytes", "buffer"};
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.printf("%-8s %12s %12s%n", "mode", "writes/s", "reads/s");
+        // 第一轮用于预热
+        for (int round = 0; round < 2; round++) {
+            for (String mode : MODES) {
+                run(mode, count, round > 0);
+            }
+        }
+    }
+
+    private static void run(String mode, int count, boolean print) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-binary").toFile();
+        TinyKV kv = new TinyKV(dir.getPath(), new Options());
+        byte[] value = VALUE.getBytes(StandardCharsets.UTF_8);
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            switch (mode) {
+                case "ascii":
+                    kv.set(key(i), VALUE);
+                    break;
+                case "utf8":
+                    kv.set(textKey(i), VALUE);
+                    break;
+                case "bytes":
+                    kv.set(bytesKey(i), value);
+                    break;
+                default:
+                    kv.set(ByteBuffer.wrap(bytesKey(i)), ByteBuffer.wrap(value));
+            }
+        }
+        double writes = count / ((System.nanoTime() - begin) / 1e9);
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+
+        begin = System.nanoTime();
+        for (int n = 0; n < READS; n++) {
+            int i = ThreadLocalRandom.current().nextInt(count);
+            switch (mode) {
+                case "ascii":
+                    kv.get(key(i));
+                    break;
+                case "utf8":
+                    kv.get(textKey(i));
+                    break;
+                case "bytes":
+                    kv.get(bytesKey(i));
+                    break;
+                default:
+                    kv.get(ByteBuffer.wrap(bytesKey(i)));
+            }
+        }
+        double reads = READS / ((System.nanoTime() - begin) / 1e9);
+        if (print) {
+            System.out.printf("%-8s %12.0f %12.0f%n", mode, writes, reads);
+        }
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private static String key(int i) {
+        return String.format("key%010d", i);
+    }
+
+    private static String textKey(int i) {
+        return String.format("键%010d", i);
+    }
+
+    /**
+     * 大端序写入, 字节序和数值顺序一致, 包含 0x00 和大于 0x7F 的字节
+     */
+    private static byte[] bytesKey(int i) {
+        return ByteBuffer.allocate(8).putInt(0x80000000).putInt(i).array();
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import com.zyh.model.cache.BlockCache;
+import com.zyh.model.cache.CachePolicy;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.model.sstable.TableReader;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 热点读取场景下不同块缓存配置的吞吐量和命中率
+ * 80% 的读取集中在 20% 的 key 上, 缓存容量约为表大小的 1/4
+ * 直接运行 main 方法, 参数为每个线程的读取次数
+ */
+public class BlockCacheBenchmark {
+
+    private static final int KEY_COUNT = 200_000;
+
+    private static final int THREADS = 4;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int readsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        File dir = Files.createTempDirectory("tinykv-cache").toFile();
+        String filePath = dir.getPath() + File.separator + "bench.table";
+        MemTable data = new MemTable();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            data.put(new Element(key(i), VALUE, false));
+        }
+        Options writeOptions = new Options();
+        SsTable.createFromMemory(filePath, data, writeOptions, new TableCache(writeOptions));
+        long cacheBytes = new File(filePath).length() / 4;
+
+        System.out.printf("%-8s %8s %12s %10s %12s%n", "policy", "offHeap", "ops/s", "hitRate", "evictions");
+        run(filePath, null, readsPerThread, "none", false);
+        for (CachePolicy policy : CachePolicy.values()) {
+            for (boolean offHeap : new boolean[]{false, true}) {
+                run(filePath, new BlockCache(cacheBytes, 4, policy, offHeap), readsPerThread, policy.name(), offHeap);
+            }
+        }
+        new File(filePath).delete();
+        dir.delete();
+    }
+
+    private static void run(String filePath, BlockCache cache, int readsPerThread, String name, boolean offHeap) throws Exception {
+        Options options = new Options();
+        options.setBlockCache(cache);
+        TableReader table = new TableReader(filePath, options);
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                        for (int i = 0; i < readsPerThread; i++) {
+                            int hot = KEY_COUNT / 5;
+                            int idx = random.nextInt(100) < 80 ? random.nextInt(hot) : hot + random.nextInt(KEY_COUNT - hot);
+                            if (table.get(key(idx)) == null) {
+                                throw new IllegalStateException("missing key " + idx);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        table.close();
+        System.out.printf("%-8s %8s %12.0f %10.4f %12d%n", name, offHeap, (double) THREADS * readsPerThread * 1e9 / elapsed,
+                cache == null ? 0 : cache.getHitRate(), cache == null ? 0 : cache.getEvictions());
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+}
@@ -0,0 +1,97 @@
+package org.example;
+
+import com.zyh.model.log.CommitLog;
+import com.zyh.model.log.SyncPolicy;
+import com.zyh.model.sstable.Element;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * CommitLog 组提交的吞吐量和提交延迟
+ * 直接运行 main 方法, 参数为总记录数
+ */
+public class CommitLogBenchmark {
+
+    private static final int[] THREADS = {1, 8, 64};
+
+    private static final int VALUE_SIZE = 100;
+
+    public static void main(String[] args) throws Exception {
+        int totalRecords = args.length > 0 ? Integer.parseInt(args[0]) : 64_000;
+        char[] chars = new char[VALUE_SIZE];
+        Arrays.fill(chars, 'v');
+        String value = new String(chars);
+
+        System.out.printf("%-14s %8s %12s %10s %10s %10s%n", "policy", "threads", "ops/s", "p50(us)", "p99(us)", "p999(us)");
+        for (SyncPolicy policy : SyncPolicy.values()) {
+            for (int threads : THREADS) {
+                run(policy, threads, totalRecords, value);
+            }
+        }
+    }
+
+    private static void run(SyncPolicy policy, int threads, int totalRecords, String value) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-wal").toFile();
+        CommitLog log = new CommitLog(dir.getPath(), policy, 10);
+        int perThread = totalRecords / threads;
+        long[][] latencies = new long[threads][perThread];
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < perThread; i++) {
+                            long begin = System.nanoTime();
+                            long seq = log.append(new Element("key-" + id + "-" + i, value, false));
+                            log.sync(seq);
+                            latencies[id][i] = System.nanoTime() - begin;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        log.close();
+        deleteDir(dir);
+
+        long[] all = new long[perThread * threads];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        System.out.printf("%-14s %8d %12.0f %10.1f %10.1f %10.1f%n", policy, threads,
+                all.length * 1e9 / elapsed, percentile(all, 0.50), percentile(all, 0.99), percentile(all, 0.999));
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(idx, 0)] / 1000.0;
+    }
+
+    private static void deleteDir(File dir) throws IOException {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(dir.toPath());
+    }
+}
@@ -0,0 +1,188 @@
+package org.example;
+
+import com.zyh.model.log.CommitLog;
+import com.zyh.model.log.LogReader;
+import com.zyh.model.log.LogRecord;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * WAL 记录格式: 写入后按顺序读回、末尾不完整和损坏的记录被丢弃、旧版本 JSON 日志的恢复
+ */
+public class CommitLogTest extends TestCase {
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-wal-test");
+    }
+
+    @Override
+    protected void tearDown() {
+        TestUtil.deleteDir(dir);
+    }
+
+    public void testRoundTrip() throws IOException {
+        // 内部形式的 key 可以包含任意字节
+        String binaryKey = "\u0000ÿ\u0080k";
+        CommitLog log = new CommitLog(dir.getPath());
+        log.append(new Element("k1", "v1", false));
+        log.append(new Element(binaryKey, "ÿ", false));
+        log.append(new Element("k1", "", true));
+        long last = log.appendBatch(Arrays.asList(new Element("b1", "x", false), new Element("b2", "", true)));
+        log.sync(last);
+        log.close();
+        assertEquals(5, last);
+
+        try (LogReader reader = new LogReader(walFile())) {
+            assertTrue(reader.isSequenced());
+            assertEquals(0, reader.getBaseSeq());
+            assertRecord(reader.next(), "k1", "v1", false);
+            assertRecord(reader.next(), binaryKey, "ÿ", false);
+            assertRecord(reader.next(), "k1", "", true);
+            LogRecord batch = reader.next();
+            assertTrue(batch.isBatch());
+            assertEquals(2, batch.getEntries().size());
+            assertRecord(batch.getEntries().get(0), "b1", "x", false);
+            assertRecord(batch.getEntries().get(1), "b2", "", true);
+            assertNull(reader.next());
+            assertEquals(walFile().length(), reader.getValidLength());
+        }
+    }
+
+    public void testRecoverSequence() throws IOException {
+        CommitLog log = new CommitLog(dir.getPath());
+        log.sync(log.append(new Element("a", "1", false)));
+        log.sync(log.append(new Element("a", "2", false)));
+        log.close();
+
+        CommitLog reopened = new CommitLog(dir.getPath());
+        MemTable table = reopened.recoverTableFromLog();
+        assertEquals("2", table.get("a").getValue());
+        assertEquals(2, table.get("a").getSeq());
+        // 之后分配的顺序号接着日志中的最后一条
+        assertEquals(3, reopened.append(new Element("b", "1", false)));
+        reopened.close();
+    }
+
+    public void testTornTailIsTruncated() throws IOException {
+        CommitLog log = new CommitLog(dir.getPath());
+        for (int i = 0; i < 10; i++) {
+            log.append(new Element("k" + i, "v" + i, false));
+        }
+        log.sync(10);
+        log.close();
+        // 最后一条记录只写了一半
+        long length = walFile().length();
+        try (RandomAccessFile file = new RandomAccessFile(walFile(), "rw")) {
+            file.setLength(length - 3);
+        }
+
+        CommitLog reopened = new CommitLog(dir.getPath());
+        MemTable table = reopened.recoverTableFromLog();
+        assertEquals(9, table.size());
+        assertNull(table.get("k9"));
+        assertEquals("v8", table.get("k8").getValue());
+        // 不完整的数据被截掉, 新的记录接在有效数据之后, 重启后可以读到
+        long seq = reopened.append(new Element("k9", "again", false));
+        reopened.sync(seq);
+        reopened.close();
+
+        CommitLog again = new CommitLog(dir.getPath());
+        table = again.recoverTableFromLog();
+        assertEquals(10, table.size());
+        assertEquals("again", table.get("k9").getValue());
+        again.close();
+    }
+
+    public void testCorruptedRecordStopsReplay() throws IOException {
+        CommitLog log = new CommitLog(dir.getPath());
+        log.append(new Element("k0", "v0", false));
+        log.append(new Element("k1", "v1", false));
+        log.append(new Element("k2", "v2", false));
+        log.sync(3);
+        log.close();
+        // 修改第二条记录的 value, 校验失败, 之后的记录都不再恢复
+        long offset;
+        try (LogReader reader = new LogReader(walFile())) {
+            reader.next();
+            offset = reader.getValidLength();
+        }
+        try (RandomAccessFile file = new RandomAccessFile(walFile(), "rw")) {
+            file.seek(offset + LogRecord.HEADER_SIZE + 5);
+            file.write('x');
+        }
+
+        CommitLog reopened = new CommitLog(dir.getPath());
+        MemTable table = reopened.recoverTableFromLog();
+        reopened.close();
+        assertEquals(1, table.size());
+        assertEquals("v0", table.get("k0").getValue());
+        assertEquals(offset, walFile().length());
+    }
+
+    public void testLegacyJsonLogIsReplayedAndRewritten() throws IOException {
+        // 旧版本的日志: 没有文件头, 每条记录为 长度 + JSON
+        List<String> records = new ArrayList<>();
+        records.add("{\"deleted\":false,\"key\":\"a\",\"value\":\"1\"}");
+        records.add("{\"deleted\":false,\"key\":\"b\",\"value\":\"中文\"}");
+        records.add("{\"deleted\":true,\"key\":\"a\",\"value\":\"\"}");
+        records.add("{\"deleted\":false,\"key\":\"c\",\"value\":\"3\"}");
+        try (RandomAccessFile file = new RandomAccessFile(walFile(), "rw")) {
+            for (String record : records) {
+                byte[] bytes = record.getBytes(StandardCharsets.UTF_8);
+                file.writeInt(bytes.length);
+                file.write(bytes);
+            }
+        }
+
+        TinyKV kv = new TinyKV(dir.getPath(), 100);
+        try {
+            assertNull(kv.get("a"));
+            assertEquals("中文", kv.get("b"));
+            assertEquals("3", kv.get("c"));
+            kv.set("d", "4");
+        } finally {
+            kv.close();
+        }
+        // 恢复后以当前格式重写
+        try (DataInputStream in = new DataInputStream(new FileInputStream(walFile()))) {
+            assertEquals(LogReader.MAGIC, in.readInt());
+            assertEquals(LogReader.VERSION, in.readInt());
+        }
+
+        kv = new TinyKV(dir.getPath(), 100);
+        try {
+            assertNull(kv.get("a"));
+            assertEquals("中文", kv.get("b"));
+            assertEquals("3", kv.get("c"));
+            assertEquals("4", kv.get("d"));
+        } finally {
+            kv.close();
+        }
+    }
+
+    private File walFile() {
+        return new File(dir, CommitLog.WAL + CommitLog.SUFFIX);
+    }
+
+    private static void assertRecord(LogRecord record, String key, String value, boolean deleted) {
+        assertNotNull(record);
+        assertEquals(key, record.getKey());
+        assertEquals(value, record.getValue());
+        assertEquals(deleted, record.isDeleted());
+    }
+}
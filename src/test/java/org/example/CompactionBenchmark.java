@@ -0,0 +1,87 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.compaction.CompactionWriter;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压缩吞吐量(MB/s): 逐条解码重新编码 与 不重叠的数据块整块传输 的对比
+ * disjoint: 各输入的 key 范围互不重叠, 全部数据块都可以整块传输
+ * striped: 各输入按 200 条一段交替分布, 大部分数据块可以整块传输
+ * interleaved: 各输入的 key 逐条交替, 没有可以整块传输的数据块
+ * 直接运行 main 方法, 参数为每个输入文件的记录数和 value 大小
+ */
+public class CompactionBenchmark {
+
+    private static final int INPUTS = 4;
+
+    private static final int ROUNDS = 3;
+
+    interface KeyLayout {
+        int key(int input, int i);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        int valueSize = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        String value = new String(new char[valueSize]).replace('\0', 'v');
+
+        System.out.printf("%-12s %-8s %10s %12s %10s%n", "layout", "mode", "MB/s", "copied(MB)", "ms");
+        run("disjoint", (input, i) -> input * entries + i, entries, value);
+        run("striped", (input, i) -> (i / 200) * INPUTS * 200 + input * 200 + i % 200, entries, value);
+        run("interleaved", (input, i) -> i * INPUTS + input, entries, value);
+    }
+
+    private static void run(String layout, KeyLayout keyLayout, int entries, String value) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-compaction").toFile();
+        Options options = new Options();
+        TableCache tableCache = new TableCache(options);
+        List<SsTable> inputs = new ArrayList<>();
+        for (int input = 0; input < INPUTS; input++) {
+            MemTable data = new MemTable();
+            for (int i = 0; i < entries; i++) {
+                data.put(new Element(String.format("key%010d", keyLayout.key(input, i)), value, false));
+            }
+            inputs.add(0, SsTable.createFromMemory(dir.getPath() + File.separator + "input" + input + ".table", data, options, tableCache));
+        }
+        for (boolean blockCopy : new boolean[]{false, true}) {
+            options.setCompactionBlockCopy(blockCopy);
+            double throughput = 0;
+            long copied = 0;
+            long millis = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                CompactionWriter writer = new CompactionWriter(dir.getPath(), options, tableCache);
+                List<SsTable> outputs = writer.write(inputs, Long.MAX_VALUE);
+                long count = 0;
+                for (SsTable output : outputs) {
+                    count += output.getEntryCount();
+                    output.deleteFile();
+                }
+                if (count != (long) INPUTS * entries) {
+                    throw new IllegalStateException("entry count mismatch: " + count);
+                }
+                // 第一轮用于预热
+                if (round > 0) {
+                    throughput += writer.getThroughput() / (ROUNDS - 1);
+                    copied = writer.getBytesCopied();
+                    millis += writer.getElapsedNanos() / 1_000_000 / (ROUNDS - 1);
+                }
+            }
+            System.out.printf("%-12s %-8s %10.1f %12.1f %10d%n", layout, blockCopy ? "copy" : "reencode",
+                    throughput, copied / 1024.0 / 1024.0, millis);
+        }
+        for (SsTable input : inputs) {
+            input.deleteFile();
+        }
+        tableCache.close();
+        dir.delete();
+    }
+}
@@ -0,0 +1,68 @@
+package org.example;
+
+import com.zyh.model.compaction.CompactionStats;
+import com.zyh.model.config.Options;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 不同压缩线程数下, 持续随机写入的耗时、L0 文件数的峰值和压缩完成后每一层的文件数
+ * L0 文件数越多, 查询需要检查的文件越多
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class CompactionSchedulerBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4};
+
+    private static final int STORE_THRESHOLD = 1000;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        System.out.printf("%-8s %10s %10s %12s %14s  %s%n", "threads", "ms", "maxL0", "compactions", "written(KB)", "levels");
+        for (int threads : THREADS) {
+            run(count, threads);
+        }
+    }
+
+    private static void run(int count, int threads) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-scheduler").toFile();
+        Options options = new Options();
+        options.setStoreThreshold(STORE_THRESHOLD);
+        options.setCompactionThreads(threads);
+        // 关闭直接移动, 每次压缩都读写数据
+        options.setAllowTrivialMove(false);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int maxL0 = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            kv.set(String.format("key%019d", random.nextLong(Long.MAX_VALUE)), VALUE);
+            if (i % STORE_THRESHOLD == 0) {
+                maxL0 = Math.max(maxL0, kv.getLevelFileCounts().get(0));
+            }
+        }
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        // 等待后台压缩结束: 统计在一段时间内不再变化
+        CompactionStats stats = kv.getCompactionStats();
+        long last = -1;
+        while (last != stats.getCompactions()) {
+            last = stats.getCompactions();
+            Thread.sleep(1000);
+            stats = kv.getCompactionStats();
+        }
+        long elapsed = (System.nanoTime() - begin - 1_000_000_000L) / 1_000_000;
+        List<Integer> levels = kv.getLevelFileCounts();
+        System.out.printf("%-8d %10d %10d %12d %14d  %s%n", threads, elapsed, maxL0,
+                stats.getCompactions(), stats.getBytesWritten() / 1024, levels);
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+}
@@ -0,0 +1,211 @@
+package org.example;
+
+import com.zyh.model.TreeNode;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.compaction.Compaction;
+import com.zyh.model.compaction.CompactionScheduler;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按分数调度压缩, 每一层的目标大小按字节数计算
+ */
+public class CompactionSchedulerTest extends TestCase {
+
+    private File dir;
+
+    private Options options;
+
+    private TableCache tableCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-compaction-scheduler-test");
+        options = new Options();
+        tableCache = new TableCache(options);
+    }
+
+    @Override
+    protected void tearDown() {
+        tableCache.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    public void testLevel0AlwaysConflicts() {
+        Compaction a = compaction(level(0), table("a", 0, 10));
+        Compaction b = compaction(level(0), table("z", 0, 10));
+        assertTrue(a.conflictsWith(b));
+        assertTrue(b.conflictsWith(a));
+    }
+
+    public void testSameLevelConflictsOnlyWhenOverlapping() {
+        TreeNode l1 = level(1);
+        Compaction a = compaction(l1, table("a", 0, 10));
+        assertTrue(a.conflictsWith(compaction(l1, table("a", 5, 20))));
+        assertFalse(a.conflictsWith(compaction(l1, table("b", 0, 10))));
+    }
+
+    /**
+     * 相邻两层的压缩都会修改下一层, key 范围重叠时冲突
+     */
+    public void testAdjacentLevelsConflictOnlyWhenOverlapping() {
+        Compaction l0 = compaction(level(0), table("a", 0, 10));
+        Compaction l1 = compaction(level(1), table("a", 5, 20));
+        Compaction other = compaction(level(1), table("b", 0, 10));
+        assertTrue(l0.conflictsWith(l1));
+        assertTrue(l1.conflictsWith(l0));
+        assertFalse(l0.conflictsWith(other));
+        assertFalse(other.conflictsWith(l0));
+
+        // 下一层中重叠的文件也算在 key 范围内
+        Compaction withOverlapped = new Compaction(level(1), Collections.singletonList(table("c", 0, 10)),
+                Collections.singletonList(table("d", 0, 10)), 1);
+        assertTrue(withOverlapped.conflictsWith(compaction(level(2), table("d", 5, 8))));
+        assertFalse(withOverlapped.conflictsWith(compaction(level(2), table("e", 0, 10))));
+    }
+
+    public void testLevelsTwoApartNeverConflict() {
+        Compaction l1 = compaction(level(1), table("a", 0, 10));
+        Compaction l3 = compaction(level(3), table("a", 0, 10));
+        assertFalse(l1.conflictsWith(l3));
+        assertFalse(l3.conflictsWith(l1));
+        assertFalse(compaction(level(0), table("a", 0, 10)).conflictsWith(compaction(level(2), table("a", 0, 10))));
+    }
+
+    /**
+     * 先选择分数最高的层, 和正在执行的压缩冲突时选择分数较低的层, 选出的压缩两两不冲突
+     */
+    public void testPickByScore() {
+        options.setLevelSizeMultiplier(1);
+        TreeNode l0 = level(0);
+        TreeNode l1 = level(1);
+        TreeNode l2 = level(2);
+        l0.setNextLevel(l1);
+        l1.setNextLevel(l2);
+        setTables(l0, table("a", 0, 10));
+        setTables(l1, table("a", 0, 100), table("b", 0, 100));
+        setTables(l2, table("c", 0, 100), table("d", 0, 100), table("e", 0, 100), table("f", 0, 100));
+        // L1 的分数约为 2, L2 约为 4, L0 的文件数没有达到压缩条件
+        options.setMaxBytesForLevelBase(l1.getTableList().get(0).getFileSize());
+        assertTrue(l2.getScore() > l1.getScore() && l1.getScore() > 1 && l0.getScore() < 1);
+
+        List<Compaction> running = new ArrayList<>();
+        List<Integer> levels = new ArrayList<>();
+        Compaction compaction;
+        while ((compaction = CompactionScheduler.pick(l0, running)) != null) {
+            for (Compaction other : running) {
+                assertFalse(compaction + " / " + other, compaction.conflictsWith(other));
+            }
+            running.add(compaction);
+            levels.add(compaction.getLevel());
+        }
+        assertEquals(Arrays.asList(2, 2, 2, 2, 1, 1), levels);
+    }
+
+    public void testRunningCompactionsNeverExceedThreads() throws InterruptedException {
+        Options kvOptions = new Options();
+        kvOptions.setStoreThreshold(100);
+        kvOptions.setCompactionThreads(2);
+        kvOptions.setMaxBytesForLevelBase(64 * 1024);
+        kvOptions.setLevelSizeMultiplier(2);
+        TinyKV kv = new TinyKV(dir.getPath(), kvOptions);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicInteger max = new AtomicInteger();
+        Thread sampler = new Thread(() -> {
+            while (!stop.get()) {
+                max.accumulateAndGet(kv.getRunningCompactions(), Math::max);
+            }
+        });
+        sampler.start();
+        try {
+            Random random = new Random(1);
+            for (int i = 0; i < 50_000; i++) {
+                kv.set(String.format("key%06d", random.nextInt(100_000)), "value");
+            }
+            awaitCompactions(kv);
+        } finally {
+            stop.set(true);
+            sampler.join();
+            kv.close();
+        }
+        assertTrue(kv.getCompactionStats().getCompactions() > 0);
+        assertTrue("max running " + max.get(), max.get() >= 1 && max.get() <= 2);
+    }
+
+    /**
+     * 默认参数下写入约 22 MB 数据, 层数和文件数只和数据量的对数相关
+     */
+    public void testLevelCountStaysSmallWithDefaultOptions() throws InterruptedException {
+        TinyKV kv = new TinyKV(dir.getPath(), new Options());
+        try {
+            String value = new String(new char[100]).replace('\0', 'v');
+            Random random = new Random(1);
+            for (int i = 0; i < 200_000; i++) {
+                kv.set(String.format("key%010d", random.nextInt(Integer.MAX_VALUE)), value);
+            }
+            awaitCompactions(kv);
+            List<Integer> counts = kv.getLevelFileCounts();
+            assertTrue("levels " + counts, counts.size() <= 4);
+            int files = 0;
+            for (int count : counts) {
+                files += count;
+            }
+            assertTrue("levels " + counts, files <= 40);
+        } finally {
+            kv.close();
+        }
+    }
+
+    private TreeNode level(int level) {
+        return new TreeNode(dir.getPath(), level, null, options, tableCache);
+    }
+
+    private static void setTables(TreeNode node, SsTable... tables) {
+        node.setTableList(new CopyOnWriteArrayList<>(tables));
+        node.buildSparseIndex();
+    }
+
+    private static Compaction compaction(TreeNode node, SsTable input) {
+        return new Compaction(node, Collections.singletonList(input), Collections.emptyList(), 1);
+    }
+
+    /**
+     * key 为 prefix + [from, to) 的文件
+     */
+    private SsTable table(String prefix, int from, int to) {
+        MemTable data = new MemTable();
+        for (int i = from; i < to; i++) {
+            data.put(new Element(String.format("%s%03d", prefix, i), "value", false, i + 1));
+        }
+        File file = new File(dir, prefix + from + "-" + to + "-" + System.nanoTime() + TreeNode.SUFFIX);
+        return SsTable.createFromMemory(file.getPath(), data, options, tableCache);
+    }
+
+    /**
+     * 等待刷盘结束, 并且一段时间内没有新的压缩
+     */
+    static void awaitCompactions(TinyKV kv) throws InterruptedException {
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        long last = -1;
+        while (last != kv.getCompactionStats().getCompactions() + kv.getCompactionStats().getTrivialMoves()) {
+            last = kv.getCompactionStats().getCompactions() + kv.getCompactionStats().getTrivialMoves();
+            Thread.sleep(500);
+        }
+    }
+}
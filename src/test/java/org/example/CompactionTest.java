@@ -0,0 +1,230 @@
+package org.example;
+
+import com.zyh.model.TreeNode;
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.compaction.Compaction;
+import com.zyh.model.config.Options;
+import com.zyh.model.log.ManiFest;
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.snapshot.SequenceTracker;
+import com.zyh.model.snapshot.SnapshotList;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 分层压缩只重写下一层中重叠的文件, 变更通过 manifest 在重启后恢复
+ */
+public class CompactionTest extends TestCase {
+
+    private File dir;
+
+    private Options options;
+
+    private TableCache tableCache;
+
+    private ManiFest maniFest;
+
+    private TreeNode root;
+
+    private long seq;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-compaction-test");
+        options = new Options();
+        tableCache = new TableCache(options);
+        open();
+    }
+
+    @Override
+    protected void tearDown() throws IOException {
+        maniFest.close();
+        tableCache.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private void open() throws IOException {
+        maniFest = new ManiFest(dir.getPath(), options, tableCache);
+        root = maniFest.rebuildTreeFromFile();
+    }
+
+    public void testOnlyOverlappingFilesRewritten() throws IOException {
+        // L0 中互不重叠的文件直接移到 L1, 不重写
+        for (String prefix : new String[]{"a", "c", "e", "g"}) {
+            root.installSstable(table(prefix, 0, 100, "v1", false));
+        }
+        compactLevel0();
+        List<String> moved = fileNames(1);
+        assertEquals(4, moved.size());
+        assertEquals(0, root.getTableList().size());
+
+        // 新的 L0 文件覆盖 c 和 e 的一部分 key, 删除一个 key, 并写入 d 开头的新 key
+        MemTable update = new MemTable();
+        for (int i = 50; i < 60; i++) {
+            update.put(new Element(key("c", i), "v2", false, ++seq));
+        }
+        update.put(new Element(key("c", 70), "", true, ++seq));
+        update.put(new Element(key("d", 0), "v2", false, ++seq));
+        update.put(new Element(key("e", 10), "v2", false, ++seq));
+        root.installSstable(root.buildSstable(update));
+        compactLevel0();
+
+        List<String> after = fileNames(1);
+        // a 和 g 的文件不变, c 和 e 的文件被替换
+        assertTrue(after.contains(moved.get(0)));
+        assertTrue(after.contains(moved.get(3)));
+        assertFalse(after.contains(moved.get(1)));
+        assertFalse(after.contains(moved.get(2)));
+        assertFalse(new File(dir, moved.get(1)).exists());
+        assertFalse(new File(dir, moved.get(2)).exists());
+        assertEquals(0, root.getTableList().size());
+        assertUpdated();
+
+        // 重启后从 manifest 恢复同样的文件列表
+        maniFest.close();
+        open();
+        assertEquals(after, fileNames(1));
+        assertEquals(0, root.getTableList().size());
+        assertUpdated();
+    }
+
+    /**
+     * L0 中重叠的文件合并时以新文件为准
+     */
+    public void testNewerLevel0FileWins() {
+        root.installSstable(table("a", 0, 100, "v1", false));
+        root.installSstable(table("a", 20, 40, "v2", false));
+        root.installSstable(table("a", 30, 35, "", true));
+        compactLevel0();
+
+        assertEquals(0, root.getTableList().size());
+        for (int i = 0; i < 100; i++) {
+            String expected = i >= 30 && i < 35 ? null : i >= 20 && i < 40 ? "v2" : "v1";
+            assertEquals(key("a", i), expected, root.get(key("a", i)));
+        }
+    }
+
+    /**
+     * 切分为子压缩并行执行的结果和单线程压缩完全相同, 同一个 key 的所有版本在同一个输出文件中
+     */
+    public void testSubcompactionsMatchSingleCompaction() throws IOException {
+        List<String> single = compactVersions(1);
+        List<String> split = compactVersions(4);
+        // 每个快照都需要一个版本, 所有版本都被保留
+        assertEquals(2000 * 8, single.size());
+        assertEquals(single, split);
+    }
+
+    /**
+     * 在单独的目录中写入 4 个 L0 文件, 每个 key 在每个文件中有 2 个版本, 每写一遍创建一个快照, 然后压缩到 L1
+     * @return L1 中按顺序排列的所有记录
+     */
+    private List<String> compactVersions(int maxSubcompactions) throws IOException {
+        File subDir = TestUtil.newTempDir("tinykv-subcompaction-test");
+        Options subOptions = new Options();
+        subOptions.setMaxSubcompactions(maxSubcompactions);
+        TableCache subCache = new TableCache(subOptions);
+        ManiFest subManiFest = new ManiFest(subDir.getPath(), subOptions, subCache);
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            TreeNode subRoot = subManiFest.rebuildTreeFromFile();
+            SequenceTracker sequence = new SequenceTracker(0);
+            SnapshotList snapshots = new SnapshotList(sequence);
+            subRoot.setSnapshots(snapshots);
+            String value = new String(new char[40]).replace('\0', 'v');
+            long next = 0;
+            for (int round = 0; round < 4; round++) {
+                MemTable data = new MemTable();
+                for (int pass = 0; pass < 2; pass++) {
+                    long first = next + 1;
+                    for (int i = 0; i < 2000; i++) {
+                        boolean deleted = round == 3 && pass == 1 && i % 7 == 0;
+                        data.put(new Element(key("k", i), deleted ? "" : value + round + pass, deleted, ++next));
+                    }
+                    sequence.publish(first, next);
+                    snapshots.acquire();
+                }
+                subRoot.installSstable(subRoot.buildSstable(data));
+            }
+
+            Compaction compaction = subRoot.pickCompaction(Collections.emptyList());
+            if (maxSubcompactions > 1) {
+                assertFalse(compaction.subcompactionBoundaries(maxSubcompactions).isEmpty());
+            }
+            subRoot.runCompaction(compaction, pool);
+            assertEquals(0, subRoot.getTableList().size());
+
+            List<String> entries = new ArrayList<>();
+            Map<String, String> fileOfKey = new HashMap<>();
+            for (SsTable table : subRoot.getNextLevel().getTableList()) {
+                try (KvIterator iterator = table.iterator(false)) {
+                    for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+                        String previous = fileOfKey.put(iterator.key(), table.getFileName());
+                        assertTrue(iterator.key() + " split across files", previous == null || previous.equals(table.getFileName()));
+                        entries.add(iterator.key() + "@" + iterator.seq() + (iterator.isDeleted() ? " deleted" : "=" + iterator.valueLength()));
+                    }
+                }
+            }
+            return entries;
+        } finally {
+            pool.shutdown();
+            subManiFest.close();
+            subCache.close();
+            TestUtil.deleteDir(subDir);
+        }
+    }
+
+    private void assertUpdated() {
+        for (int i = 0; i < 100; i++) {
+            assertEquals("v1", root.get(key("a", i)));
+            assertEquals("v1", root.get(key("g", i)));
+            assertEquals(i == 10 ? "v2" : "v1", root.get(key("e", i)));
+            String expected = i == 70 ? null : i >= 50 && i < 60 ? "v2" : "v1";
+            assertEquals(key("c", i), expected, root.get(key("c", i)));
+        }
+        assertEquals("v2", root.get(key("d", 0)));
+        assertNull(root.get(key("d", 1)));
+    }
+
+    private void compactLevel0() {
+        Compaction compaction = root.pickCompaction(Collections.emptyList());
+        assertNotNull(compaction);
+        root.runCompaction(compaction, null);
+    }
+
+    private List<String> fileNames(int level) {
+        TreeNode node = root;
+        for (int i = 0; i < level; i++) {
+            node = node.getNextLevel();
+        }
+        List<String> names = new ArrayList<>();
+        for (SsTable table : node.getTableList()) {
+            names.add(table.getFileName());
+        }
+        return names;
+    }
+
+    private SsTable table(String prefix, int from, int to, String value, boolean deleted) {
+        MemTable data = new MemTable();
+        for (int i = from; i < to; i++) {
+            data.put(new Element(key(prefix, i), value, deleted, ++seq));
+        }
+        return root.buildSstable(data);
+    }
+
+    private static String key(String prefix, int i) {
+        return String.format("%s%03d", prefix, i);
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.compaction.CompactionWriter;
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.KvIterator;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 压缩输出文件按字节数切分, 归并后的内容和输入一致
+ */
+public class CompactionWriterTest extends TestCase {
+
+    private static final int SMALL_VALUE = 20;
+
+    private static final int LARGE_VALUE = 200 * 1024;
+
+    private File dir;
+
+    private Options options;
+
+    private TableCache tableCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-compaction-writer-test");
+        options = new Options();
+        tableCache = new TableCache(options);
+    }
+
+    @Override
+    protected void tearDown() {
+        tableCache.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    /**
+     * 20 B 和 200 KB 的 value 混合写入, 每个输出文件的大小接近目标大小, 和记录数无关
+     */
+    public void testOutputCutAtTargetBytes() {
+        List<SsTable> inputs = new ArrayList<>();
+        long seq = 0;
+        for (int input = 0; input < 2; input++) {
+            MemTable table = new MemTable();
+            for (int i = input; i < 4000; i += 2) {
+                int size = i % 100 == 0 ? LARGE_VALUE : SMALL_VALUE;
+                table.put(new Element(key(i), value(size), false, ++seq));
+            }
+            inputs.add(0, SsTable.createFromMemory(new File(dir, "input" + input + ".table").getPath(), table, options, tableCache));
+        }
+
+        long target = 512 * 1024;
+        List<SsTable> outputs = new CompactionWriter(dir.getPath(), options, tableCache).write(inputs, target);
+        assertTrue(outputs.size() > 1);
+        for (int i = 0; i < outputs.size(); i++) {
+            long size = outputs.get(i).getFileSize();
+            // 达到目标后在下一个 key 处切换, 最多超出一条记录和一个数据块
+            assertTrue("file " + i + " size " + size, size < target + LARGE_VALUE + 64 * 1024);
+            if (i < outputs.size() - 1) {
+                assertTrue("file " + i + " size " + size, size >= target);
+            }
+        }
+        assertEquals(dump(inputs), dump(outputs));
+    }
+
+    static List<String> dump(List<SsTable> tables) {
+        List<String> entries = new ArrayList<>();
+        for (SsTable table : tables) {
+            try (KvIterator iterator = table.iterator(false)) {
+                for (iterator.seekToFirst(); iterator.valid(); iterator.next()) {
+                    entries.add(iterator.key() + "@" + iterator.seq() + (iterator.isDeleted() ? " deleted" : "=" + iterator.valueLength()));
+                }
+            }
+        }
+        entries.sort(null);
+        return entries;
+    }
+
+    private static String key(int i) {
+        return String.format("key%06d", i);
+    }
+
+    private static String value(int size) {
+        return new String(new char[size]).replace('\0', 'v');
+    }
+}
@@ -0,0 +1,105 @@
+package org.example;
+
+import com.zyh.model.comparator.BytewiseComparator;
+import com.zyh.model.comparator.KeyComparator;
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.DbIterator;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 自定义的字节比较器在内存表、表文件和重启之后的顺序
+ */
+public class ComparatorTest extends TestCase {
+
+    private static final KeyComparator REVERSE = new KeyComparator() {
+        @Override
+        public String name() {
+            return "test.ReverseBytewise";
+        }
+
+        @Override
+        public int compare(ByteBuffer a, ByteBuffer b) {
+            return BytewiseComparator.INSTANCE.compare(b, a);
+        }
+    };
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-comparator-test");
+    }
+
+    @Override
+    protected void tearDown() {
+        TestUtil.deleteDir(dir);
+    }
+
+    private static Options options(KeyComparator comparator) {
+        Options options = new Options();
+        options.setStoreThreshold(100);
+        options.setComparator(comparator);
+        return options;
+    }
+
+    public void testReverseOrder() throws InterruptedException {
+        TinyKV kv = new TinyKV(dir.getPath(), options(REVERSE));
+        for (int i = 0; i < 1000; i++) {
+            kv.set(key(i), new byte[]{(byte) i});
+        }
+        awaitFlush(kv);
+        assertReversed(kv);
+        kv.close();
+
+        kv = new TinyKV(dir.getPath(), options(REVERSE));
+        assertReversed(kv);
+        assertEquals(1, kv.get(key(1))[0]);
+        kv.close();
+    }
+
+    public void testOtherComparatorRejected() {
+        TinyKV kv = new TinyKV(dir.getPath(), options(REVERSE));
+        for (int i = 0; i < 300; i++) {
+            kv.set(key(i), new byte[]{(byte) i});
+        }
+        kv.close();
+        try {
+            new TinyKV(dir.getPath(), options(BytewiseComparator.INSTANCE));
+            fail("opened with another comparator");
+        } catch (RuntimeException expected) {
+            // manifest 中记录的是 REVERSE
+        }
+    }
+
+    private static void assertReversed(TinyKV kv) {
+        List<Integer> keys = new ArrayList<>();
+        try (DbIterator iterator = kv.scanBytes(null, null)) {
+            for (; iterator.valid(); iterator.next()) {
+                keys.add(ByteBuffer.wrap(iterator.keyBytes()).getShort() & 0xFFFF);
+            }
+        }
+        assertEquals(1000, keys.size());
+        for (int i = 1; i < keys.size(); i++) {
+            assertTrue(keys.get(i - 1) > keys.get(i));
+        }
+    }
+
+    private static void awaitFlush(TinyKV kv) throws InterruptedException {
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * 大端序的两个字节, 包含大于 0x7F 的字节
+     */
+    private static byte[] key(int i) {
+        return ByteBuffer.allocate(2).putShort((short) (i * 61)).array();
+    }
+}
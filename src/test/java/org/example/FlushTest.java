@@ -0,0 +1,76 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.config.Options;
+import com.zyh.model.log.ManiFest;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 多个只读表并行刷盘, 按内存表的新旧顺序加入 L0
+ */
+public class FlushTest extends TestCase {
+
+    private static final int KEYS = 100;
+
+    private static final int ROUNDS = 40;
+
+    private File dir;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-flush-test");
+    }
+
+    @Override
+    protected void tearDown() {
+        TestUtil.deleteDir(dir);
+    }
+
+    /**
+     * 每个内存表覆盖所有 key 一次, 不压缩时 L0 的文件按写入顺序排列, 最新的值来自最后一个文件
+     */
+    public void testParallelFlushesInstalledInOrder() throws InterruptedException, IOException {
+        Options options = new Options();
+        options.setStoreThreshold(KEYS);
+        options.setFlushThreads(4);
+        options.setLevel0CompactionTrigger(Integer.MAX_VALUE);
+        options.setLevel0SlowdownFiles(Integer.MAX_VALUE);
+        options.setLevel0StopFiles(Integer.MAX_VALUE);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < KEYS; i++) {
+                kv.set(key(i), "v" + round);
+            }
+        }
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(ROUNDS, (int) kv.getLevelFileCounts().get(0));
+        for (int i = 0; i < KEYS; i++) {
+            assertEquals("v" + (ROUNDS - 1), kv.get(key(i)));
+        }
+        kv.close();
+
+        Options readOptions = new Options();
+        TableCache tableCache = new TableCache(readOptions);
+        try (ManiFest maniFest = new ManiFest(dir.getPath(), readOptions, tableCache)) {
+            List<SsTable> level0 = maniFest.rebuildTreeFromFile().getTableList();
+            assertEquals(ROUNDS, level0.size());
+            for (int i = 1; i < level0.size(); i++) {
+                assertTrue(level0.get(i - 1).getMaxSeq() < level0.get(i).getMaxSeq());
+            }
+        } finally {
+            tableCache.close();
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%03d", i);
+    }
+}
@@ -0,0 +1,127 @@
+package org.example;
+
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 多线程读写混合场景下, TreeMap + 读写锁 与无锁跳表内存表的吞吐量对比
+ * 直接运行 main 方法, 参数为每个线程的操作数
+ */
+public class MemTableBenchmark {
+
+    private static final int[] THREADS = {1, 4, 16};
+
+    private static final int[] READ_PERCENT = {50, 90};
+
+    private static final int KEY_SPACE = 100_000;
+
+    interface Table {
+        void put(Element element);
+
+        Element get(String key);
+    }
+
+    static class LockedTreeMap implements Table {
+        private final TreeMap<String, Element> data = new TreeMap<>();
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        @Override
+        public void put(Element element) {
+            lock.writeLock().lock();
+            try {
+                data.put(element.getKey(), element);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public Element get(String key) {
+            lock.readLock().lock();
+            try {
+                return data.get(key);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    static class SkipListTable implements Table {
+        private final MemTable data = new MemTable();
+
+        @Override
+        public void put(Element element) {
+            data.put(element);
+        }
+
+        @Override
+        public Element get(String key) {
+            return data.get(key);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int opsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        String[] keys = new String[KEY_SPACE];
+        for (int i = 0; i < KEY_SPACE; i++) {
+            keys[i] = String.format("key%08d", i);
+        }
+
+        System.out.printf("%-14s %8s %8s %14s%n", "memtable", "read%", "threads", "ops/s");
+        for (int readPercent : READ_PERCENT) {
+            for (int threads : THREADS) {
+                System.out.printf("%-14s %8d %8d %14.0f%n", "TreeMap+RWLock", readPercent, threads,
+                        run(new LockedTreeMap(), keys, threads, opsPerThread, readPercent));
+                System.out.printf("%-14s %8d %8d %14.0f%n", "MemTable", readPercent, threads,
+                        run(new SkipListTable(), keys, threads, opsPerThread, readPercent));
+            }
+        }
+    }
+
+    private static double run(Table table, String[] keys, int threads, int opsPerThread, int readPercent) throws Exception {
+        // 预先写入一半的 key
+        for (int i = 0; i < keys.length; i += 2) {
+            table.put(new Element(keys[i], "value" + i, false));
+        }
+        AtomicLong seq = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    try {
+                        start.await();
+                        for (int i = 0; i < opsPerThread; i++) {
+                            String key = keys[random.nextInt(keys.length)];
+                            if (random.nextInt(100) < readPercent) {
+                                table.get(key);
+                            } else {
+                                Element element = new Element(key, "value" + i, false);
+                                element.setSeq(seq.incrementAndGet());
+                                table.put(element);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        return (double) threads * opsPerThread * 1e9 / elapsed;
+    }
+}
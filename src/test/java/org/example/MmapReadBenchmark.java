@@ -0,0 +1,103 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.model.sstable.TableReader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 内存映射和 pread 两种读取方式的点查询延迟, 不使用块缓存
+ * cold: 每轮之前清空操作系统的页缓存(需要 root 权限写 /proc/sys/vm/drop_caches), 否则只测试 warm
+ * warm: 先顺序读取一遍全部 key
+ * 直接运行 main 方法, 参数为查询次数
+ */
+public class MmapReadBenchmark {
+
+    private static final int KEY_COUNT = 500_000;
+
+    private static final String VALUE = new String(new char[200]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        File dir = Files.createTempDirectory("tinykv-mmap").toFile();
+        String filePath = dir.getPath() + File.separator + "bench.table";
+        MemTable data = new MemTable();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            data.put(new Element(key(i), VALUE, false));
+        }
+        Options writeOptions = new Options();
+        SsTable.createFromMemory(filePath, data, writeOptions, new TableCache(writeOptions));
+        System.out.printf("table size: %d MB%n", new File(filePath).length() >> 20);
+
+        boolean canDrop = dropCaches();
+        if (!canDrop) {
+            System.out.println("无法清空页缓存, 跳过 cold 测试");
+        }
+        System.out.printf("%-6s %-6s %12s %10s %10s %10s%n", "mode", "cache", "ops/s", "p50(us)", "p99(us)", "p999(us)");
+        for (String cache : new String[]{"cold", "warm"}) {
+            if (cache.equals("cold") && !canDrop) {
+                continue;
+            }
+            for (boolean mmap : new boolean[]{false, true}) {
+                Options options = new Options();
+                options.setUseMmapReads(mmap);
+                TableReader table = new TableReader(filePath, options);
+                if (cache.equals("cold")) {
+                    dropCaches();
+                } else {
+                    for (int i = 0; i < KEY_COUNT; i++) {
+                        table.get(key(i));
+                    }
+                }
+                run(table, lookups, mmap ? "mmap" : "pread", cache);
+                table.unref();
+            }
+        }
+        new File(filePath).delete();
+        dir.delete();
+    }
+
+    private static void run(TableReader table, int lookups, String mode, String cache) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long[] latencies = new long[lookups];
+        long begin = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            long start = System.nanoTime();
+            if (table.get(key(random.nextInt(KEY_COUNT))) == null) {
+                throw new IllegalStateException("missing key");
+            }
+            latencies[i] = System.nanoTime() - start;
+        }
+        long elapsed = System.nanoTime() - begin;
+        Arrays.sort(latencies);
+        System.out.printf("%-6s %-6s %12.0f %10.1f %10.1f %10.1f%n", mode, cache, lookups * 1e9 / elapsed,
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 0.999));
+    }
+
+    private static boolean dropCaches() {
+        try (FileOutputStream out = new FileOutputStream("/proc/sys/vm/drop_caches")) {
+            out.write("1\n".getBytes());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int idx = (int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1);
+        return sorted[Math.max(idx, 0)] / 1000.0;
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+}
@@ -0,0 +1,98 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 一次读取一批随机 key: 逐个调用 get、单线程 multiGet 和并行 multiGet 的对比
+ * 块缓存较小, 大部分数据块需要从文件中读取
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class MultiGetBenchmark {
+
+    private static final int[] BATCH_SIZES = {50, 500};
+
+    private static final int ROUNDS = 200;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        File dir = Files.createTempDirectory("tinykv-multiget").toFile();
+        Options options = new Options();
+        options.setBlockCacheBytes(1024 * 1024);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        for (int i = 0; i < count; i++) {
+            kv.set(key(i), VALUE);
+        }
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        // 等待后台压缩结束, 避免影响读取
+        long last = -1;
+        while (last != kv.getCompactionStats().getCompactions()) {
+            last = kv.getCompactionStats().getCompactions();
+            Thread.sleep(1000);
+        }
+        System.out.printf("levels: %s%n", kv.getLevelFileCounts());
+        System.out.printf("%-8s %-12s %12s%n", "batch", "mode", "keys/s");
+
+        ExecutorService executor = options.getMultiGetExecutor();
+        for (int warmup = 0; warmup < 2; warmup++) {
+            for (int batchSize : BATCH_SIZES) {
+                List<List<String>> batches = new ArrayList<>();
+                for (int round = 0; round < ROUNDS; round++) {
+                    List<String> keys = new ArrayList<>();
+                    for (int i = 0; i < batchSize; i++) {
+                        // 一部分 key 不存在
+                        keys.add(key(ThreadLocalRandom.current().nextInt(count + count / 10)));
+                    }
+                    batches.add(keys);
+                }
+
+                long begin = System.nanoTime();
+                for (List<String> keys : batches) {
+                    for (String key : keys) {
+                        kv.get(key);
+                    }
+                }
+                print(warmup, batchSize, "get", System.nanoTime() - begin);
+
+                // 每次调用时读取线程池, 可以直接切换
+                options.setMultiGetExecutor(null);
+                begin = System.nanoTime();
+                for (List<String> keys : batches) {
+                    kv.multiGet(keys);
+                }
+                print(warmup, batchSize, "multiGet", System.nanoTime() - begin);
+
+                options.setMultiGetExecutor(executor);
+                begin = System.nanoTime();
+                for (List<String> keys : batches) {
+                    kv.multiGet(keys);
+                }
+                print(warmup, batchSize, "parallel", System.nanoTime() - begin);
+            }
+        }
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private static void print(int warmup, int batchSize, String mode, long nanos) {
+        // 第一轮用于预热
+        if (warmup > 0) {
+            System.out.printf("%-8d %-12s %12.0f%n", batchSize, mode, (double) batchSize * ROUNDS / (nanos / 1e9));
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%010d", i);
+    }
+}
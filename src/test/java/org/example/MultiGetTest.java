@@ -0,0 +1,156 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.snapshot.Snapshot;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 批量查询的结果和逐个 get 一致: 数据分布在内存表、只读表、L0 和 L1 的多个文件中
+ */
+public class MultiGetTest extends TestCase {
+
+    private static final int KEYS = 3000;
+
+    private File dir;
+
+    private Options options;
+
+    private TinyKV kv;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-multiget-test");
+    }
+
+    @Override
+    protected void tearDown() {
+        if (kv != null) {
+            kv.getRateLimiter().setBytesPerSecond(0);
+            kv.close();
+        }
+        TestUtil.deleteDir(dir);
+    }
+
+    public void testMatchesGet() throws InterruptedException {
+        open(4);
+        check();
+    }
+
+    /**
+     * 不使用线程池时在调用线程中依次查询每个文件
+     */
+    public void testMatchesGetWithoutExecutor() throws InterruptedException {
+        open(0);
+        check();
+    }
+
+    private void open(int threads) {
+        options = new Options();
+        options.setStoreThreshold(100);
+        options.setTargetFileSizeBytes(16 * 1024);
+        options.setMultiGetThreads(threads);
+        options.setLevel0CompactionTrigger(Integer.MAX_VALUE);
+        options.setLevel0SlowdownFiles(Integer.MAX_VALUE);
+        options.setLevel0StopFiles(Integer.MAX_VALUE);
+        kv = new TinyKV(dir.getPath(), options);
+    }
+
+    private void check() throws InterruptedException {
+        String value = new String(new char[100]).replace('\0', 'v');
+        // L1: 所有偶数 key 的第一个版本, 分布在多个文件中
+        options.setLevel0CompactionTrigger(1);
+        for (int i = 0; i < KEYS; i += 2) {
+            kv.set(key(i), value + "1");
+        }
+        awaitFlush();
+        awaitLevel0Compacted();
+        options.setLevel0CompactionTrigger(Integer.MAX_VALUE);
+
+        // L0: 覆盖、删除一部分 key
+        for (int i = 0; i < KEYS; i += 3) {
+            if (i % 5 == 0) {
+                kv.rm(key(i));
+            } else {
+                kv.set(key(i), value + "2");
+            }
+        }
+        awaitFlush();
+        Snapshot snapshot = kv.getSnapshot();
+
+        // 只读表: 限速使刷盘停在写文件的过程中
+        kv.getRateLimiter().setBytesPerSecond(1);
+        for (int i = 0; i < 100; i++) {
+            kv.set(key(i * 7), value + "3");
+        }
+        assertTrue(kv.getImmutableCount() > 0);
+
+        // 内存表
+        kv.rm(key(14));
+        kv.set(key(15), value + "4");
+        kv.set(key(KEYS + 1), value + "4");
+
+        List<Integer> levels = kv.getLevelFileCounts();
+        assertTrue("levels " + levels, levels.get(0) > 0 && levels.size() > 1 && levels.get(1) > 1);
+
+        // 重复的 key、不存在的 key 和删除的 key, 顺序打乱
+        List<String> keys = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            keys.add(key(random.nextInt(KEYS + 10)));
+        }
+        keys.add(key(14));
+        keys.add(key(14));
+        keys.add(key(0));
+        keys.add("missing");
+        Collections.shuffle(keys, random);
+
+        List<String> expected = new ArrayList<>();
+        List<String> expectedAtSnapshot = new ArrayList<>();
+        List<byte[]> byteKeys = new ArrayList<>();
+        for (String key : keys) {
+            expected.add(kv.get(key));
+            expectedAtSnapshot.add(kv.get(key, snapshot));
+            byteKeys.add(key.getBytes(StandardCharsets.UTF_8));
+        }
+        assertTrue(expected.contains(null) && expected.contains(value + "3") && expected.contains(value + "1"));
+        assertEquals(expected, kv.multiGet(keys));
+        assertEquals(expectedAtSnapshot, kv.multiGet(keys, snapshot));
+        List<byte[]> bytes = kv.multiGetBytes(byteKeys);
+        for (int i = 0; i < keys.size(); i++) {
+            String actual = bytes.get(i) == null ? null : new String(bytes.get(i), StandardCharsets.UTF_8);
+            assertEquals(keys.get(i), expected.get(i), actual);
+        }
+        assertTrue(kv.multiGet(Collections.emptyList()).isEmpty());
+
+        // 刷盘完成后结果不变
+        kv.getRateLimiter().setBytesPerSecond(0);
+        awaitFlush();
+        assertEquals(expected, kv.multiGet(keys));
+        assertEquals(expectedAtSnapshot, kv.multiGet(keys, snapshot));
+        kv.releaseSnapshot(snapshot);
+    }
+
+    private void awaitFlush() throws InterruptedException {
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitLevel0Compacted() throws InterruptedException {
+        while (kv.getLevelFileCounts().get(0) > 1 || kv.getRunningCompactions() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%05d", i);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.limiter.WriteStallStats;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 不同刷盘线程数下, 写入到全部刷盘完成的耗时和写入因为等待刷盘而阻塞的时间
+ * 刷盘的编码是 CPU 密集的, 多核机器上多个只读表可以同时编码写入
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class ParallelFlushBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4};
+
+    private static final int WRITERS = 4;
+
+    private static final String VALUE = new String(new char[1000]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.printf("%-8s %10s %12s %10s%n", "flush", "ms", "MB/s", "stallMs");
+        for (int threads : THREADS) {
+            run(count, threads);
+        }
+    }
+
+    private static void run(int count, int threads) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-flush").toFile();
+        Options options = new Options();
+        options.setFlushThreads(threads);
+        options.setMemtableMaxBytes(2 * 1024 * 1024);
+        // 只比较刷盘, L0 的文件数不触发流控
+        options.setLevel0SlowdownFiles(Integer.MAX_VALUE);
+        options.setLevel0StopFiles(Integer.MAX_VALUE);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        Thread[] writers = new Thread[WRITERS];
+        long begin = System.nanoTime();
+        for (int t = 0; t < WRITERS; t++) {
+            writers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < count / WRITERS; i++) {
+                    kv.set(String.format("key%019d", random.nextLong(Long.MAX_VALUE)), VALUE);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        long elapsed = (System.nanoTime() - begin) / 1_000_000;
+        WriteStallStats stats = kv.getWriteStallStats();
+        double mb = (double) count * (VALUE.length() + 22) / 1024 / 1024;
+        System.out.printf("%-8d %10d %12.1f %10d%n", threads, elapsed, mb * 1000 / elapsed, stats.getStallNanos() / 1_000_000);
+
+        // 关闭时等待正在执行的压缩结束, 之后删除文件
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+}
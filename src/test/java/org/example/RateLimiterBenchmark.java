@@ -0,0 +1,132 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.limiter.IoPriority;
+import com.zyh.model.limiter.LatencyHistogram;
+import com.zyh.model.limiter.RateLimiter;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 第一部分: 限速器的实际速率和设置的速率, 刷盘和压缩同时申请时各自得到的字节数
+ * 第二部分: 后台持续写入和压缩时, 前台 get 的 p99 延迟(不限速 / 固定速率 / 自动调速)
+ * 预先写入数据时不限速, 压缩结束后再开始计时
+ * 直接运行 main 方法, 参数为每种配置的运行时间(秒)
+ */
+public class RateLimiterBenchmark {
+
+    private static final long RATE = 8 * 1024 * 1024;
+
+    private static final int CHUNK = 64 * 1024;
+
+    private static final int PRELOAD = 50_000;
+
+    private static final int STORE_THRESHOLD = 1000;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        accuracy(seconds);
+        System.out.printf("%n%-8s %10s %10s %10s %14s%n", "limiter", "gets", "p50(us)", "p99(us)", "written(KB)");
+        latency("off", seconds, 0, false);
+        latency("fixed", seconds, RATE, false);
+        latency("auto", seconds, RATE, true);
+    }
+
+    private static void accuracy(int seconds) throws Exception {
+        RateLimiter limiter = new RateLimiter(RATE);
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            IoPriority priority = i == 0 ? IoPriority.HIGH : IoPriority.LOW;
+            threads[i] = new Thread(() -> {
+                while (!stop.get()) {
+                    limiter.request(CHUNK, priority);
+                }
+            });
+        }
+        long begin = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(seconds * 1000L);
+        stop.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - begin) / 1e9;
+        long high = limiter.getRequestedBytes(IoPriority.HIGH);
+        long low = limiter.getRequestedBytes(IoPriority.LOW);
+        System.out.printf("目标速率: %d KB/s, 实际速率: %.0f KB/s, 刷盘: %d KB, 压缩(3 个线程): %d KB%n",
+                RATE / 1024, (high + low) / 1024 / elapsed, high / 1024, low / 1024);
+    }
+
+    private static void latency(String name, int seconds, long rate, boolean autoTune) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-limiter").toFile();
+        Options options = new Options();
+        options.setStoreThreshold(STORE_THRESHOLD);
+        options.setAllowTrivialMove(false);
+        options.setRateLimitBytesPerSec(rate);
+        options.setRateLimiterAutoTune(autoTune);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        kv.getRateLimiter().setBytesPerSecond(0);
+        for (int i = 0; i < PRELOAD; i++) {
+            kv.set(key(i), VALUE);
+        }
+        awaitCompactions(kv);
+        kv.getRateLimiter().setBytesPerSecond(rate);
+        long writtenBefore = kv.getCompactionStats().getBytesWritten();
+
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (!stop.get()) {
+                kv.set(key(random.nextInt(PRELOAD)), VALUE);
+            }
+        });
+        writer.start();
+        LatencyHistogram histogram = new LatencyHistogram();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        while (System.nanoTime() < deadline) {
+            long begin = System.nanoTime();
+            kv.get(key(random.nextInt(PRELOAD)));
+            histogram.record(System.nanoTime() - begin);
+        }
+        stop.set(true);
+        writer.join();
+        long written = kv.getCompactionStats().getBytesWritten() - writtenBefore;
+
+        long[] snapshot = histogram.snapshotAndReset();
+        System.out.printf("%-8s %10d %10d %10d %14d%n", name, LatencyHistogram.count(snapshot),
+                LatencyHistogram.percentile(snapshot, 50) / 1000, LatencyHistogram.percentile(snapshot, 99) / 1000,
+                written / 1024);
+        // 不再限速, 关闭时等待正在执行的压缩结束
+        kv.getRateLimiter().setBytesPerSecond(0);
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    /**
+     * 等待只读表刷盘和后台压缩结束: 压缩次数在一段时间内不再变化
+     */
+    private static void awaitCompactions(TinyKV kv) throws InterruptedException {
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        long last = -1;
+        while (last != kv.getCompactionStats().getCompactions()) {
+            last = kv.getCompactionStats().getCompactions();
+            Thread.sleep(1000);
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%010d", i);
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import com.zyh.model.limiter.IoPriority;
+import com.zyh.model.limiter.RateLimiter;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 令牌桶按速率分配令牌, 高优先级的请求一直排队时低优先级仍能得到一部分令牌
+ */
+public class RateLimiterTest extends TestCase {
+
+    private static final long RATE = 1024 * 1024;
+
+    private static final long REQUEST = 16 * 1024;
+
+    public void testLowPriorityNotStarved() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(RATE);
+        LongAdder high = new LongAdder();
+        LongAdder low = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        // 多个刷盘线程保证高优先级的队列不会变空
+        for (int i = 0; i < 5; i++) {
+            threads.add(writer(limiter, IoPriority.HIGH, high, stop));
+        }
+        threads.add(writer(limiter, IoPriority.LOW, low, stop));
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        Thread.sleep(2000);
+        stop.set(true);
+        // 解除等待中的请求
+        limiter.setBytesPerSecond(0);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        long total = high.sum() + low.sum();
+        // 速率不超过设定值: 2 s 加上初始的一桶令牌和每个线程最后一次不限速的请求
+        assertTrue("total " + total, total <= RATE * 2 + RATE / 10 + REQUEST * threads.size());
+        assertTrue("total " + total, total >= RATE);
+        // 低优先级至少得到约 1/10 的令牌
+        assertTrue("high " + high.sum() + " low " + low.sum(), low.sum() * 20 >= total);
+        assertTrue("high " + high.sum() + " low " + low.sum(), high.sum() > low.sum());
+    }
+
+    public void testLowPriorityGetsAllTokensWhenAlone() throws InterruptedException {
+        RateLimiter limiter = new RateLimiter(RATE);
+        LongAdder low = new LongAdder();
+        AtomicBoolean stop = new AtomicBoolean();
+        Thread thread = writer(limiter, IoPriority.LOW, low, stop);
+        thread.start();
+        Thread.sleep(1000);
+        stop.set(true);
+        limiter.setBytesPerSecond(0);
+        thread.join();
+        assertTrue("low " + low.sum(), low.sum() >= RATE * 8 / 10);
+    }
+
+    /**
+     * 循环申请令牌, 统计已得到的字节数
+     */
+    private static Thread writer(RateLimiter limiter, IoPriority priority, LongAdder bytes, AtomicBoolean stop) {
+        return new Thread(() -> {
+            while (!stop.get()) {
+                limiter.request(REQUEST, priority);
+                bytes.add(REQUEST);
+            }
+        });
+    }
+}
@@ -0,0 +1,94 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.DbIterator;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 范围读取: 迭代器 scan 与逐个 key 调用 get 的对比
+ * 短范围每次读取 RANGE 个连续的 key, 全量扫描遍历所有记录
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class ScanBenchmark {
+
+    private static final int RANGE = 100;
+
+    private static final int ROUNDS = 2_000;
+
+    private static final int STORE_THRESHOLD = 5_000;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        File dir = Files.createTempDirectory("tinykv-scan").toFile();
+        Options options = new Options();
+        options.setStoreThreshold(STORE_THRESHOLD);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        for (int i = 0; i < count; i++) {
+            // 删除一部分记录, 迭代时需要跳过删除标记
+            if (i % 10 == 9) {
+                kv.rm(key(i - 1));
+            }
+            kv.set(key(i), VALUE);
+        }
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        System.out.printf("levels: %s%n", kv.getLevelFileCounts());
+        System.out.printf("%-10s %-8s %12s %12s%n", "workload", "mode", "keys", "keys/s");
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long keys = 0;
+            long begin = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                int start = random.nextInt(count - RANGE);
+                try (DbIterator iterator = kv.scan(key(start), key(start + RANGE))) {
+                    for (; iterator.valid(); iterator.next()) {
+                        keys++;
+                    }
+                }
+            }
+            print(warmup, "range", "scan", keys, System.nanoTime() - begin);
+
+            keys = 0;
+            begin = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                int start = random.nextInt(count - RANGE);
+                for (int i = start; i < start + RANGE; i++) {
+                    if (kv.get(key(i)) != null) {
+                        keys++;
+                    }
+                }
+            }
+            print(warmup, "range", "get", keys, System.nanoTime() - begin);
+
+            keys = 0;
+            begin = System.nanoTime();
+            try (DbIterator iterator = kv.scan(null, null)) {
+                for (; iterator.valid(); iterator.next()) {
+                    keys++;
+                }
+            }
+            print(warmup, "full", "scan", keys, System.nanoTime() - begin);
+        }
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private static void print(int warmup, String workload, String mode, long keys, long nanos) {
+        // 第一轮用于预热
+        if (warmup > 0) {
+            System.out.printf("%-10s %-8s %12d %12.0f%n", workload, mode, keys, keys / (nanos / 1e9));
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%010d", i);
+    }
+}
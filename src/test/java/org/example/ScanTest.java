@@ -0,0 +1,207 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.DbIterator;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 范围查询合并内存表、只读表、L0 和更低的层, 同一个 key 只返回最新的版本, 跳过删除的 key
+ */
+public class ScanTest extends TestCase {
+
+    private File dir;
+
+    private Options options;
+
+    private TinyKV kv;
+
+    // 和 kv 中的数据保持一致
+    private final TreeMap<String, String> model = new TreeMap<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-scan-test");
+        options = new Options();
+        options.setStoreThreshold(100);
+        options.setLevel0CompactionTrigger(Integer.MAX_VALUE);
+        options.setLevel0SlowdownFiles(Integer.MAX_VALUE);
+        options.setLevel0StopFiles(Integer.MAX_VALUE);
+        kv = new TinyKV(dir.getPath(), options);
+    }
+
+    @Override
+    protected void tearDown() {
+        kv.getRateLimiter().setBytesPerSecond(0);
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    public void testScanMergesAllSources() throws InterruptedException {
+        // L1: 所有 key 的第一个版本
+        options.setLevel0CompactionTrigger(1);
+        for (int i = 0; i < 300; i++) {
+            set(i, "v1");
+        }
+        awaitFlush();
+        awaitLevel0Compacted();
+        options.setLevel0CompactionTrigger(Integer.MAX_VALUE);
+
+        // L0: 覆盖一部分 key, 删除一部分 key
+        for (int i = 0; i < 300; i++) {
+            if (i % 5 == 0) {
+                rm(i);
+            } else if (i % 3 == 0) {
+                set(i, "v2");
+            }
+        }
+        awaitFlush();
+
+        // 只读表: 限速使刷盘停在写文件的过程中
+        kv.getRateLimiter().setBytesPerSecond(1);
+        for (int i = 0; i < 100; i++) {
+            if (i % 4 == 0) {
+                set(i * 3, "v3");
+            } else {
+                set(300 + i, "v3");
+            }
+        }
+        assertTrue(kv.getImmutableCount() > 0);
+
+        // 内存表: 覆盖、删除只读表中的 key, 重新写入 L0 中删除的 key
+        set(0, "v4");
+        rm(3);
+        rm(301);
+        set(10, "v4");
+        set(999, "v4");
+
+        List<Integer> levels = kv.getLevelFileCounts();
+        assertTrue("levels " + levels, levels.get(0) > 0 && levels.size() > 1 && levels.get(1) > 0);
+        assertEquals(new ArrayList<>(model.entrySet()), scan(null, null));
+        assertEquals(new ArrayList<>(model.subMap(key(50), key(150)).entrySet()), scan(key(50), key(150)));
+        assertEquals(new ArrayList<>(model.subMap(key(5), key(6)).entrySet()), scan(key(5), key(6)));
+        assertTrue(scan(key(1000), null).isEmpty());
+
+        // 刷盘完成后结果不变
+        kv.getRateLimiter().setBytesPerSecond(0);
+        awaitFlush();
+        assertEquals(new ArrayList<>(model.entrySet()), scan(null, null));
+    }
+
+    public void testSeek() throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            set(i, "v1");
+        }
+        awaitFlush();
+        rm(100);
+        rm(101);
+        set(102, "v2");
+
+        try (DbIterator iterator = kv.scan(key(50), key(200))) {
+            // 定位到删除的 key 时跳到下一个可见的 key
+            iterator.seek(key(100));
+            assertTrue(iterator.valid());
+            assertEquals(key(102), iterator.key());
+            assertEquals("v2", iterator.value());
+            // 小于下界时定位到下界
+            iterator.seek(key(1));
+            assertEquals(key(50), iterator.key());
+            // 不在 key 集合中的 target 定位到下一个 key
+            iterator.seek(key(120) + "x");
+            assertEquals(key(121), iterator.key());
+            iterator.seek(key(200));
+            assertFalse(iterator.valid());
+            iterator.seekToFirst();
+            assertEquals(key(50), iterator.key());
+        }
+    }
+
+    /**
+     * 迭代器持有打开时的文件, 压缩替换后文件保留到迭代器关闭
+     */
+    public void testCloseReleasesTables() throws InterruptedException {
+        for (int i = 0; i < 300; i++) {
+            set(i, "v1");
+        }
+        awaitFlush();
+        DbIterator iterator = kv.scan(null, null);
+        try {
+            options.setLevel0CompactionTrigger(1);
+            for (int i = 0; i < 100; i++) {
+                set(i, "v2");
+            }
+            awaitFlush();
+            awaitLevel0Compacted();
+            assertTrue(kv.getCompactionStats().getCompactions() > 0);
+            // 被替换的文件还在, 迭代器读到的是打开时的数据
+            assertTrue(tableFiles() > liveFiles());
+            int count = 0;
+            for (; iterator.valid(); iterator.next(), count++) {
+                assertEquals("v1", iterator.value());
+            }
+            assertEquals(300, count);
+        } finally {
+            iterator.close();
+        }
+        assertEquals(liveFiles(), tableFiles());
+    }
+
+    private List<Map.Entry<String, String>> scan(String lower, String upper) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>();
+        try (DbIterator iterator = kv.scan(lower, upper)) {
+            for (; iterator.valid(); iterator.next()) {
+                entries.add(new AbstractMap.SimpleEntry<>(iterator.key(), iterator.value()));
+            }
+        }
+        return entries;
+    }
+
+    private void set(int i, String value) {
+        kv.set(key(i), value);
+        model.put(key(i), value);
+    }
+
+    private void rm(int i) {
+        kv.rm(key(i));
+        model.remove(key(i));
+    }
+
+    private void awaitFlush() throws InterruptedException {
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * L0 的分数大于 1 时才会压缩, 最多剩下一个文件
+     */
+    private void awaitLevel0Compacted() throws InterruptedException {
+        while (kv.getLevelFileCounts().get(0) > 1 || kv.getRunningCompactions() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private int liveFiles() {
+        int files = 0;
+        for (int count : kv.getLevelFileCounts()) {
+            files += count;
+        }
+        return files;
+    }
+
+    private int tableFiles() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".table"));
+        return files == null ? 0 : files.length;
+    }
+
+    private static String key(int i) {
+        return String.format("key%04d", i);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.snapshot.Snapshot;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 反复覆盖写同一批 key: 没有快照、持有一个快照和持有多个快照时的写入速度、数据文件大小和快照读取速度
+ * 快照需要的旧版本在压缩时保留, 文件大小反映保留的版本数
+ * 直接运行 main 方法, 参数为 key 的数量和覆盖的轮数
+ */
+public class SnapshotBenchmark {
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    private static final int READS = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        int keys = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        System.out.printf("%-10s %12s %12s %14s%n", "snapshots", "writes/s", "data MB", "snap reads/s");
+        // 第一次运行用于预热
+        run(keys, rounds, 0, false);
+        for (int snapshots : new int[]{0, 1, rounds - 1}) {
+            run(keys, rounds, snapshots, true);
+        }
+    }
+
+    /**
+     * @param snapshots 从第二轮开始每轮覆盖前创建一个快照, 最多创建 snapshots 个
+     */
+    private static void run(int keys, int rounds, int snapshots, boolean print) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-snapshot").toFile();
+        TinyKV kv = new TinyKV(dir.getPath(), new Options());
+        Snapshot first = null;
+        long begin = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            if (round > 0 && round <= snapshots) {
+                Snapshot snapshot = kv.getSnapshot();
+                if (first == null) {
+                    first = snapshot;
+                }
+            }
+            for (int i = 0; i < keys; i++) {
+                kv.set(key(i), round + VALUE);
+            }
+        }
+        double writes = (double) keys * rounds / ((System.nanoTime() - begin) / 1e9);
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        long last = -1;
+        while (last != kv.getCompactionStats().getCompactions()) {
+            last = kv.getCompactionStats().getCompactions();
+            Thread.sleep(1000);
+        }
+
+        long bytes = 0;
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(".table")) {
+                bytes += file.length();
+            }
+        }
+
+        String reads = "-";
+        if (first != null) {
+            begin = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                kv.get(key(ThreadLocalRandom.current().nextInt(keys)), first);
+            }
+            reads = String.format("%.0f", READS / ((System.nanoTime() - begin) / 1e9));
+        }
+        if (print) {
+            System.out.printf("%-10d %12.0f %12.1f %14s%n", snapshots, writes, bytes / 1024.0 / 1024.0, reads);
+        }
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private static String key(int i) {
+        return String.format("key%010d", i);
+    }
+}
@@ -0,0 +1,178 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.config.Options;
+import com.zyh.model.iterator.DbIterator;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.snapshot.Snapshot;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.service.TinyKV;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 快照读取、刷盘和压缩按快照保留旧版本、重启后顺序号的恢复
+ */
+public class SnapshotTest extends TestCase {
+
+    private File dir;
+
+    private TinyKV kv;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-snapshot-test");
+        kv = new TinyKV(dir.getPath(), options());
+    }
+
+    @Override
+    protected void tearDown() {
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private static Options options() {
+        Options options = new Options();
+        options.setStoreThreshold(100);
+        return options;
+    }
+
+    public void testSnapshotReadsOldVersions() throws InterruptedException {
+        kv.set("a", "1");
+        kv.set("b", "1");
+        Snapshot snapshot = kv.getSnapshot();
+        kv.set("a", "2");
+        kv.rm("b");
+        kv.set("c", "1");
+
+        assertVisible(snapshot);
+        assertEquals("2", kv.get("a"));
+        assertNull(kv.get("b"));
+
+        // 刷盘后旧版本从表文件中读取
+        fill("x", 1000);
+        awaitFlush();
+        assertTrue(kv.getLevelFileCounts().get(0) > 0 || kv.getLevelFileCounts().size() > 1);
+        assertVisible(snapshot);
+        assertEquals(1, kv.getSnapshotCount());
+        kv.releaseSnapshot(snapshot);
+        assertEquals(0, kv.getSnapshotCount());
+    }
+
+    private void assertVisible(Snapshot snapshot) {
+        assertEquals("1", kv.get("a", snapshot));
+        assertEquals("1", kv.get("b", snapshot));
+        assertNull(kv.get("c", snapshot));
+        assertEquals(Arrays.asList("1", "1", null), kv.multiGet(Arrays.asList("a", "b", "c"), snapshot));
+        List<String> keys = new ArrayList<>();
+        try (DbIterator iterator = kv.scan("a", "d", snapshot)) {
+            for (; iterator.valid(); iterator.next()) {
+                keys.add(iterator.key() + "=" + iterator.value());
+            }
+        }
+        assertEquals(Arrays.asList("a=1", "b=1"), keys);
+    }
+
+    public void testSnapshotSurvivesCompaction() throws InterruptedException {
+        fill("k", 500);
+        Snapshot snapshot = kv.getSnapshot();
+        for (int round = 0; round < 10; round++) {
+            fill("k", 500);
+        }
+        awaitFlush();
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (kv.getCompactionStats().getCompactions() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(kv.getCompactionStats().getCompactions() > 0);
+
+        for (int i = 0; i < 500; i++) {
+            assertEquals("v0", kv.get(key("k", i), snapshot));
+            assertEquals("v10", kv.get(key("k", i)));
+        }
+        snapshot.close();
+    }
+
+    /**
+     * 刷盘时只保留每个 key 的最新版本和未释放的快照能看到的版本
+     */
+    public void testFlushDropsVersionsNotNeededBySnapshots() {
+        Options options = new Options();
+        TableCache tableCache = new TableCache(options);
+        try {
+            MemTable table = new MemTable();
+            for (long seq = 1; seq <= 3; seq++) {
+                table.put(new Element("a", "v" + seq, false, seq));
+            }
+
+            SsTable latestOnly = SsTable.createFromMemory(new File(dir, "latest.table").getPath(), table, options,
+                    tableCache, new long[0]);
+            assertEquals("v3", latestOnly.get("a", 3).getValue());
+            assertNull(latestOnly.get("a", 2));
+
+            // 快照 1 需要 v1, 没有快照需要 v2
+            SsTable withSnapshot = SsTable.createFromMemory(new File(dir, "snapshot.table").getPath(), table, options,
+                    tableCache, new long[]{1});
+            assertEquals("v3", withSnapshot.get("a", 3).getValue());
+            assertEquals("v1", withSnapshot.get("a", 2).getValue());
+            assertEquals("v1", withSnapshot.get("a", 1).getValue());
+        } finally {
+            tableCache.close();
+        }
+    }
+
+    public void testSequenceRecoveredAfterReopen() throws InterruptedException {
+        kv.set("k", "old");
+        fill("x", 300);
+        awaitFlush();
+        // 一部分数据在表文件中, 一部分只在日志中
+        kv.set("tail", "1");
+        long last = kv.getLastSequence();
+        kv.close();
+
+        kv = new TinyKV(dir.getPath(), options());
+        assertEquals(last, kv.getLastSequence());
+        assertEquals("old", kv.get("k"));
+        assertEquals("1", kv.get("tail"));
+
+        // 重启后的写入顺序号更大, 覆盖表文件中的旧版本
+        Snapshot before = kv.getSnapshot();
+        kv.set("k", "new");
+        assertEquals(last + 1, kv.getLastSequence());
+        assertEquals("new", kv.get("k"));
+        assertEquals("old", kv.get("k", before));
+        fill("y", 300);
+        awaitFlush();
+        assertEquals("new", kv.get("k"));
+        assertEquals("old", kv.get("k", before));
+        before.close();
+
+        kv.close();
+        kv = new TinyKV(dir.getPath(), options());
+        assertEquals(last + 301, kv.getLastSequence());
+        assertEquals("new", kv.get("k"));
+    }
+
+    private void fill(String prefix, int count) {
+        for (int i = 0; i < count; i++) {
+            String key = key(prefix, i);
+            String value = kv.get(key);
+            kv.set(key, value == null ? "v0" : "v" + (Integer.parseInt(value.substring(1)) + 1));
+        }
+    }
+
+    private void awaitFlush() throws InterruptedException {
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static String key(String prefix, int i) {
+        return String.format("%s%05d", prefix, i);
+    }
+}
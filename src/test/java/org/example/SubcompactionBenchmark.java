@@ -0,0 +1,96 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.compaction.Compaction;
+import com.zyh.model.compaction.CompactionWriter;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 一次大压缩切分为不同数量的子压缩时的耗时
+ * 各输入的 key 逐条交替, 每条记录都需要重新编码, 压缩受 CPU 限制, 耗时应随子压缩数量(不超过核数)下降
+ * 直接运行 main 方法, 参数为每个输入文件的记录数和 value 大小
+ */
+public class SubcompactionBenchmark {
+
+    private static final int INPUTS = 4;
+
+    private static final int[] SUBCOMPACTIONS = {1, 2, 4, 8};
+
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int valueSize = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+        String value = new String(new char[valueSize]).replace('\0', 'v');
+
+        File dir = Files.createTempDirectory("tinykv-subcompaction").toFile();
+        Options options = new Options();
+        TableCache tableCache = new TableCache(options);
+        List<SsTable> inputs = new ArrayList<>();
+        for (int input = 0; input < INPUTS; input++) {
+            MemTable data = new MemTable();
+            for (int i = 0; i < entries; i++) {
+                data.put(new Element(String.format("key%010d", i * INPUTS + input), value, false));
+            }
+            inputs.add(0, SsTable.createFromMemory(dir.getPath() + File.separator + "input" + input + ".table", data, options, tableCache));
+        }
+        Compaction compaction = new Compaction(null, inputs, Collections.emptyList(), 0);
+        ExecutorService pool = Executors.newCachedThreadPool();
+
+        System.out.printf("cores: %d%n", Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-14s %10s %10s%n", "subcompactions", "ms", "outputs");
+        for (int max : SUBCOMPACTIONS) {
+            List<String> boundaries = compaction.subcompactionBoundaries(max);
+            long millis = 0;
+            int files = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                long begin = System.nanoTime();
+                List<Future<List<SsTable>>> futures = new ArrayList<>();
+                for (int i = 0; i <= boundaries.size(); i++) {
+                    String lower = i == 0 ? null : boundaries.get(i - 1);
+                    String upper = i < boundaries.size() ? boundaries.get(i) : null;
+                    futures.add(pool.submit(() -> new CompactionWriter(dir.getPath(), options, tableCache)
+                            .write(inputs, Long.MAX_VALUE, lower, upper)));
+                }
+                long count = 0;
+                files = 0;
+                List<SsTable> outputs = new ArrayList<>();
+                for (Future<List<SsTable>> future : futures) {
+                    outputs.addAll(future.get());
+                }
+                long elapsed = System.nanoTime() - begin;
+                for (SsTable output : outputs) {
+                    count += output.getEntryCount();
+                    files++;
+                    output.deleteFile();
+                }
+                if (count != (long) INPUTS * entries) {
+                    throw new IllegalStateException("entry count mismatch: " + count);
+                }
+                // 第一轮用于预热
+                if (round > 0) {
+                    millis += elapsed / 1_000_000 / (ROUNDS - 1);
+                }
+            }
+            System.out.printf("%-14d %10d %10d%n", boundaries.size() + 1, millis, files);
+        }
+        pool.shutdown();
+        for (SsTable input : inputs) {
+            input.deleteFile();
+        }
+        tableCache.close();
+        dir.delete();
+    }
+}
@@ -0,0 +1,110 @@
+package org.example;
+
+import com.zyh.model.cache.TableCache;
+import com.zyh.model.config.Options;
+import com.zyh.model.memtable.MemTable;
+import com.zyh.model.sstable.Element;
+import com.zyh.model.sstable.SsTable;
+import com.zyh.model.sstable.TableReader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 多个线程同时读取同一个热点表的吞吐量
+ * seek+read: 共享文件指针, 必须串行读取
+ * pread: TableReader 使用的 FileChannel 按位置读取
+ * get: 不使用块缓存的 TableReader.get
+ * 直接运行 main 方法, 参数为每个线程的读取次数
+ */
+public class TableReadBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8, 16};
+
+    private static final int KEY_COUNT = 200_000;
+
+    private static final int READ_SIZE = 4096;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    interface Reader {
+        void read(ThreadLocalRandom random, byte[] buffer) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int readsPerThread = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        File dir = Files.createTempDirectory("tinykv-read").toFile();
+        String filePath = dir.getPath() + File.separator + "bench.table";
+        MemTable data = new MemTable();
+        for (int i = 0; i < KEY_COUNT; i++) {
+            data.put(new Element(key(i), VALUE, false));
+        }
+        Options options = new Options();
+        SsTable.createFromMemory(filePath, data, options, new TableCache(options));
+
+        RandomAccessFile file = new RandomAccessFile(filePath, "r");
+        long maxOffset = file.length() - READ_SIZE;
+        TableReader table = new TableReader(filePath, options);
+
+        System.out.printf("%-10s %8s %14s%n", "mode", "threads", "ops/s");
+        for (int threads : THREADS) {
+            System.out.printf("%-10s %8d %14.0f%n", "seek+read", threads, run(threads, readsPerThread, (random, buffer) -> {
+                long offset = random.nextLong(maxOffset);
+                synchronized (file) {
+                    file.seek(offset);
+                    file.readFully(buffer);
+                }
+            }));
+            System.out.printf("%-10s %8d %14.0f%n", "pread", threads, run(threads, readsPerThread,
+                    (random, buffer) -> table.read(random.nextLong(maxOffset), buffer)));
+            System.out.printf("%-10s %8d %14.0f%n", "get", threads, run(threads, readsPerThread, (random, buffer) -> {
+                if (table.get(key(random.nextInt(KEY_COUNT))) == null) {
+                    throw new IllegalStateException("missing key");
+                }
+            }));
+        }
+        file.close();
+        table.close();
+        new File(filePath).delete();
+        dir.delete();
+    }
+
+    private static double run(int threads, int readsPerThread, Reader reader) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    byte[] buffer = new byte[READ_SIZE];
+                    try {
+                        start.await();
+                        for (int i = 0; i < readsPerThread; i++) {
+                            reader.read(random, buffer);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        return (double) threads * readsPerThread * 1e9 / elapsed;
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+}
@@ -0,0 +1,29 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * 测试和 benchmark 共用的临时目录
+ */
+public class TestUtil {
+
+    public static File newTempDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * 删除目录和其中的文件, 数据目录没有子目录
+     * @param dir
+     */
+    public static void deleteDir(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+}
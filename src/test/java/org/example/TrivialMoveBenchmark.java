@@ -0,0 +1,62 @@
+package org.example;
+
+import com.zyh.model.compaction.CompactionStats;
+import com.zyh.model.config.Options;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 顺序写入和随机写入时, 压缩重写的字节数与直接移动节省的字节数
+ * trivialMove=false 时每次压缩都读取并重写输入文件
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class TrivialMoveBenchmark {
+
+    private static final int STORE_THRESHOLD = 1000;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        System.out.printf("%-10s %-12s %10s %12s %14s %12s %16s%n",
+                "keys", "trivialMove", "ms", "compactions", "written(KB)", "moves", "moveSaved(KB)");
+        for (boolean sequential : new boolean[]{true, false}) {
+            for (boolean trivialMove : new boolean[]{false, true}) {
+                run(count, sequential, trivialMove);
+            }
+        }
+    }
+
+    private static void run(int count, boolean sequential, boolean trivialMove) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-move").toFile();
+        Options options = new Options();
+        options.setStoreThreshold(STORE_THRESHOLD);
+        options.setAllowTrivialMove(trivialMove);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            long key = sequential ? i : random.nextLong(Long.MAX_VALUE);
+            kv.set(String.format("key%019d", key), VALUE);
+        }
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        // 等待后台压缩结束: 统计在一段时间内不再变化
+        CompactionStats stats = kv.getCompactionStats();
+        long last = -1;
+        while (last != stats.getCompactions() + stats.getTrivialMoves()) {
+            last = stats.getCompactions() + stats.getTrivialMoves();
+            Thread.sleep(1000);
+            stats = kv.getCompactionStats();
+        }
+        long elapsed = (System.nanoTime() - begin - 1_000_000_000L) / 1_000_000;
+        System.out.printf("%-10s %-12s %10d %12d %14d %12d %16d%n", sequential ? "sequential" : "random", trivialMove,
+                elapsed, stats.getCompactions(), stats.getBytesWritten() / 1024, stats.getTrivialMoves(), stats.getTrivialMoveBytes() / 1024);
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+}
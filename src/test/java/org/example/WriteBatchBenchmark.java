@@ -0,0 +1,67 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.log.SyncPolicy;
+import com.zyh.service.TinyKV;
+import com.zyh.service.WriteBatch;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * 单线程写入小 value 时, 逐条 set 与不同大小的 WriteBatch 的吞吐量
+ * EVERY_COMMIT 策略下每次提交都要刷盘, 批量写入的收益最明显
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class WriteBatchBenchmark {
+
+    private static final int[] BATCH_SIZES = {1, 10, 100, 1000};
+
+    private static final String VALUE = "value-16-bytes!!";
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.printf("%-14s %10s %12s%n", "policy", "batch", "ops/s");
+        for (SyncPolicy policy : new SyncPolicy[]{SyncPolicy.NONE, SyncPolicy.EVERY_COMMIT}) {
+            // 每次刷盘的写入太慢, 减少记录数
+            int records = policy == SyncPolicy.EVERY_COMMIT ? count / 20 : count;
+            for (int batchSize : BATCH_SIZES) {
+                run(policy, records, batchSize);
+            }
+        }
+    }
+
+    private static void run(SyncPolicy policy, int count, int batchSize) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-batch").toFile();
+        Options options = new Options();
+        options.setSyncPolicy(policy);
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        long begin = System.nanoTime();
+        if (batchSize == 1) {
+            for (int i = 0; i < count; i++) {
+                kv.set(key(i), VALUE);
+            }
+        } else {
+            WriteBatch batch = new WriteBatch();
+            for (int i = 0; i < count; i++) {
+                batch.set(key(i), VALUE);
+                if (batch.size() == batchSize) {
+                    kv.write(batch);
+                    batch.clear();
+                }
+            }
+            kv.write(batch);
+        }
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%-14s %10d %12.0f%n", policy, batchSize, count / (elapsed / 1e9));
+        while (kv.getImmutableCount() > 0) {
+            Thread.sleep(1);
+        }
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    private static String key(int i) {
+        return String.format("key%010d", i);
+    }
+}
@@ -0,0 +1,93 @@
+package org.example;
+
+import com.zyh.model.log.CommitLog;
+import com.zyh.service.TinyKV;
+import com.zyh.service.WriteBatch;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 批量写入: 同一批次中后面的修改覆盖前面的, 恢复时整个批次要么全部生效要么全部丢弃
+ */
+public class WriteBatchTest extends TestCase {
+
+    private File dir;
+
+    private TinyKV kv;
+
+    @Override
+    protected void setUp() throws Exception {
+        dir = TestUtil.newTempDir("tinykv-batch-test");
+        kv = new TinyKV(dir.getPath(), 1000);
+    }
+
+    @Override
+    protected void tearDown() {
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+
+    public void testLastWriteInBatchWins() {
+        kv.set("a", "old");
+        WriteBatch batch = new WriteBatch();
+        batch.set("a", "1").rm("a").set("b", "1").set("b", "2").rm("c");
+        batch.set("bin".getBytes(StandardCharsets.UTF_8), new byte[]{0, (byte) 0xFF});
+        kv.set("c", "old");
+        kv.write(batch);
+
+        assertNull(kv.get("a"));
+        assertEquals("2", kv.get("b"));
+        assertNull(kv.get("c"));
+        assertEquals(2, kv.get("bin".getBytes(StandardCharsets.UTF_8)).length);
+    }
+
+    public void testBatchIsReplayedAfterRestart() {
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 50; i++) {
+            batch.set("k" + i, "v" + i);
+        }
+        batch.rm("k0");
+        kv.write(batch);
+        reopen();
+
+        assertNull(kv.get("k0"));
+        for (int i = 1; i < 50; i++) {
+            assertEquals("v" + i, kv.get("k" + i));
+        }
+    }
+
+    public void testTornBatchIsDiscardedEntirely() throws Exception {
+        kv.set("before", "1");
+        WriteBatch batch = new WriteBatch();
+        for (int i = 0; i < 50; i++) {
+            batch.set("k" + i, "v" + i);
+        }
+        batch.rm("before");
+        kv.write(batch);
+        kv.close();
+        // 批次是日志中的最后一条记录, 只写入了一部分
+        File wal = new File(dir, CommitLog.WAL + CommitLog.SUFFIX);
+        try (RandomAccessFile file = new RandomAccessFile(wal, "rw")) {
+            file.setLength(wal.length() - 10);
+        }
+        kv = new TinyKV(dir.getPath(), 1000);
+
+        assertEquals("1", kv.get("before"));
+        for (int i = 0; i < 50; i++) {
+            assertNull(kv.get("k" + i));
+        }
+        // 恢复后可以继续写入
+        kv.write(new WriteBatch().set("after", "1"));
+        reopen();
+        assertEquals("1", kv.get("after"));
+        assertEquals("1", kv.get("before"));
+    }
+
+    private void reopen() {
+        kv.close();
+        kv = new TinyKV(dir.getPath(), 1000);
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import com.zyh.model.config.Options;
+import com.zyh.model.limiter.LatencyHistogram;
+import com.zyh.model.limiter.WriteStallStats;
+import com.zyh.service.TinyKV;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 多个线程突发写入时, 有无写入流控的对比: 只读表和 L0 文件数的峰值、写入延迟和流控等待的时间
+ * 没有流控时积压只受内存限制, 有流控时积压在软硬限制之间
+ * 直接运行 main 方法, 参数为写入的记录数
+ */
+public class WriteStallBenchmark {
+
+    private static final int THREADS = 4;
+
+    private static final int STORE_THRESHOLD = 1000;
+
+    private static final String VALUE = new String(new char[100]).replace('\0', 'v');
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        System.out.printf("%-8s %10s %14s %8s %10s %10s %10s  %s%n", "stall", "ms", "maxImmutable", "maxL0",
+                "p99(us)", "max(us)", "stallMs", "stats");
+        run("off", count, false);
+        run("on", count, true);
+    }
+
+    private static void run(String name, int count, boolean stall) throws Exception {
+        File dir = Files.createTempDirectory("tinykv-stall").toFile();
+        Options options = new Options();
+        options.setStoreThreshold(STORE_THRESHOLD);
+        if (!stall) {
+            options.setLevel0SlowdownFiles(Integer.MAX_VALUE);
+            options.setLevel0StopFiles(Integer.MAX_VALUE);
+            options.setPendingFlushSlowdownBytes(Long.MAX_VALUE);
+            options.setPendingFlushStopBytes(Long.MAX_VALUE);
+            options.setMaxImmutableNum(Integer.MAX_VALUE);
+        }
+        TinyKV kv = new TinyKV(dir.getPath(), options);
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicBoolean done = new AtomicBoolean();
+        int[] peak = new int[2];
+        Thread monitor = new Thread(() -> {
+            while (!done.get()) {
+                peak[0] = Math.max(peak[0], kv.getImmutableCount());
+                peak[1] = Math.max(peak[1], kv.getLevelFileCounts().get(0));
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        monitor.start();
+
+        Thread[] writers = new Thread[THREADS];
+        long begin = System.nanoTime();
+        for (int t = 0; t < THREADS; t++) {
+            writers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < count / THREADS; i++) {
+                    long start = System.nanoTime();
+                    kv.set(String.format("key%019d", random.nextLong(Long.MAX_VALUE)), VALUE);
+                    latency.record(System.nanoTime() - start);
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = (System.nanoTime() - begin) / 1_000_000;
+        done.set(true);
+        monitor.join();
+
+        long[] snapshot = latency.snapshotAndReset();
+        WriteStallStats stats = kv.getWriteStallStats();
+        System.out.printf("%-8s %10d %14d %8d %10d %10d %10d  %s%n", name, elapsed, peak[0], peak[1],
+                LatencyHistogram.percentile(snapshot, 99) / 1000, LatencyHistogram.percentile(snapshot, 100) / 1000,
+                stats.getStallNanos() / 1_000_000, stats);
+
+        // 关闭时等待刷盘和正在执行的压缩结束, 之后删除文件
+        kv.close();
+        TestUtil.deleteDir(dir);
+    }
+}